@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import net.openid.appauth.AuthState;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serialization of the auth state after a login, on its own and as stored by
+ * {@link AuthStateManager}. The preferences are kept in memory, so the storage benchmarks
+ * measure the SDK's overhead and not the disk.
+ */
+@State(Scope.Thread)
+public class AuthStateBenchmark {
+
+    private AuthState mState;
+    private String mJson;
+    private AuthStateManager mStateManager;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.setUpEnvironment();
+        mState = BenchmarkFixtures.authorizedState();
+        mJson = mState.jsonSerializeString();
+        mStateManager = new AuthStateManager(new InMemorySharedPreferences(), new ReentrantLock());
+        mStateManager.writeState(mState);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return mState.jsonSerializeString();
+    }
+
+    @Benchmark
+    public AuthState deserialize() throws JSONException {
+        return AuthState.jsonDeserialize(mJson);
+    }
+
+    @Benchmark
+    public void writeState() {
+        mStateManager.writeState(mState);
+    }
+
+    @Benchmark
+    public AuthState readState() {
+        return mStateManager.readState();
+    }
+}
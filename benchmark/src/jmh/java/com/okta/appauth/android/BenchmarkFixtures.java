@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.util.Log;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationRequest;
+import net.openid.appauth.AuthorizationResponse;
+import net.openid.appauth.AuthorizationServiceConfiguration;
+import net.openid.appauth.AuthorizationServiceDiscovery;
+import net.openid.appauth.ResponseTypeValues;
+import net.openid.appauth.TokenResponse;
+import okio.Buffer;
+import okio.Okio;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Inputs shared by the benchmarks. Token sizes match those issued by an Okta authorization
+ * server with a handful of custom claims; the contents are random, as none of the benchmarked
+ * code decodes them.
+ */
+final class BenchmarkFixtures {
+
+    static final String CLIENT_ID = "0oabenchmarkclient1d8";
+    static final Uri REDIRECT_URI = Uri.parse("com.okta.example:/callback");
+    static final List<String> SCOPES = Arrays.asList("openid", "profile", "email",
+            "offline_access");
+
+    private static final int ACCESS_TOKEN_LENGTH = 900;
+    private static final int ID_TOKEN_LENGTH = 1000;
+    private static final int REFRESH_TOKEN_LENGTH = 43;
+    private static final String TOKEN_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private BenchmarkFixtures() {
+        throw new AssertionError("no instances");
+    }
+
+    /**
+     * Turns off logging, as {@link Log} is native on a plain JVM, and disables tracing.
+     */
+    static void setUpEnvironment() {
+        AuthLog.setLevel(Log.ASSERT);
+        AuthTrace.setEnabled(false);
+        AuthEvents.setListener(null);
+    }
+
+    static String resource(String name) {
+        InputStream stream = BenchmarkFixtures.class.getClassLoader().getResourceAsStream(name);
+        if (stream == null) {
+            throw new IllegalStateException("Missing benchmark resource " + name);
+        }
+        Buffer buffer = new Buffer();
+        try {
+            buffer.writeAll(Okio.source(stream));
+            return buffer.readString(Charset.forName("UTF-8"));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to read benchmark resource " + name, ex);
+        }
+    }
+
+    static JSONObject discoveryJson() {
+        try {
+            return new JSONObject(resource("discovery.json"));
+        } catch (JSONException ex) {
+            throw new IllegalStateException("Invalid discovery document", ex);
+        }
+    }
+
+    static AuthorizationServiceConfiguration serviceConfiguration() {
+        try {
+            return new AuthorizationServiceConfiguration(
+                    new AuthorizationServiceDiscovery(discoveryJson()));
+        } catch (AuthorizationServiceDiscovery.MissingArgumentException ex) {
+            throw new IllegalStateException("Invalid discovery document", ex);
+        }
+    }
+
+    /**
+     * A context whose package manager resolves every intent, so that the redirect URI check
+     * of {@link OAuthClientConfiguration} passes.
+     */
+    static Context context() {
+        PackageManager packageManager = mock(PackageManager.class);
+        when(packageManager.queryIntentActivities(any(Intent.class), anyInt()))
+                .thenReturn(Collections.singletonList(new ResolveInfo()));
+        Context context = mock(Context.class);
+        when(context.getPackageManager()).thenReturn(packageManager);
+        when(context.getPackageName()).thenReturn("com.okta.example");
+        return context;
+    }
+
+    /**
+     * The state after a login: the discovery document, the authorization response and the
+     * token response.
+     */
+    static AuthState authorizedState() {
+        Random random = new Random(42);
+        AuthorizationServiceConfiguration config = serviceConfiguration();
+        AuthorizationRequest request = new AuthorizationRequest.Builder(
+                config, CLIENT_ID, ResponseTypeValues.CODE, REDIRECT_URI)
+                .setScopes(SCOPES)
+                .build();
+        AuthorizationResponse authResponse = new AuthorizationResponse.Builder(request)
+                .setAuthorizationCode(randomToken(random, 20))
+                .setState(request.state)
+                .build();
+        TokenResponse tokenResponse =
+                new TokenResponse.Builder(authResponse.createTokenExchangeRequest())
+                        .setTokenType(TokenResponse.TOKEN_TYPE_BEARER)
+                        .setAccessToken(randomToken(random, ACCESS_TOKEN_LENGTH))
+                        .setAccessTokenExpirationTime(
+                                System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1))
+                        .setIdToken(randomToken(random, ID_TOKEN_LENGTH))
+                        .setRefreshToken(randomToken(random, REFRESH_TOKEN_LENGTH))
+                        .setScopes(SCOPES)
+                        .build();
+
+        AuthState state = new AuthState(config);
+        state.update(authResponse, null);
+        state.update(tokenResponse, null);
+        return state;
+    }
+
+    static String accessToken() {
+        return randomToken(new Random(7), ACCESS_TOKEN_LENGTH);
+    }
+
+    private static String randomToken(Random random, int length) {
+        char[] token = new char[length];
+        for (int i = 0; i < length; i++) {
+            token[i] = TOKEN_ALPHABET.charAt(random.nextInt(TOKEN_ALPHABET.length()));
+        }
+        return new String(token);
+    }
+}
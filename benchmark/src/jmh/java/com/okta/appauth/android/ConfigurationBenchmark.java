@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.okta.android.json.InvalidJsonDocumentException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Loading the client configuration. The redirect URI check queries a mocked package manager,
+ * which adds Mockito's dispatch overhead to {@link #load()} and {@link #readConfiguration()};
+ * it is constant across runs, so it does not hide regressions.
+ */
+@State(Scope.Thread)
+public class ConfigurationBenchmark {
+
+    private Context mContext;
+    private SharedPreferences mPrefs;
+    private byte[] mConfigurationBytes;
+    private JSONObject mConfigurationJson;
+    private OAuthClientConfiguration mConfiguration;
+
+    @Setup
+    public void setUp() throws JSONException {
+        BenchmarkFixtures.setUpEnvironment();
+        String configuration = BenchmarkFixtures.resource("okta_app_auth_config.json");
+        mContext = BenchmarkFixtures.context();
+        mPrefs = new InMemorySharedPreferences();
+        mConfigurationBytes = configuration.getBytes(Charset.forName("UTF-8"));
+        mConfigurationJson = new JSONObject(configuration);
+        mConfiguration = load();
+        if (!mConfiguration.isValid()) {
+            throw new IllegalStateException(mConfiguration.getConfigurationError());
+        }
+    }
+
+    /**
+     * The whole of {@link OAuthClientConfiguration#getInstance}, less the resource lookup.
+     */
+    @Benchmark
+    public OAuthClientConfiguration load() {
+        return new OAuthClientConfiguration(
+                mContext, mPrefs, new ByteArrayInputStream(mConfigurationBytes));
+    }
+
+    @Benchmark
+    public JSONObject fetchConfiguration() throws InvalidJsonDocumentException {
+        return mConfiguration.fetchConfiguration(
+                new ByteArrayInputStream(mConfigurationBytes));
+    }
+
+    @Benchmark
+    public OAuthClientConfiguration readConfiguration() throws InvalidJsonDocumentException {
+        mConfiguration.readConfiguration(mConfigurationJson);
+        return mConfiguration;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+
+import com.okta.android.json.InvalidJsonDocumentException;
+import com.okta.android.json.JsonParser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * The {@link JsonParser} accessors used to read the client configuration.
+ */
+@State(Scope.Thread)
+public class JsonParserBenchmark {
+
+    private JsonParser mParser;
+
+    @Setup
+    public void setUp() throws JSONException {
+        BenchmarkFixtures.setUpEnvironment();
+        mParser = JsonParser.forJson(
+                new JSONObject(BenchmarkFixtures.resource("okta_app_auth_config.json")));
+    }
+
+    @Benchmark
+    public String getRequiredString() throws InvalidJsonDocumentException {
+        return mParser.getRequiredString("client_id");
+    }
+
+    @Benchmark
+    public Uri getRequiredUri() throws InvalidJsonDocumentException {
+        return mParser.getRequiredUri("redirect_uri");
+    }
+
+    @Benchmark
+    public Uri getRequiredHttpsUri() throws InvalidJsonDocumentException {
+        return mParser.getRequiredHttpsUri("issuer_uri");
+    }
+
+    @Benchmark
+    public List<String> getRequiredStringArray() throws InvalidJsonDocumentException {
+        return mParser.getRequiredStringArray("scopes");
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import net.openid.appauth.AuthorizationRequest;
+import net.openid.appauth.AuthorizationServiceConfiguration;
+import net.openid.appauth.ResponseTypeValues;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Construction of the authorization and revocation requests.
+ */
+@State(Scope.Thread)
+public class RequestBenchmark {
+
+    private AuthorizationServiceConfiguration mServiceConfiguration;
+    private JSONObject mDiscoveryJson;
+    private String mAccessToken;
+    private AuthorizationParametersPool.Parameters mParameters;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.setUpEnvironment();
+        mServiceConfiguration = BenchmarkFixtures.serviceConfiguration();
+        mDiscoveryJson = BenchmarkFixtures.discoveryJson();
+        mAccessToken = BenchmarkFixtures.accessToken();
+        mParameters = AuthorizationParametersPool.getInstance().take();
+    }
+
+    /**
+     * The request built by {@code OktaAppAuth.createAuthRequest}, including taking PKCE, state
+     * and nonce values from the pool. Calls outpace the background refill, so this mostly
+     * measures generating the values on the calling thread, as after several quick logins.
+     */
+    @Benchmark
+    public AuthorizationRequest authorizationRequest() {
+        AuthorizationRequest.Builder builder = newAuthorizationRequestBuilder();
+        AuthorizationParametersPool.getInstance().take().applyTo(builder);
+        return builder.build();
+    }
+
+    /**
+     * The same request with values taken from a full pool, which is the usual case for a
+     * single login.
+     */
+    @Benchmark
+    public AuthorizationRequest authorizationRequestWithPooledParameters() {
+        AuthorizationRequest.Builder builder = newAuthorizationRequestBuilder();
+        mParameters.applyTo(builder);
+        return builder.build();
+    }
+
+    @Benchmark
+    public RevokeTokenRequest revokeTokenRequest() {
+        return new RevokeTokenRequest.Builder(mDiscoveryJson)
+                .addClientId(BenchmarkFixtures.CLIENT_ID)
+                .addToken(mAccessToken)
+                .build();
+    }
+
+    private AuthorizationRequest.Builder newAuthorizationRequestBuilder() {
+        return new AuthorizationRequest.Builder(
+                mServiceConfiguration,
+                BenchmarkFixtures.CLIENT_ID,
+                ResponseTypeValues.CODE,
+                BenchmarkFixtures.REDIRECT_URI)
+                .setScopes(BenchmarkFixtures.SCOPES);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.okta.appauth.android.OktaEventListener.Stage;
+
+/**
+ * Records events in {@link AuthMetrics} and delivers them to the process wide
+ * {@link OktaEventListener}. With the default listener, reporting an event costs reading the
+ * clock and a few atomic increments.
+ */
+final class AuthEvents {
+
+    private static final String TAG = "OktaAuthEvents";
+
+    private static volatile OktaEventListener sListener = OktaEventListener.NONE;
+
+    private AuthEvents() {
+        throw new AssertionError("no instances");
+    }
+
+    @AnyThread
+    static void setListener(@Nullable OktaEventListener listener) {
+        sListener = listener != null ? listener : OktaEventListener.NONE;
+    }
+
+    /**
+     * Reports the start of an operation.
+     *
+     * @param stage the operation
+     * @return the start time, to pass to {@link #end(Stage, long, long, Exception)}
+     */
+    @AnyThread
+    static long start(@NonNull Stage stage) {
+        long startTime = System.nanoTime();
+        // the start time doubles as the cookie that pairs the async trace section
+        AuthTrace.beginAsync(stage, (int) startTime);
+        OktaEventListener listener = sListener;
+        if (listener != OktaEventListener.NONE) {
+            try {
+                listener.onStart(stage);
+            } catch (RuntimeException ex) {
+                AuthLog.w(TAG, "Event listener failed", ex);
+            }
+        }
+        return startTime;
+    }
+
+    /**
+     * Reports the end of an operation.
+     *
+     * @param stage     the operation
+     * @param startTime the value returned by {@link #start(Stage)}
+     * @param byteCount the number of bytes read or written, {@code -1} if unknown
+     * @param error     the reason for the failure, {@code null} on success
+     */
+    @AnyThread
+    static void end(
+            @NonNull Stage stage,
+            long startTime,
+            long byteCount,
+            @Nullable Exception error) {
+        long durationNanos = System.nanoTime() - startTime;
+        AuthTrace.endAsync(stage, (int) startTime);
+        AuthMetrics.recordEnd(stage, durationNanos, error != null);
+        OktaEventListener listener = sListener;
+        if (listener == OktaEventListener.NONE) {
+            return;
+        }
+        try {
+            listener.onEnd(stage, durationNanos, byteCount, error);
+        } catch (RuntimeException ex) {
+            AuthLog.w(TAG, "Event listener failed", ex);
+        }
+    }
+
+    /**
+     * Reports whether an operation was served from a cache.
+     *
+     * @param stage the operation
+     * @param hit   {@code true} if the cached value was used
+     */
+    @AnyThread
+    static void cacheResult(@NonNull Stage stage, boolean hit) {
+        AuthMetrics.recordCacheResult(stage, hit);
+        OktaEventListener listener = sListener;
+        if (listener == OktaEventListener.NONE) {
+            return;
+        }
+        try {
+            listener.onCacheResult(stage, hit);
+        } catch (RuntimeException ex) {
+            AuthLog.w(TAG, "Event listener failed", ex);
+        }
+    }
+
+    /**
+     * Reports a change of state of a {@link CircuitBreaker}.
+     *
+     * @param host         the host of the breaker
+     * @param state        the new state
+     * @param retryDelayMs how long an open breaker fails requests for, {@code 0} otherwise
+     */
+    @AnyThread
+    static void circuitStateChanged(
+            @NonNull String host,
+            @NonNull CircuitBreaker.State state,
+            long retryDelayMs) {
+        OktaEventListener listener = sListener;
+        if (listener == OktaEventListener.NONE) {
+            return;
+        }
+        try {
+            listener.onCircuitStateChanged(host, state, retryDelayMs);
+        } catch (RuntimeException ex) {
+            AuthLog.w(TAG, "Event listener failed", ex);
+        }
+    }
+}
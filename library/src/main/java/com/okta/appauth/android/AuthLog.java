@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ * Logging for the SDK, delivered to the {@link OktaLogger} set by the app. Messages below the
+ * log level return after a single comparison; arguments are only formatted, with
+ * {@link String#format(Locale, String, Object...)}, when the message is logged.
+ * </p>
+ * <p>
+ * The overloads with fixed arguments avoid allocating a varargs array for disabled messages.
+ * Arguments that are cheap to pass but expensive to render, such as the configuration, should
+ * be passed as is and rendered by their {@code toString()}.
+ * </p>
+ */
+final class AuthLog {
+
+    private static final int DEFAULT_LEVEL = BuildConfig.DEBUG ? Log.DEBUG : Log.WARN;
+
+    private static volatile OktaLogger sLogger = OktaLogger.LOGCAT;
+    private static volatile int sLevel = DEFAULT_LEVEL;
+
+    private AuthLog() {
+        throw new AssertionError("no instances");
+    }
+
+    @AnyThread
+    static void setLogger(@Nullable OktaLogger logger) {
+        sLogger = logger != null ? logger : OktaLogger.LOGCAT;
+    }
+
+    @AnyThread
+    static void setLevel(int priority) {
+        sLevel = priority;
+    }
+
+    @AnyThread
+    static void reset() {
+        sLogger = OktaLogger.LOGCAT;
+        sLevel = DEFAULT_LEVEL;
+    }
+
+    @AnyThread
+    static boolean isLoggable(int priority) {
+        return priority >= sLevel;
+    }
+
+    @AnyThread
+    static void d(@NonNull String tag, @NonNull String message) {
+        if (isLoggable(Log.DEBUG)) {
+            log(Log.DEBUG, tag, message, null);
+        }
+    }
+
+    @AnyThread
+    static void d(@NonNull String tag, @NonNull String message, @Nullable Throwable tr) {
+        if (isLoggable(Log.DEBUG)) {
+            log(Log.DEBUG, tag, message, tr);
+        }
+    }
+
+    @AnyThread
+    static void d(@NonNull String tag, @NonNull String format, @Nullable Object arg) {
+        if (isLoggable(Log.DEBUG)) {
+            log(Log.DEBUG, tag, format(format, arg), null);
+        }
+    }
+
+    @AnyThread
+    static void i(@NonNull String tag, @NonNull String message) {
+        if (isLoggable(Log.INFO)) {
+            log(Log.INFO, tag, message, null);
+        }
+    }
+
+    @AnyThread
+    static void i(@NonNull String tag, @NonNull String message, @Nullable Throwable tr) {
+        if (isLoggable(Log.INFO)) {
+            log(Log.INFO, tag, message, tr);
+        }
+    }
+
+    @AnyThread
+    static void i(@NonNull String tag, @NonNull String format, @Nullable Object arg) {
+        if (isLoggable(Log.INFO)) {
+            log(Log.INFO, tag, format(format, arg), null);
+        }
+    }
+
+    @AnyThread
+    static void w(@NonNull String tag, @NonNull String message) {
+        if (isLoggable(Log.WARN)) {
+            log(Log.WARN, tag, message, null);
+        }
+    }
+
+    @AnyThread
+    static void w(@NonNull String tag, @NonNull String message, @Nullable Throwable tr) {
+        if (isLoggable(Log.WARN)) {
+            log(Log.WARN, tag, message, tr);
+        }
+    }
+
+    @AnyThread
+    static void w(@NonNull String tag, @NonNull String format, @Nullable Object arg) {
+        if (isLoggable(Log.WARN)) {
+            log(Log.WARN, tag, format(format, arg), null);
+        }
+    }
+
+    @AnyThread
+    static void w(@NonNull String tag, @NonNull String format, @Nullable Object arg,
+                  @Nullable Throwable tr) {
+        if (isLoggable(Log.WARN)) {
+            log(Log.WARN, tag, format(format, arg), tr);
+        }
+    }
+
+    @AnyThread
+    static void e(@NonNull String tag, @NonNull String message) {
+        if (isLoggable(Log.ERROR)) {
+            log(Log.ERROR, tag, message, null);
+        }
+    }
+
+    @AnyThread
+    static void e(@NonNull String tag, @NonNull String message, @Nullable Throwable tr) {
+        if (isLoggable(Log.ERROR)) {
+            log(Log.ERROR, tag, message, tr);
+        }
+    }
+
+    @AnyThread
+    static void e(@NonNull String tag, @NonNull String format, @Nullable Object arg) {
+        if (isLoggable(Log.ERROR)) {
+            log(Log.ERROR, tag, format(format, arg), null);
+        }
+    }
+
+    private static String format(String format, Object arg) {
+        return String.format(Locale.US, format, arg);
+    }
+
+    private static void log(int priority, String tag, String message, Throwable tr) {
+        try {
+            sLogger.log(priority, tag, message, tr);
+        } catch (RuntimeException ex) {
+            // a broken logger must not break authentication, and has nowhere to log to
+            OktaLogger.LOGCAT.log(Log.WARN, tag, "Logger failed", ex);
+        }
+    }
+}
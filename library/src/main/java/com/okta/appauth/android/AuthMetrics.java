@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.okta.appauth.android.OktaEventListener.Stage;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process wide counters and latency histograms for each {@link Stage}, fed by
+ * {@link AuthEvents}. Recording only updates atomics, so it never blocks and is cheap enough to
+ * stay enabled.
+ */
+final class AuthMetrics {
+
+    /**
+     * The upper bounds of the latency buckets, in milliseconds. Durations above the last bound
+     * are counted in an extra, final bucket.
+     */
+    static final long[] BUCKET_BOUNDS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    // authorized request outcomes, by the first digit of the status; 0 is for no response
+    static final int STATUS_CLASSES = 6;
+
+    private static final StageMetrics[] STAGES = new StageMetrics[Stage.values().length];
+    private static final AtomicLongArray RESPONSE_STATUS = new AtomicLongArray(STATUS_CLASSES);
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            STAGES[i] = new StageMetrics();
+        }
+    }
+
+    private AuthMetrics() {
+        throw new AssertionError("no instances");
+    }
+
+    @AnyThread
+    static void recordEnd(@NonNull Stage stage, long durationNanos, boolean failed) {
+        StageMetrics metrics = STAGES[stage.ordinal()];
+        metrics.mCount.incrementAndGet();
+        if (failed) {
+            metrics.mErrors.incrementAndGet();
+        }
+        metrics.mTotalNanos.addAndGet(durationNanos);
+        metrics.mBuckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMillis(durationNanos)));
+    }
+
+    @AnyThread
+    static void recordCacheResult(@NonNull Stage stage, boolean hit) {
+        StageMetrics metrics = STAGES[stage.ordinal()];
+        (hit ? metrics.mCacheHits : metrics.mCacheMisses).incrementAndGet();
+    }
+
+    /**
+     * Counts the response to an authorized request by status class.
+     *
+     * @param statusCode the HTTP status, or {@code -1} if there was no response
+     */
+    @AnyThread
+    static void recordResponseStatus(int statusCode) {
+        int statusClass = statusCode / 100;
+        RESPONSE_STATUS.incrementAndGet(
+                statusClass > 0 && statusClass < STATUS_CLASSES ? statusClass : 0);
+    }
+
+    @AnyThread
+    @NonNull
+    static MetricsSnapshot snapshot() {
+        Map<Stage, MetricsSnapshot.StageSnapshot> stages = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            StageMetrics metrics = STAGES[stage.ordinal()];
+            long[] buckets = new long[BUCKET_BOUNDS_MS.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = metrics.mBuckets.get(i);
+            }
+            stages.put(stage, new MetricsSnapshot.StageSnapshot(
+                    metrics.mCount.get(),
+                    metrics.mErrors.get(),
+                    metrics.mCacheHits.get(),
+                    metrics.mCacheMisses.get(),
+                    metrics.mTotalNanos.get(),
+                    buckets));
+        }
+        long[] responseStatus = new long[STATUS_CLASSES];
+        for (int i = 0; i < STATUS_CLASSES; i++) {
+            responseStatus[i] = RESPONSE_STATUS.get(i);
+        }
+        return new MetricsSnapshot(stages, responseStatus);
+    }
+
+    @VisibleForTesting
+    static void reset() {
+        for (StageMetrics metrics : STAGES) {
+            metrics.clear();
+        }
+        for (int i = 0; i < STATUS_CLASSES; i++) {
+            RESPONSE_STATUS.set(i, 0);
+        }
+    }
+
+    private static int bucket(long durationMillis) {
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            if (durationMillis <= BUCKET_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MS.length;
+    }
+
+    private static final class StageMetrics {
+        final AtomicLong mCount = new AtomicLong();
+        final AtomicLong mErrors = new AtomicLong();
+        final AtomicLong mCacheHits = new AtomicLong();
+        final AtomicLong mCacheMisses = new AtomicLong();
+        final AtomicLong mTotalNanos = new AtomicLong();
+        final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+
+        void clear() {
+            mCount.set(0);
+            mErrors.set(0);
+            mCacheHits.set(0);
+            mCacheMisses.set(0);
+            mTotalNanos.set(0);
+            for (int i = 0; i < mBuckets.length(); i++) {
+                mBuckets.set(i, 0);
+            }
+        }
+    }
+}
@@ -17,62 +17,104 @@ package com.okta.appauth.android;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.support.annotation.AnyThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
-import android.util.Log;
+import android.support.annotation.WorkerThread;
+
+import com.okta.appauth.android.OktaEventListener.Stage;
 
 import net.openid.appauth.AuthState;
 import net.openid.appauth.AuthorizationException;
 import net.openid.appauth.AuthorizationResponse;
+import net.openid.appauth.AuthorizationServiceConfiguration;
 import net.openid.appauth.TokenResponse;
 import org.json.JSONException;
+import org.json.JSONObject;
 
-import java.lang.ref.WeakReference;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * <p>
  * A Manager for the Okta Authentication State. Handles the underlying {@link AuthState} from
  * the AppAuth library and stores it inside of {@link SharedPreferences}.
+ * </p>
+ * <p>
+ * Updates are applied to a copy of the current state, and the copy then replaces it; one
+ * update at a time. Concurrent updates are therefore not lost, and a state returned by
+ * {@link #getCurrent()} is never seen half updated; read all the values needed from one state.
+ * </p>
  */
 @SuppressWarnings("WeakerAccess")
 public class AuthStateManager {
 
     private static final String TAG = "AuthStateManager";
 
-    private static final AtomicReference<WeakReference<AuthStateManager>> INSTANCE_REF =
-            new AtomicReference<>(new WeakReference<AuthStateManager>(null));
-
     @VisibleForTesting
     static final String PREFS_NAME = "OktaAppAuthState";
     @VisibleForTesting
     static final String KEY_STATE = "state";
 
+    // the key of the refresh token in the serialized AuthState
+    private static final String KEY_STATE_REFRESH_TOKEN = "refreshToken";
+
     private final SharedPreferences mPrefs;
     private final ReentrantLock mPrefsLock;
+    // held across the read, update and store of the state, so that updates are not lost
+    private final Object mUpdateLock = new Object();
     private final AtomicReference<AuthState> mCurrentAuthState;
+    private volatile IdTokenVerifier mIdTokenVerifier;
 
     /**
-     * Retrieve the manager object via the static {@link WeakReference} or construct a new instance.
+     * Retrieve the process wide manager object, constructing it on first use.
      * Stores the state in the {@link SharedPreferences} that we get from the
-     * {@link Context#getSharedPreferences(String, int)} in {@link Context#MODE_PRIVATE}.
+     * {@link Context#getSharedPreferences(String, int)} in {@link Context#MODE_PRIVATE}. When the
+     * app declares an {@link AuthStateProvider} in another process, the state is read and written
+     * through that provider instead.
      *
      * @param context The Context from which to get the application's environment
      * @return an AuthStateManager object
      */
     @AnyThread
-    public static AuthStateManager getInstance(@NonNull Context context) {
-        AuthStateManager manager = INSTANCE_REF.get().get();
-        if (manager == null) {
-            manager = new AuthStateManager(
-                    context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
-                    new ReentrantLock()
-            );
-        }
+    public static AuthStateManager getInstance(@NonNull final Context context) {
+        return getInstance(context, null);
+    }
 
-        return manager;
+    /**
+     * Retrieve the process wide manager object of an account, constructing it on first use.
+     * Each account stores its state in its own {@link SharedPreferences} file, and has its own
+     * lock around it. Only the default account is shared through an {@link AuthStateProvider}.
+     *
+     * @param context   The Context from which to get the application's environment
+     * @param accountId The account, or {@code null} for the default account
+     * @return an AuthStateManager object
+     */
+    @AnyThread
+    public static AuthStateManager getInstance(
+            @NonNull final Context context,
+            @Nullable final String accountId) {
+        return InstanceRegistry.getOrCreate(
+                AuthStateManager.class,
+                accountId,
+                new InstanceRegistry.Factory<AuthStateManager>() {
+                    @NonNull
+                    @Override
+                    public AuthStateManager create() {
+                        if (accountId == null && AuthStateProvider.isRemote(context)) {
+                            AuthLog.i(TAG, "Using the auth state of the AuthStateProvider process");
+                            return new RemoteAuthStateManager(context.getApplicationContext());
+                        }
+                        return new AuthStateManager(
+                                context.getSharedPreferences(
+                                        InstanceRegistry.partitionName(PREFS_NAME, accountId),
+                                        Context.MODE_PRIVATE),
+                                new ReentrantLock()
+                        );
+                    }
+                });
     }
 
     @VisibleForTesting
@@ -80,8 +122,6 @@ public class AuthStateManager {
         mPrefs = prefs;
         mPrefsLock = prefsLock;
         mCurrentAuthState = new AtomicReference<>();
-
-        INSTANCE_REF.set(new WeakReference<>(this));
     }
 
     /**
@@ -113,8 +153,10 @@ public class AuthStateManager {
     @AnyThread
     @NonNull
     public AuthState replace(@NonNull AuthState state) {
-        writeState(state);
-        mCurrentAuthState.set(state);
+        synchronized (mUpdateLock) {
+            writeState(state);
+            mCurrentAuthState.set(state);
+        }
         return state;
     }
 
@@ -131,68 +173,256 @@ public class AuthStateManager {
     public AuthState updateAfterAuthorization(
             @Nullable AuthorizationResponse response,
             @Nullable AuthorizationException ex) {
-        AuthState current = getCurrent();
-        current.update(response, ex);
-        return replace(current);
+        synchronized (mUpdateLock) {
+            AuthState updated = copyOf(getCurrent());
+            updated.update(response, ex);
+            return replace(updated);
+        }
     }
 
     /**
      * Called after the token exchange is complete or a refresh token is used to acquire a new
-     * access token.
+     * access token. When ID token signature verification is enabled, a response with an ID
+     * token that fails verification is discarded, the current state is kept and a warning is
+     * logged with the reason; as this may need to fetch the issuer's signing keys, it should
+     * then not be called on the main thread.
      *
      * @param response The TokenResponse from the Authorization Server
      * @param ex Any AuthorizationException that occurred during the token exchange
      * @return The updated AuthState
+     * @see OktaAppAuth#setIdTokenSignatureVerification(boolean)
      */
     @AnyThread
     @NonNull
     public AuthState updateAfterTokenResponse(
             @Nullable TokenResponse response,
             @Nullable AuthorizationException ex) {
-        AuthState current = getCurrent();
-        current.update(response, ex);
-        return replace(current);
+        AuthorizationException error = ex == null ? verifyIdToken(response) : null;
+        if (error != null) {
+            AuthLog.w(TAG, "Discarding token response, keeping the current state: %s",
+                    error.errorDescription, error);
+            return getCurrent();
+        }
+        return updateAfterVerifiedTokenResponse(response, ex, null);
+    }
+
+    /**
+     * Like {@link #updateAfterTokenResponse(TokenResponse, AuthorizationException)}, for a
+     * response whose ID token the caller has already checked with {@link #verifyIdToken}. For the
+     * response to a refresh, the response is discarded if the refresh token it was made with is
+     * no longer current, because the session was cleared or replaced while it was in flight.
+     *
+     * @param response     The TokenResponse from the Authorization Server
+     * @param ex           Any AuthorizationException that occurred during the token request
+     * @param refreshToken The refresh token the request was made with, or {@code null} to
+     *                     apply the response regardless
+     * @return The updated AuthState
+     */
+    @AnyThread
+    @NonNull
+    AuthState updateAfterVerifiedTokenResponse(
+            @Nullable TokenResponse response,
+            @Nullable AuthorizationException ex,
+            @Nullable String refreshToken) {
+        if (ex == null && response != null) {
+            ServerClock.onIdTokenIssued(response.idToken);
+        }
+        synchronized (mUpdateLock) {
+            AuthState current = getCurrent();
+            if (refreshToken != null && !refreshToken.equals(current.getRefreshToken())) {
+                AuthLog.i(TAG, "Discarding the response to a refresh of a replaced session");
+                return current;
+            }
+            AuthState updated = copyOf(current);
+            updated.update(response, ex);
+            return replace(updated);
+        }
+    }
+
+    /**
+     * Stores a refresh token that the server rotated while minting a token outside of the
+     * current state, such as an access token for a narrower scope. The old refresh token may
+     * no longer be accepted, so it is replaced without touching the rest of the state. Nothing
+     * is stored if the session was cleared or replaced while the request was in flight.
+     *
+     * @param usedRefreshToken The refresh token the request was made with
+     * @param refreshToken     The new refresh token
+     */
+    @AnyThread
+    void updateRefreshToken(@NonNull String usedRefreshToken, @NonNull String refreshToken) {
+        synchronized (mUpdateLock) {
+            AuthState current = getCurrent();
+            if (!usedRefreshToken.equals(current.getRefreshToken())
+                    || refreshToken.equals(usedRefreshToken)) {
+                return;
+            }
+            // AuthState has no setter for the refresh token alone
+            try {
+                JSONObject json = current.jsonSerialize();
+                json.put(KEY_STATE_REFRESH_TOKEN, refreshToken);
+                replace(AuthState.jsonDeserialize(json));
+            } catch (JSONException ex) {
+                AuthLog.w(TAG, "Failed to store the rotated refresh token", ex);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached state, so that the next {@link #getCurrent()} reads the stored one.
+     */
+    @AnyThread
+    void invalidate() {
+        mCurrentAuthState.set(null);
+    }
+
+    /**
+     * Replaces the cached state without storing it, for state that has already been stored by
+     * another process.
+     *
+     * @param state The stored AuthState
+     */
+    @AnyThread
+    void replaceCached(@NonNull AuthState state) {
+        mCurrentAuthState.set(state);
+    }
+
+    /**
+     * Enables or disables ID token signature verification.
+     *
+     * @param verifier The verifier to check ID tokens with, or {@code null} to disable checks
+     */
+    @AnyThread
+    void setIdTokenVerifier(@Nullable IdTokenVerifier verifier) {
+        mIdTokenVerifier = verifier;
+    }
+
+    @AnyThread
+    boolean isIdTokenVerificationEnabled() {
+        return mIdTokenVerifier != null;
+    }
+
+    /**
+     * Checks the signature of the ID token in a token response, if verification is enabled.
+     *
+     * @param response The TokenResponse from the Authorization Server
+     * @return {@code null} if the ID token is valid, if there is none or if verification is
+     *     disabled; {@link AuthorizationException.GeneralErrors#ID_TOKEN_VALIDATION_ERROR}
+     *     otherwise
+     */
+    @WorkerThread
+    @Nullable
+    AuthorizationException verifyIdToken(@Nullable TokenResponse response) {
+        IdTokenVerifier verifier = mIdTokenVerifier;
+        if (verifier == null || response == null || response.idToken == null) {
+            return null;
+        }
+
+        Uri jwksUri = getJwksUri();
+        if (jwksUri == null) {
+            AuthLog.w(TAG, "No jwks_uri in the discovery document, unable to verify ID token");
+            return AuthorizationException.GeneralErrors.ID_TOKEN_VALIDATION_ERROR;
+        }
+        boolean traced = AuthTrace.begin(AuthTrace.VERIFY_ID_TOKEN);
+        try {
+            return verifier.verify(response.idToken, jwksUri)
+                    ? null
+                    : AuthorizationException.GeneralErrors.ID_TOKEN_VALIDATION_ERROR;
+        } finally {
+            AuthTrace.end(traced);
+        }
+    }
+
+    /**
+     * Fetches the issuer's signing keys, if ID token verification is enabled, so that the first
+     * token response doesn't have to wait for them.
+     */
+    @WorkerThread
+    void prefetchIdTokenKeys() {
+        IdTokenVerifier verifier = mIdTokenVerifier;
+        Uri jwksUri = getJwksUri();
+        if (verifier != null && jwksUri != null) {
+            verifier.prefetch(jwksUri);
+        }
+    }
+
+    @Nullable
+    private Uri getJwksUri() {
+        AuthorizationServiceConfiguration config =
+                getCurrent().getAuthorizationServiceConfiguration();
+        if (config == null || config.discoveryDoc == null) {
+            return null;
+        }
+        return config.discoveryDoc.getJwksUri();
+    }
+
+    private static AuthState copyOf(AuthState state) {
+        try {
+            return AuthState.jsonDeserialize(state.jsonSerialize());
+        } catch (JSONException ex) {
+            // the JSON was just written by AuthState itself
+            throw new IllegalStateException("Unable to copy the auth state", ex);
+        }
     }
 
     @AnyThread
     @NonNull
     @VisibleForTesting
     AuthState readState() {
-        mPrefsLock.lock();
+        long start = AuthEvents.start(Stage.READ_STATE);
+        boolean traced = AuthTrace.begin(AuthTrace.READ_STATE);
         try {
-            String currentState = mPrefs.getString(KEY_STATE, null);
+            String currentState;
+            mPrefsLock.lock();
+            try {
+                currentState = mPrefs.getString(KEY_STATE, null);
+            } finally {
+                mPrefsLock.unlock();
+            }
             if (currentState == null) {
+                AuthEvents.end(Stage.READ_STATE, start, 0, null);
                 return new AuthState();
             }
 
             try {
-                return AuthState.jsonDeserialize(currentState);
+                AuthState state = AuthState.jsonDeserialize(currentState);
+                AuthEvents.end(Stage.READ_STATE, start, currentState.length(), null);
+                return state;
             } catch (JSONException ex) {
-                Log.w(TAG, "Failed to deserialize stored auth state - discarding");
+                AuthLog.w(TAG, "Failed to deserialize stored auth state - discarding");
+                AuthEvents.end(Stage.READ_STATE, start, currentState.length(), ex);
                 return new AuthState();
             }
         } finally {
-            mPrefsLock.unlock();
+            AuthTrace.end(traced);
         }
     }
 
     @AnyThread
     @VisibleForTesting
     void writeState(@Nullable AuthState state) {
+        long start = AuthEvents.start(Stage.WRITE_STATE);
+        boolean traced = AuthTrace.begin(AuthTrace.WRITE_STATE);
+        String json = state != null ? state.jsonSerializeString() : null;
         mPrefsLock.lock();
         try {
             SharedPreferences.Editor editor = mPrefs.edit();
-            if (state == null) {
+            if (json == null) {
                 editor.remove(KEY_STATE);
             } else {
-                editor.putString(KEY_STATE, state.jsonSerializeString());
+                editor.putString(KEY_STATE, json);
             }
 
             if (!editor.commit()) {
-                throw new IllegalStateException("Failed to write state to shared prefs");
+                IllegalStateException ex =
+                        new IllegalStateException("Failed to write state to shared prefs");
+                AuthEvents.end(Stage.WRITE_STATE, start, -1, ex);
+                throw ex;
             }
         } finally {
             mPrefsLock.unlock();
+            AuthTrace.end(traced);
         }
+        // the state is ASCII JSON, so its length is its size in bytes
+        AuthEvents.end(Stage.WRITE_STATE, start, json != null ? json.length() : 0, null);
     }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.app.ActivityManager;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.TokenResponse;
+import org.json.JSONException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shares the auth state between the processes of an app. The process that hosts this provider
+ * owns the stored state and performs all token refreshes; {@link AuthStateManager} and
+ * {@link OktaAppAuth} in other processes read and write the state, and request refreshes,
+ * through it. This avoids each process refreshing on its own, which doubles the traffic to the
+ * token endpoint and can invalidate rotated refresh tokens.
+ * <p/>
+ * The library declares the provider, not exported, in the app's main process. To have another
+ * process own the state, declare it again in the app's manifest with that process:
+ * <pre>
+ * {@code
+ * <provider
+ *     android:name="com.okta.appauth.android.AuthStateProvider"
+ *     android:authorities="${applicationId}.okta.authstate"
+ *     android:process=":auth"
+ *     android:exported="false" />
+ * }
+ * </pre>
+ * Calls from other apps are rejected, as the state holds the refresh token; on API 16 a
+ * provider is exported unless declared otherwise.
+ */
+public class AuthStateProvider extends ContentProvider {
+
+    private static final String TAG = "OktaAuthStateProvider";
+
+    private static final String AUTHORITY_SUFFIX = ".okta.authstate";
+
+    @VisibleForTesting
+    static final String METHOD_GET = "get";
+    @VisibleForTesting
+    static final String METHOD_REPLACE = "replace";
+    @VisibleForTesting
+    static final String METHOD_REFRESH = "refresh";
+    @VisibleForTesting
+    static final String METHOD_MINT_SCOPED_TOKEN = "mintScopedToken";
+
+    @VisibleForTesting
+    static final String KEY_STATE = "state";
+    @VisibleForTesting
+    static final String KEY_ACCESS_TOKEN = "accessToken";
+    @VisibleForTesting
+    static final String KEY_ERROR = "error";
+    @VisibleForTesting
+    static final String KEY_TOKEN_RESPONSE = "tokenResponse";
+
+    private final Object mRefreshLock = new Object();
+
+    // held here, as SharedPreferences only keeps a weak reference to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener mStateListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    if (AuthStateManager.KEY_STATE.equals(key)) {
+                        getContext().getContentResolver().notifyChange(
+                                getUri(getContext()), null);
+                    }
+                }
+            };
+
+    /**
+     * The Uri that other processes observe for changes to the auth state.
+     *
+     * @param context Any Context of the app
+     * @return the Uri of the provider
+     */
+    @NonNull
+    static Uri getUri(@NonNull Context context) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(context.getPackageName() + AUTHORITY_SUFFIX)
+                .build();
+    }
+
+    /**
+     * Whether the provider is declared and runs in a process other than the calling one.
+     *
+     * @param context Any Context of the app
+     * @return {@code true} if the auth state is owned by another process
+     */
+    static boolean isRemote(@NonNull Context context) {
+        ProviderInfo info = context.getPackageManager().resolveContentProvider(
+                context.getPackageName() + AUTHORITY_SUFFIX, 0);
+        if (info == null) {
+            return false;
+        }
+        String processName = getProcessName(context);
+        return processName != null && !processName.equals(info.processName);
+    }
+
+    @Nullable
+    private static String getProcessName(Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        List<ActivityManager.RunningAppProcessInfo> processes =
+                activityManager != null ? activityManager.getRunningAppProcesses() : null;
+        if (processes == null) {
+            return null;
+        }
+        int pid = Process.myPid();
+        for (ActivityManager.RunningAppProcessInfo process : processes) {
+            if (process.pid == pid) {
+                return process.processName;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean onCreate() {
+        getContext().getSharedPreferences(AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE)
+                .registerOnSharedPreferenceChangeListener(mStateListener);
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        if (Binder.getCallingUid() != Process.myUid()) {
+            throw new SecurityException("AuthStateProvider may only be called by its own app");
+        }
+        AuthStateManager stateManager = AuthStateManager.getInstance(getContext());
+        Bundle result = new Bundle();
+        switch (method) {
+            case METHOD_GET:
+                result.putString(KEY_STATE, stateManager.getCurrent().jsonSerializeString());
+                return result;
+            case METHOD_REPLACE:
+                try {
+                    stateManager.replace(AuthState.jsonDeserialize(arg));
+                } catch (JSONException ex) {
+                    throw new IllegalArgumentException("Invalid auth state", ex);
+                }
+                return result;
+            case METHOD_REFRESH:
+                AuthorizationException error = refresh(arg);
+                if (error != null) {
+                    result.putString(KEY_ERROR, error.toJsonString());
+                }
+                result.putString(KEY_STATE, stateManager.getCurrent().jsonSerializeString());
+                return result;
+            case METHOD_MINT_SCOPED_TOKEN:
+                mintScopedToken(arg, result);
+                return result;
+            default:
+                throw new IllegalArgumentException("Unknown method " + method);
+        }
+    }
+
+    /*
+     * Refreshes are serialized, and a caller whose access token has already been replaced by
+     * another caller's refresh gets the new tokens without another round trip.
+     */
+    @WorkerThread
+    @Nullable
+    private AuthorizationException refresh(@Nullable String callerAccessToken) {
+        synchronized (mRefreshLock) {
+            OktaAppAuth oktaAppAuth = OktaAppAuth.getInstance(getContext());
+            AuthState current = oktaAppAuth.mAuthStateManager.getCurrent();
+            if (!TextUtils.equals(callerAccessToken, current.getAccessToken())
+                    && !current.getNeedsTokenRefresh()) {
+                AuthLog.d(TAG, "Tokens were refreshed for another caller");
+                return null;
+            }
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<AuthorizationException> error = new AtomicReference<>();
+            oktaAppAuth.refreshAccessToken(new OktaAppAuth.OktaAuthListener() {
+                @Override
+                public void onSuccess() {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onTokenFailure(@NonNull AuthorizationException ex) {
+                    error.set(ex);
+                    latch.countDown();
+                }
+            });
+
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return AuthorizationException.GeneralErrors.NETWORK_ERROR;
+            }
+            return error.get();
+        }
+    }
+
+    /*
+     * Mints the token with this process's OktaAppAuth, so that the refresh token is spent in
+     * turn with this process's refreshes and the rotated one is stored once.
+     */
+    @WorkerThread
+    private void mintScopedToken(@Nullable String scopes, Bundle result) {
+        if (TextUtils.isEmpty(scopes)) {
+            throw new IllegalArgumentException("No scopes to mint a token for");
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<TokenResponse> response = new AtomicReference<>();
+        final AtomicReference<AuthorizationException> error = new AtomicReference<>();
+        OktaAppAuth.getInstance(getContext()).mintScopedToken(
+                new HashSet<>(Arrays.asList(scopes.split(" "))),
+                new ScopedTokenCache.FetchCallback() {
+                    @Override
+                    public void onComplete(
+                            @Nullable TokenResponse tokenResponse,
+                            @Nullable AuthorizationException ex) {
+                        response.set(tokenResponse);
+                        error.set(ex);
+                        latch.countDown();
+                    }
+                });
+
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            error.set(AuthorizationException.GeneralErrors.NETWORK_ERROR);
+        }
+        if (error.get() != null) {
+            result.putString(KEY_ERROR, error.get().toJsonString());
+        } else if (response.get() != null) {
+            result.putString(KEY_TOKEN_RESPONSE, response.get().jsonSerializeString());
+        }
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection,
+                        @Nullable String selection, @Nullable String[] selectionArgs,
+                        @Nullable String sortOrder) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values,
+                      @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+}
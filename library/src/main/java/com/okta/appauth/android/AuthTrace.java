@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.Build;
+import android.os.Trace;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+
+import com.okta.appauth.android.OktaEventListener.Stage;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * <p>
+ * Optional {@link Trace} sections, so that the SDK's work is labelled in system traces. Work
+ * that runs on a single thread gets a regular section; each {@link Stage} reported to
+ * {@link AuthEvents} also gets an async section named {@code Okta:<STAGE>}, which spans the
+ * network calls and callbacks of the operation.
+ * </p>
+ * <p>
+ * Sections need API 18. The SDK is compiled against API 28, so async sections are written
+ * through reflection: {@code beginAsyncSection} from API 29, and the hidden
+ * {@code asyncTraceBegin} before. They are skipped if neither can be found.
+ * </p>
+ */
+final class AuthTrace {
+
+    private static final String TAG = "OktaAuthTrace";
+
+    // section names are part of the documented behavior, keep them stable
+    static final String INIT = "Okta:init";
+    static final String PARSE_CONFIGURATION = "Okta:parseConfiguration";
+    static final String READ_STATE = "Okta:readState";
+    static final String WRITE_STATE = "Okta:writeState";
+    static final String CREATE_AUTHORIZATION_SERVICE = "Okta:createAuthorizationService";
+    static final String PREPARE_AUTH_REQUEST = "Okta:prepareAuthRequest";
+    static final String VERIFY_ID_TOKEN = "Okta:verifyIdToken";
+
+    private static final String[] STAGE_SECTIONS = new String[Stage.values().length];
+
+    static {
+        for (Stage stage : Stage.values()) {
+            STAGE_SECTIONS[stage.ordinal()] = "Okta:" + stage.name();
+        }
+    }
+
+    private static volatile boolean sEnabled;
+
+    private AuthTrace() {
+        throw new AssertionError("no instances");
+    }
+
+    @AnyThread
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Begins a section on the current thread.
+     *
+     * @param name the section name
+     * @return whether a section was begun, to pass to {@link #end(boolean)}
+     */
+    @AnyThread
+    static boolean begin(@NonNull String name) {
+        if (!sEnabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return false;
+        }
+        Trace.beginSection(name);
+        return true;
+    }
+
+    /**
+     * Ends the section begun on the current thread, if there is one.
+     *
+     * @param begun the value returned by {@link #begin(String)}
+     */
+    @AnyThread
+    static void end(boolean begun) {
+        if (begun) {
+            Trace.endSection();
+        }
+    }
+
+    @AnyThread
+    static void beginAsync(@NonNull Stage stage, int cookie) {
+        if (sEnabled && AsyncSections.BEGIN != null) {
+            AsyncSections.invoke(AsyncSections.BEGIN, STAGE_SECTIONS[stage.ordinal()], cookie);
+        }
+    }
+
+    @AnyThread
+    static void endAsync(@NonNull Stage stage, int cookie) {
+        if (sEnabled && AsyncSections.END != null) {
+            AsyncSections.invoke(AsyncSections.END, STAGE_SECTIONS[stage.ordinal()], cookie);
+        }
+    }
+
+    /*
+     * Resolved on first use, so that apps that don't enable tracing never pay for reflection.
+     */
+    private static final class AsyncSections {
+        static final long TRACE_TAG_APP;
+        static final Method BEGIN;
+        static final Method END;
+
+        static {
+            long tag = 0;
+            Method begin = null;
+            Method end = null;
+            try {
+                if (Build.VERSION.SDK_INT >= 29) {
+                    begin = Trace.class.getMethod("beginAsyncSection", String.class, int.class);
+                    end = Trace.class.getMethod("endAsyncSection", String.class, int.class);
+                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                    tag = Trace.class.getField("TRACE_TAG_APP").getLong(null);
+                    begin = Trace.class.getMethod(
+                            "asyncTraceBegin", long.class, String.class, int.class);
+                    end = Trace.class.getMethod(
+                            "asyncTraceEnd", long.class, String.class, int.class);
+                }
+            } catch (NoSuchMethodException | NoSuchFieldException | IllegalAccessException ex) {
+                AuthLog.i(TAG, "Async trace sections are not available");
+                begin = null;
+                end = null;
+            }
+            TRACE_TAG_APP = tag;
+            BEGIN = begin;
+            END = end;
+        }
+
+        static void invoke(Method method, String name, int cookie) {
+            try {
+                if (Build.VERSION.SDK_INT >= 29) {
+                    method.invoke(null, name, cookie);
+                } else {
+                    method.invoke(null, TRACE_TAG_APP, name, cookie);
+                }
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                AuthLog.d(TAG, "Failed to write async trace section", ex);
+            }
+        }
+    }
+}
@@ -17,7 +17,9 @@ package com.okta.appauth.android;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,16 +30,18 @@ import java.util.Map;
  */
 public class AuthenticationPayload {
 
-    private String mState;
-    private String mLoginHint;
-    private Map<String, String> mAdditionalParameters;
+    private final String mState;
+    private final String mLoginHint;
+    private final Map<String, String> mAdditionalParameters;
 
     private AuthenticationPayload(String state,
                                   String loginHint,
                                   Map<String, String> additionalParameters) {
         this.mState = state;
         this.mLoginHint = loginHint;
-        this.mAdditionalParameters = additionalParameters;
+        // copied so that later changes to the builder can't alter an existing payload
+        this.mAdditionalParameters =
+                Collections.unmodifiableMap(new HashMap<>(additionalParameters));
     }
 
     /**
@@ -136,9 +140,35 @@ public class AuthenticationPayload {
     /**
      * Additional Parameters getter.
      *
-     * @return additional parameter
+     * @return additional parameter, which can't be modified
      */
     public Map<String, String> getAdditionalParameters() {
         return mAdditionalParameters;
     }
+
+    /**
+     * Payloads are equal when they have the same state, login hint and additional parameters.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        AuthenticationPayload other = (AuthenticationPayload) obj;
+        return TextUtils.equals(mState, other.mState)
+                && TextUtils.equals(mLoginHint, other.mLoginHint)
+                && mAdditionalParameters.equals(other.mAdditionalParameters);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mState != null ? mState.hashCode() : 0;
+        result = 31 * result + (mLoginHint != null ? mLoginHint.hashCode() : 0);
+        result = 31 * result + mAdditionalParameters.hashCode();
+        return result;
+    }
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.util.Base64;
+
+import net.openid.appauth.AuthorizationRequest;
+import net.openid.appauth.CodeVerifierUtil;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A small pool of pre-generated PKCE code verifiers, states and nonces. Generating them needs
+ * {@link SecureRandom} and a SHA-256 digest; the first use of either after a cold start is
+ * slow, so the pool is filled on a background thread and request building only has to take a
+ * ready-made set of values.
+ */
+final class AuthorizationParametersPool {
+
+    @VisibleForTesting
+    static final int CAPACITY = 4;
+
+    // matches the entropy AppAuth uses for the state and nonce values it generates
+    private static final int STATE_ENTROPY_BYTES = 16;
+    private static final int ENCODING_FLAGS = Base64.NO_WRAP | Base64.NO_PADDING | Base64.URL_SAFE;
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+    private final BlockingQueue<Parameters> mPool = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicBoolean mFillScheduled = new AtomicBoolean();
+    private final SecureRandom mRandom = new SecureRandom();
+    private final Executor mExecutor;
+
+    private final Runnable mFillTask = new Runnable() {
+        @Override
+        public void run() {
+            mFillScheduled.set(false);
+            fill();
+        }
+    };
+
+    /**
+     * Returns the process wide pool.
+     *
+     * @return the AuthorizationParametersPool
+     */
+    @AnyThread
+    static AuthorizationParametersPool getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    @VisibleForTesting
+    AuthorizationParametersPool(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Schedules the pool to be filled in the background, if it is not already full.
+     */
+    @AnyThread
+    void prefill() {
+        if (mPool.remainingCapacity() > 0 && mFillScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(mFillTask);
+        }
+    }
+
+    /**
+     * Takes a set of parameters from the pool. Falls back to generating them on the calling
+     * thread when the pool is empty. Each set is handed out only once.
+     *
+     * @return unused authorization request parameters
+     */
+    @AnyThread
+    @NonNull
+    Parameters take() {
+        Parameters parameters = mPool.poll();
+        if (parameters == null) {
+            parameters = generate();
+        }
+        prefill();
+        return parameters;
+    }
+
+    @WorkerThread
+    @VisibleForTesting
+    void fill() {
+        while (mPool.remainingCapacity() > 0) {
+            if (!mPool.offer(generate())) {
+                return;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    int size() {
+        return mPool.size();
+    }
+
+    private Parameters generate() {
+        String codeVerifier = CodeVerifierUtil.generateRandomCodeVerifier(
+                mRandom,
+                CodeVerifierUtil.DEFAULT_CODE_VERIFIER_ENTROPY);
+        return new Parameters(
+                codeVerifier,
+                CodeVerifierUtil.deriveCodeVerifierChallenge(codeVerifier),
+                CodeVerifierUtil.getCodeVerifierChallengeMethod(),
+                generateRandomString(),
+                generateRandomString());
+    }
+
+    private String generateRandomString() {
+        byte[] random = new byte[STATE_ENTROPY_BYTES];
+        mRandom.nextBytes(random);
+        return Base64.encodeToString(random, ENCODING_FLAGS);
+    }
+
+    /**
+     * A single-use set of PKCE code verifier, state and nonce values.
+     */
+    static final class Parameters {
+        final String mCodeVerifier;
+        final String mCodeVerifierChallenge;
+        final String mCodeVerifierChallengeMethod;
+        final String mState;
+        final String mNonce;
+
+        Parameters(String codeVerifier,
+                   String codeVerifierChallenge,
+                   String codeVerifierChallengeMethod,
+                   String state,
+                   String nonce) {
+            mCodeVerifier = codeVerifier;
+            mCodeVerifierChallenge = codeVerifierChallenge;
+            mCodeVerifierChallengeMethod = codeVerifierChallengeMethod;
+            mState = state;
+            mNonce = nonce;
+        }
+
+        /**
+         * Sets the code verifier, state and nonce of the given builder.
+         *
+         * @param builder the builder to update
+         * @return the same builder
+         */
+        AuthorizationRequest.Builder applyTo(@NonNull AuthorizationRequest.Builder builder) {
+            return builder
+                    .setCodeVerifier(
+                            mCodeVerifier,
+                            mCodeVerifierChallenge,
+                            mCodeVerifierChallengeMethod)
+                    .setState(mState)
+                    .setNonce(mNonce);
+        }
+    }
+
+    private static final class Holder {
+        static final AuthorizationParametersPool INSTANCE = new AuthorizationParametersPool(
+                createExecutor());
+
+        private static Executor createExecutor() {
+            // a single thread that goes away when the pool has been idle for a while
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    1, 1,
+                    IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.os.SystemClock;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Stops the SDK from sending requests to a host that is rate limiting it or failing. There is
+ * one breaker per host, shared by every request the SDK makes to it: discovery, token, userinfo,
+ * revocation and signing key requests, and {@link OktaAppAuth#performAuthorizedRequest} calls
+ * to the issuer.
+ * </p>
+ * <p>
+ * A {@code 429} response, or a {@code 503} with a {@code Retry-After} header, opens the breaker
+ * straight away; other {@code 5xx} responses open it after {@value #FAILURE_THRESHOLD} in a
+ * row. While it is open, requests fail fast with a {@link CircuitOpenException} instead of
+ * reaching the network. The breaker stays open for the time given by {@code Retry-After}, or
+ * else for a backoff that doubles each time it opens again, with random jitter so that devices
+ * don't retry in step. After that a single request is let through as a probe, and its response
+ * closes the breaker or opens it again.
+ * </p>
+ *
+ * @see OktaAppAuth#getCircuitBreaker()
+ * @see OktaEventListener#onCircuitStateChanged(String, State, long)
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CircuitBreaker {
+
+    private static final String TAG = "OktaCircuitBreaker";
+
+    @VisibleForTesting
+    static final int FAILURE_THRESHOLD = 3;
+    @VisibleForTesting
+    static final long BASE_BACKOFF_MS = TimeUnit.SECONDS.toMillis(1);
+    @VisibleForTesting
+    static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(5);
+    // a Retry-After past this is treated as a mistake rather than honoured
+    @VisibleForTesting
+    static final long MAX_RETRY_AFTER_MS = TimeUnit.HOURS.toMillis(1);
+    // a probe that never reports back doesn't keep the breaker half open forever
+    @VisibleForTesting
+    static final long PROBE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final Map<String, CircuitBreaker> BREAKERS = new HashMap<>();
+
+    /**
+     * The states of a breaker.
+     */
+    public enum State {
+        /** Requests are sent. */
+        CLOSED,
+        /** Requests fail fast until the retry time. */
+        OPEN,
+        /** One request has been let through to find out whether the host has recovered. */
+        HALF_OPEN
+    }
+
+    private final String mHost;
+    private final Random mRandom;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures;
+    // the number of times the breaker opened since it was last closed, for the backoff
+    private int mOpenCount;
+    private long mRetryAtMs;
+    private boolean mProbeInFlight;
+    private long mProbeStartMs;
+
+    @VisibleForTesting
+    CircuitBreaker(@NonNull String host, @NonNull Random random) {
+        mHost = host;
+        mRandom = random;
+    }
+
+    /**
+     * Returns the breaker of a host, creating it on first use.
+     *
+     * @param host The host name
+     * @return the breaker, shared by all requests to the host
+     */
+    @AnyThread
+    @NonNull
+    static CircuitBreaker forHost(@NonNull String host) {
+        String key = host.toLowerCase(Locale.US);
+        synchronized (BREAKERS) {
+            CircuitBreaker breaker = BREAKERS.get(key);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(key, new Random());
+                BREAKERS.put(key, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    @VisibleForTesting
+    static void reset() {
+        synchronized (BREAKERS) {
+            BREAKERS.clear();
+        }
+    }
+
+    /**
+     * The host this breaker guards.
+     *
+     * @return the host name, in lower case
+     */
+    @NonNull
+    public String getHost() {
+        return mHost;
+    }
+
+    /**
+     * The current state. An open breaker whose retry time has passed is reported as open until
+     * the next request is let through as a probe.
+     *
+     * @return the state
+     */
+    @NonNull
+    public synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * How long requests will keep failing fast.
+     *
+     * @return milliseconds until a request is let through again, {@code 0} unless open
+     */
+    public long getRetryDelayMillis() {
+        return getRetryDelayMillis(now());
+    }
+
+    /**
+     * Lets a request through or rejects it.
+     *
+     * @return {@code true} if the request may be sent; it must then be reported to
+     *     {@link #onResponse(HttpURLConnection)} or {@link #onNetworkError()}
+     */
+    @AnyThread
+    boolean tryAcquire() {
+        return tryAcquire(now());
+    }
+
+    /**
+     * Records the response to a request that was let through. Must only be called once the
+     * response has been received.
+     *
+     * @param conn The connection the request was sent on
+     */
+    @AnyThread
+    void onResponse(@NonNull HttpURLConnection conn) {
+        int responseCode;
+        try {
+            responseCode = conn.getResponseCode();
+        } catch (IOException ex) {
+            onNetworkError();
+            return;
+        }
+        onResponse(responseCode, retryAfterMillis(conn), now());
+    }
+
+    /**
+     * Records a request that was let through but got no response. This says nothing about the
+     * host's health, so the state is kept, and another probe may be sent.
+     */
+    @AnyThread
+    synchronized void onNetworkError() {
+        mProbeInFlight = false;
+    }
+
+    @VisibleForTesting
+    boolean tryAcquire(long nowMs) {
+        Transition transition;
+        synchronized (this) {
+            switch (mState) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (nowMs < mRetryAtMs) {
+                        return false;
+                    }
+                    transition = setState(State.HALF_OPEN, 0);
+                    mProbeInFlight = true;
+                    mProbeStartMs = nowMs;
+                    break;
+                case HALF_OPEN:
+                default:
+                    if (mProbeInFlight && nowMs - mProbeStartMs < PROBE_TIMEOUT_MS) {
+                        return false;
+                    }
+                    mProbeInFlight = true;
+                    mProbeStartMs = nowMs;
+                    return true;
+            }
+        }
+        report(transition);
+        return true;
+    }
+
+    @VisibleForTesting
+    void onResponse(int responseCode, long retryAfterMs, long nowMs) {
+        Transition transition;
+        synchronized (this) {
+            transition = recordResponse(responseCode, retryAfterMs, nowMs);
+        }
+        report(transition);
+    }
+
+    @Nullable
+    private Transition recordResponse(int responseCode, long retryAfterMs, long nowMs) {
+        if (!isFailure(responseCode)) {
+            mConsecutiveFailures = 0;
+            mOpenCount = 0;
+            mProbeInFlight = false;
+            if (mState == State.CLOSED) {
+                return null;
+            }
+            AuthLog.i(TAG, "%s recovered, closing the circuit", mHost);
+            return setState(State.CLOSED, 0);
+        }
+
+        mConsecutiveFailures++;
+        boolean explicit = responseCode == HTTP_TOO_MANY_REQUESTS || retryAfterMs >= 0;
+        if (mState == State.OPEN) {
+            // a request sent before the breaker opened; it only matters if it asks for longer
+            if (retryAfterMs >= 0) {
+                mRetryAtMs = Math.max(mRetryAtMs, nowMs + retryAfterMs);
+            }
+            return null;
+        }
+        if (mState == State.CLOSED && !explicit && mConsecutiveFailures < FAILURE_THRESHOLD) {
+            return null;
+        }
+
+        mOpenCount++;
+        mProbeInFlight = false;
+        long delayMs = retryAfterMs >= 0
+                ? retryAfterMs + (long) (mRandom.nextDouble() * BASE_BACKOFF_MS)
+                : backoffMillis(mOpenCount);
+        AuthLog.w(TAG, "%s is failing, opening the circuit", mHost);
+        mRetryAtMs = nowMs + delayMs;
+        return setState(State.OPEN, delayMs);
+    }
+
+    @VisibleForTesting
+    synchronized long getRetryDelayMillis(long nowMs) {
+        return mState == State.OPEN ? Math.max(0, mRetryAtMs - nowMs) : 0;
+    }
+
+    /*
+     * Exponential backoff with "equal jitter": at least half of the nominal delay, so that it
+     * still grows, and a random part so that clients spread out.
+     */
+    @VisibleForTesting
+    long backoffMillis(int attempt) {
+        int shift = Math.min(attempt - 1, 30);
+        long nominal = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << shift);
+        long half = nominal / 2;
+        return half + (long) (mRandom.nextDouble() * half);
+    }
+
+    /*
+     * Changes the state under the lock. The change is reported once the lock is released, as
+     * the event listener is app code that may be slow or call back into the breaker.
+     */
+    @Nullable
+    private Transition setState(State state, long retryDelayMs) {
+        if (mState == state) {
+            return null;
+        }
+        mState = state;
+        return new Transition(state, retryDelayMs);
+    }
+
+    private void report(@Nullable Transition transition) {
+        if (transition != null) {
+            AuthEvents.circuitStateChanged(mHost, transition.mState, transition.mRetryDelayMs);
+        }
+    }
+
+    private static boolean isFailure(int responseCode) {
+        return responseCode == HTTP_TOO_MANY_REQUESTS
+                || responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR
+                || responseCode == HttpURLConnection.HTTP_BAD_GATEWAY
+                || responseCode == HttpURLConnection.HTTP_UNAVAILABLE
+                || responseCode == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+    }
+
+    /*
+     * Retry-After is either a number of seconds or an HTTP date, on the server's clock.
+     *
+     * @return the delay in milliseconds, or -1 if there is no valid header
+     */
+    @VisibleForTesting
+    static long retryAfterMillis(@NonNull HttpURLConnection conn) {
+        String value = conn.getHeaderField(RETRY_AFTER);
+        if (value == null) {
+            return -1;
+        }
+        long delayMs = parseDelaySeconds(value.trim());
+        if (delayMs < 0) {
+            long date = conn.getHeaderFieldDate(RETRY_AFTER, 0);
+            if (date <= 0) {
+                return -1;
+            }
+            delayMs = Math.max(0, ServerClock.toDeviceTime(conn.getURL().getHost(), date)
+                    - System.currentTimeMillis());
+        }
+        return Math.min(delayMs, MAX_RETRY_AFTER_MS);
+    }
+
+    private static long parseDelaySeconds(@Nullable String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return -1;
+            }
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException ex) {
+            // too many digits
+            return MAX_RETRY_AFTER_MS;
+        }
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    private static final class Transition {
+        final State mState;
+        final long mRetryDelayMs;
+
+        Transition(State state, long retryDelayMs) {
+            mState = state;
+            mRetryDelayMs = retryDelayMs;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" + mHost + ": " + mState + "}";
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import net.openid.appauth.connectivity.ConnectionBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link HttpURLConnection} that goes through the {@link CircuitBreaker} of its host. The
+ * request is rejected with a {@link CircuitOpenException} when it would be sent, if the breaker
+ * is open, and the response is reported to the breaker when it is first read. Everything else
+ * is delegated, so that callers such as AppAuth, which only see a connection, are covered
+ * without changes.
+ */
+final class CircuitBreakerConnection extends HttpURLConnection {
+
+    private final HttpURLConnection mDelegate;
+    private final CircuitBreaker mBreaker;
+
+    private boolean mAcquired;
+    private boolean mReported;
+
+    private CircuitBreakerConnection(
+            @NonNull HttpURLConnection delegate,
+            @NonNull CircuitBreaker breaker) {
+        super(delegate.getURL());
+        mDelegate = delegate;
+        mBreaker = breaker;
+    }
+
+    /**
+     * Guards a connection with the breaker of its host.
+     *
+     * @param conn A connection that has not been connected yet
+     * @return the guarded connection
+     */
+    @NonNull
+    static HttpURLConnection wrap(@NonNull HttpURLConnection conn) {
+        if (conn instanceof CircuitBreakerConnection) {
+            return conn;
+        }
+        return new CircuitBreakerConnection(
+                conn, CircuitBreaker.forHost(conn.getURL().getHost()));
+    }
+
+    /**
+     * Guards the connections opened by a ConnectionBuilder.
+     *
+     * @param connectionBuilder The ConnectionBuilder to open connections with
+     * @return a ConnectionBuilder whose connections go through the breaker of their host
+     */
+    @NonNull
+    static ConnectionBuilder wrap(@NonNull final ConnectionBuilder connectionBuilder) {
+        return new ConnectionBuilder() {
+            @NonNull
+            @Override
+            public HttpURLConnection openConnection(@NonNull Uri uri) throws IOException {
+                return wrap(connectionBuilder.openConnection(uri));
+            }
+        };
+    }
+
+    private synchronized void acquire() throws CircuitOpenException {
+        if (mAcquired) {
+            return;
+        }
+        if (!mBreaker.tryAcquire()) {
+            throw new CircuitOpenException(mBreaker.getHost(), mBreaker.getRetryDelayMillis());
+        }
+        mAcquired = true;
+    }
+
+    /*
+     * Called once the response, or the failure to get one, is known. A response's Date header is
+     * also sampled by the ServerClock here, which covers the requests AppAuth sends itself, such
+     * as those to the token endpoint.
+     */
+    private synchronized void report(boolean failed) {
+        if (!mAcquired || mReported) {
+            return;
+        }
+        mReported = true;
+        if (failed) {
+            mBreaker.onNetworkError();
+        } else {
+            mBreaker.onResponse(mDelegate);
+            ServerClock.onResponse(mDelegate);
+        }
+    }
+
+    /*
+     * Reading the response failed: either there is none, or, for getInputStream(), it is an
+     * error response. The response code is cached by the delegate in the latter case.
+     */
+    private synchronized void reportAfter(IOException ex) {
+        if (!mAcquired || mReported || ex instanceof CircuitOpenException) {
+            return;
+        }
+        int responseCode;
+        try {
+            responseCode = mDelegate.getResponseCode();
+        } catch (IOException noResponse) {
+            responseCode = -1;
+        }
+        report(responseCode == -1);
+    }
+
+    @Override
+    public void connect() throws IOException {
+        acquire();
+        try {
+            mDelegate.connect();
+        } catch (IOException ex) {
+            report(true);
+            throw ex;
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        acquire();
+        try {
+            return mDelegate.getOutputStream();
+        } catch (IOException ex) {
+            report(true);
+            throw ex;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        acquire();
+        try {
+            InputStream stream = mDelegate.getInputStream();
+            report(false);
+            return stream;
+        } catch (IOException ex) {
+            reportAfter(ex);
+            throw ex;
+        }
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        acquire();
+        try {
+            int responseCode = mDelegate.getResponseCode();
+            report(responseCode == -1);
+            return responseCode;
+        } catch (IOException ex) {
+            report(true);
+            throw ex;
+        }
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        getResponseCode();
+        return mDelegate.getResponseMessage();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return mDelegate.getErrorStream();
+    }
+
+    @Override
+    public void disconnect() {
+        mDelegate.disconnect();
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return mDelegate.usingProxy();
+    }
+
+    /*
+     * Reading a header sends the request if it hasn't been sent yet, and then has no way to
+     * report that it was rejected; so only read once the request is known to be allowed.
+     */
+    private boolean readable() {
+        try {
+            getResponseCode();
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        return readable() ? mDelegate.getHeaderField(name) : null;
+    }
+
+    @Override
+    public String getHeaderField(int n) {
+        return readable() ? mDelegate.getHeaderField(n) : null;
+    }
+
+    @Override
+    public String getHeaderFieldKey(int n) {
+        return readable() ? mDelegate.getHeaderFieldKey(n) : null;
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        return readable() ? mDelegate.getHeaderFields() : super.getHeaderFields();
+    }
+
+    @Override
+    public long getHeaderFieldDate(String name, long defaultValue) {
+        return readable() ? mDelegate.getHeaderFieldDate(name, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public int getHeaderFieldInt(String name, int defaultValue) {
+        return readable() ? mDelegate.getHeaderFieldInt(name, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public String getContentType() {
+        return getHeaderField("Content-Type");
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return getHeaderField("Content-Encoding");
+    }
+
+    @Override
+    public int getContentLength() {
+        return getHeaderFieldInt("Content-Length", -1);
+    }
+
+    @Override
+    public long getDate() {
+        return getHeaderFieldDate("Date", 0);
+    }
+
+    @Override
+    public long getExpiration() {
+        return getHeaderFieldDate("Expires", 0);
+    }
+
+    @Override
+    public long getLastModified() {
+        return getHeaderFieldDate("Last-Modified", 0);
+    }
+
+    @Override
+    public Object getContent() throws IOException {
+        getResponseCode();
+        return mDelegate.getContent();
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Object getContent(Class[] classes) throws IOException {
+        getResponseCode();
+        return mDelegate.getContent(classes);
+    }
+
+    @Override
+    public Permission getPermission() throws IOException {
+        return mDelegate.getPermission();
+    }
+
+    @Override
+    public void setRequestMethod(String method) throws ProtocolException {
+        mDelegate.setRequestMethod(method);
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return mDelegate.getRequestMethod();
+    }
+
+    @Override
+    public void setInstanceFollowRedirects(boolean followRedirects) {
+        mDelegate.setInstanceFollowRedirects(followRedirects);
+    }
+
+    @Override
+    public boolean getInstanceFollowRedirects() {
+        return mDelegate.getInstanceFollowRedirects();
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(int contentLength) {
+        mDelegate.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(long contentLength) {
+        mDelegate.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setChunkedStreamingMode(int chunkLength) {
+        mDelegate.setChunkedStreamingMode(chunkLength);
+    }
+
+    @Override
+    public void setConnectTimeout(int timeout) {
+        mDelegate.setConnectTimeout(timeout);
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return mDelegate.getConnectTimeout();
+    }
+
+    @Override
+    public void setReadTimeout(int timeout) {
+        mDelegate.setReadTimeout(timeout);
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return mDelegate.getReadTimeout();
+    }
+
+    @Override
+    public void setDoInput(boolean doInput) {
+        mDelegate.setDoInput(doInput);
+    }
+
+    @Override
+    public boolean getDoInput() {
+        return mDelegate.getDoInput();
+    }
+
+    @Override
+    public void setDoOutput(boolean doOutput) {
+        mDelegate.setDoOutput(doOutput);
+    }
+
+    @Override
+    public boolean getDoOutput() {
+        return mDelegate.getDoOutput();
+    }
+
+    @Override
+    public void setAllowUserInteraction(boolean allowUserInteraction) {
+        mDelegate.setAllowUserInteraction(allowUserInteraction);
+    }
+
+    @Override
+    public boolean getAllowUserInteraction() {
+        return mDelegate.getAllowUserInteraction();
+    }
+
+    @Override
+    public void setUseCaches(boolean useCaches) {
+        mDelegate.setUseCaches(useCaches);
+    }
+
+    @Override
+    public boolean getUseCaches() {
+        return mDelegate.getUseCaches();
+    }
+
+    @Override
+    public void setIfModifiedSince(long ifModifiedSince) {
+        mDelegate.setIfModifiedSince(ifModifiedSince);
+    }
+
+    @Override
+    public long getIfModifiedSince() {
+        return mDelegate.getIfModifiedSince();
+    }
+
+    @Override
+    public boolean getDefaultUseCaches() {
+        return mDelegate.getDefaultUseCaches();
+    }
+
+    @Override
+    public void setDefaultUseCaches(boolean defaultUseCaches) {
+        mDelegate.setDefaultUseCaches(defaultUseCaches);
+    }
+
+    @Override
+    public void setRequestProperty(String key, String value) {
+        mDelegate.setRequestProperty(key, value);
+    }
+
+    @Override
+    public void addRequestProperty(String key, String value) {
+        mDelegate.addRequestProperty(key, value);
+    }
+
+    @Override
+    public String getRequestProperty(String key) {
+        return mDelegate.getRequestProperty(key);
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestProperties() {
+        return mDelegate.getRequestProperties();
+    }
+
+    @Override
+    public URL getURL() {
+        return mDelegate.getURL();
+    }
+
+    @Override
+    public String toString() {
+        return mDelegate.toString();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the {@link CircuitBreaker} of its host is open.
+ * Token operations report it as the cause of an
+ * {@link net.openid.appauth.AuthorizationException.GeneralErrors#NETWORK_ERROR}; authorized
+ * requests pass it to {@link OktaAppAuth.BearerAuthRequest#onFailure(int, Exception)}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CircuitOpenException extends IOException {
+
+    private final String mHost;
+    private final long mRetryDelayMs;
+
+    CircuitOpenException(@NonNull String host, long retryDelayMs) {
+        super("Requests to " + host + " are suspended for " + retryDelayMs + "ms");
+        mHost = host;
+        mRetryDelayMs = retryDelayMs;
+    }
+
+    /**
+     * The host requests were suspended for.
+     *
+     * @return the host name
+     */
+    @NonNull
+    public String getHost() {
+        return mHost;
+    }
+
+    /**
+     * How long requests to the host were going to fail fast for, when this was thrown.
+     *
+     * @return milliseconds
+     */
+    public long getRetryDelayMillis() {
+        return mRetryDelayMs;
+    }
+}
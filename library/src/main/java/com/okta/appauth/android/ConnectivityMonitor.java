@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Process;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Tells whether the device has a network connection, and holds work that needs one until it
+ * does. The connectivity broadcast is only listened to while there is work waiting.
+ * <p/>
+ * The library's manifest asks for {@code ACCESS_NETWORK_STATE}. Apps that remove it are treated
+ * as always connected, so requests are attempted rather than held.
+ */
+final class ConnectivityMonitor {
+
+    private static final String TAG = "OktaConnectivity";
+
+    private final Context mContext;
+    private final ConnectivityManager mConnectivityManager;
+
+    // work waiting for a connection, and the executors to run it on, null when nothing waits
+    // and the receiver isn't registered
+    private List<Runnable> mPending;
+    private List<Executor> mPendingExecutors;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (isConnected()) {
+                runPending();
+            }
+        }
+    };
+
+    @VisibleForTesting
+    ConnectivityMonitor(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        mConnectivityManager = hasNetworkStatePermission(mContext)
+                ? (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE)
+                : null;
+    }
+
+    private static boolean hasNetworkStatePermission(Context context) {
+        boolean granted = context.checkPermission(
+                android.Manifest.permission.ACCESS_NETWORK_STATE,
+                Process.myPid(),
+                Process.myUid()) == PackageManager.PERMISSION_GRANTED;
+        if (!granted) {
+            AuthLog.w(TAG, "No ACCESS_NETWORK_STATE permission, assuming a connection");
+        }
+        return granted;
+    }
+
+    /**
+     * Returns the process wide monitor.
+     *
+     * @param context Any Context; only its application Context is retained
+     * @return the monitor
+     */
+    @AnyThread
+    @NonNull
+    static ConnectivityMonitor getInstance(@NonNull final Context context) {
+        return InstanceRegistry.getOrCreate(
+                ConnectivityMonitor.class,
+                new InstanceRegistry.Factory<ConnectivityMonitor>() {
+                    @NonNull
+                    @Override
+                    public ConnectivityMonitor create() {
+                        return new ConnectivityMonitor(context);
+                    }
+                });
+    }
+
+    /**
+     * Whether the device currently has a network connection. When that can't be told, the
+     * device is assumed to be connected, so that requests are attempted.
+     *
+     * @return {@code false} if the device is known to be offline
+     */
+    @AnyThread
+    boolean isConnected() {
+        if (mConnectivityManager == null) {
+            return true;
+        }
+        try {
+            NetworkInfo network = mConnectivityManager.getActiveNetworkInfo();
+            return network != null && network.isConnected();
+        } catch (SecurityException ex) {
+            // the app removed the ACCESS_NETWORK_STATE permission from its manifest
+            return true;
+        }
+    }
+
+    /**
+     * Runs work right away, on the calling thread, if the device is connected, or else once it
+     * is, on the executor. Anything the work needs from the calling thread, such as its Looper,
+     * must be captured before this is called.
+     *
+     * @param work     The work to run
+     * @param executor Runs the work if it had to wait for a connection
+     */
+    @AnyThread
+    void runWhenConnected(@NonNull Runnable work, @NonNull Executor executor) {
+        if (isConnected()) {
+            work.run();
+            return;
+        }
+        synchronized (this) {
+            if (mPending == null) {
+                mPending = new ArrayList<>();
+                mPendingExecutors = new ArrayList<>();
+                AuthLog.i(TAG, "Waiting for a network connection");
+                mContext.registerReceiver(
+                        mReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            }
+            mPending.add(work);
+            mPendingExecutors.add(executor);
+        }
+        // the connection may have come back before the receiver was registered
+        if (isConnected()) {
+            runPending();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getPendingCount() {
+        return mPending != null ? mPending.size() : 0;
+    }
+
+    private void runPending() {
+        List<Runnable> pending;
+        List<Executor> executors;
+        synchronized (this) {
+            pending = mPending;
+            executors = mPendingExecutors;
+            if (pending == null) {
+                return;
+            }
+            mPending = null;
+            mPendingExecutors = null;
+            mContext.unregisterReceiver(mReceiver);
+        }
+        AuthLog.i(TAG, "Network connection available, resuming waiting work");
+        for (int i = 0; i < pending.size(); i++) {
+            executors.get(i).execute(pending.get(i));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+/**
+ * How fresh a result is: when it was fetched from the server, and whether it was just fetched
+ * or served from what the SDK stored the last time it was.
+ *
+ * @see OktaAppAuth#setOfflineFirst(boolean)
+ * @see OktaAppAuth.OktaFreshnessCallback
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Freshness {
+
+    private final long mFetchedAt;
+    private final boolean mFromCache;
+
+    Freshness(long fetchedAt, boolean fromCache) {
+        mFetchedAt = fetchedAt;
+        mFromCache = fromCache;
+    }
+
+    /**
+     * When the result was received from the server.
+     *
+     * @return the time in milliseconds since the epoch, on the device clock
+     */
+    public long getFetchedAt() {
+        return mFetchedAt;
+    }
+
+    /**
+     * How long ago the result was received from the server.
+     *
+     * @return milliseconds, {@code 0} if the device clock went back since
+     */
+    public long getAgeMillis() {
+        return Math.max(0, System.currentTimeMillis() - mFetchedAt);
+    }
+
+    /**
+     * Whether the result was served from storage, because the server could not be reached.
+     *
+     * @return {@code true} if the result is a stored one; {@code false} if it was just fetched
+     */
+    public boolean isFromCache() {
+        return mFromCache;
+    }
+
+    @Override
+    public String toString() {
+        return "Freshness{fetchedAt=" + mFetchedAt + ", fromCache=" + mFromCache + "}";
+    }
+}
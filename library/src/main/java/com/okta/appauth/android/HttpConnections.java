@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import net.openid.appauth.connectivity.ConnectionBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * Helpers for working with {@link HttpURLConnection}s in a way that keeps the underlying
+ * sockets eligible for keep-alive reuse.
+ */
+final class HttpConnections {
+
+    private static final String TAG = "OktaHttpConnections";
+
+    private static final int DRAIN_BUFFER_SIZE = 512;
+
+    private HttpConnections() {
+        throw new AssertionError("no instances");
+    }
+
+    /**
+     * Consumes whatever is left of the response body and closes the stream. Unlike
+     * {@link HttpURLConnection#disconnect()}, this hands the socket back to the connection pool
+     * so that the next request to the same host can skip the TCP and TLS handshakes.
+     *
+     * @param conn The connection to release, may be {@code null}
+     */
+    @WorkerThread
+    static void release(@Nullable HttpURLConnection conn) {
+        if (conn == null) {
+            return;
+        }
+
+        InputStream stream = null;
+        try {
+            stream = conn.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? conn.getErrorStream() : conn.getInputStream();
+            if (stream != null) {
+                byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+                while (stream.read(buffer) != -1) {
+                    // discard the remaining body
+                }
+            }
+        } catch (IOException ex) {
+            // the connection can't be reused, so make sure the socket is not leaked
+            conn.disconnect();
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Opens a connection to the host of the given Uri and releases it straight away, leaving an
+     * established keep-alive connection in the pool for the requests that follow.
+     *
+     * @param connectionBuilder The builder used to open the connection; it must be the same one
+     *                          used by the following requests for the connection to be reused
+     * @param uri               An inexpensive resource on the host to warm up
+     */
+    @WorkerThread
+    static void prewarm(@NonNull ConnectionBuilder connectionBuilder, @NonNull Uri uri) {
+        HttpURLConnection conn = null;
+        try {
+            conn = connectionBuilder.openConnection(uri);
+            conn.setRequestMethod("HEAD");
+            conn.getResponseCode();
+        } catch (IOException ex) {
+            AuthLog.w(TAG, "Unable to pre-warm connection to %s", uri.getHost(), ex);
+        } finally {
+            release(conn);
+        }
+    }
+
+    private static void closeQuietly(@Nullable InputStream stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException ignore) {
+            // nothing more can be done
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.util.Base64;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+
+/**
+ * Verifies the signature of ID tokens against the issuer's published signing keys. The claims
+ * themselves (issuer, audience, expiry and nonce) are already validated by AppAuth.
+ */
+final class IdTokenVerifier {
+
+    private static final String TAG = "OktaIdTokenVerifier";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DECODE_FLAGS = Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP;
+
+    // the only algorithm Okta signs ID tokens with; anything else, including "none", is rejected
+    private static final String SUPPORTED_ALGORITHM = "RS256";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+    private final JwksKeyCache mKeyCache;
+
+    /*
+     * The same token is usually checked more than once on its way into the AuthStateManager,
+     * so the last good one is remembered.
+     */
+    private volatile String mLastVerifiedToken;
+
+    IdTokenVerifier(@NonNull JwksKeyCache keyCache) {
+        mKeyCache = keyCache;
+    }
+
+    /**
+     * Checks the signature of an ID token.
+     *
+     * @param idToken the encoded ID token
+     * @param jwksUri the issuer's {@code jwks_uri}
+     * @return {@code true} if the token is signed by one of the issuer's keys
+     */
+    @WorkerThread
+    boolean verify(@NonNull String idToken, @NonNull Uri jwksUri) {
+        if (idToken.equals(mLastVerifiedToken)) {
+            return true;
+        }
+
+        String[] parts = idToken.split("\\.");
+        if (parts.length != 3) {
+            AuthLog.w(TAG, "ID token is not a signed JWT");
+            return false;
+        }
+
+        try {
+            JSONObject header = new JSONObject(
+                    new String(Base64.decode(parts[0], DECODE_FLAGS), UTF_8));
+            String algorithm = header.optString("alg");
+            if (!SUPPORTED_ALGORITHM.equals(algorithm)) {
+                AuthLog.w(TAG, "Unsupported ID token algorithm: %s", algorithm);
+                return false;
+            }
+            String keyId = header.optString("kid", null);
+            if (keyId == null) {
+                AuthLog.w(TAG, "ID token has no key ID");
+                return false;
+            }
+
+            PublicKey key = mKeyCache.getKey(jwksUri, keyId);
+            if (key == null) {
+                AuthLog.w(TAG, "ID token is signed with an unknown key: %s", keyId);
+                return false;
+            }
+
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initVerify(key);
+            signature.update((parts[0] + "." + parts[1]).getBytes(UTF_8));
+            if (!signature.verify(Base64.decode(parts[2], DECODE_FLAGS))) {
+                AuthLog.w(TAG, "ID token signature does not match");
+                return false;
+            }
+        } catch (IOException ex) {
+            AuthLog.w(TAG, "Unable to fetch the issuer's signing keys", ex);
+            return false;
+        } catch (JSONException | IllegalArgumentException | GeneralSecurityException ex) {
+            AuthLog.w(TAG, "Invalid ID token", ex);
+            return false;
+        }
+
+        mLastVerifiedToken = idToken;
+        return true;
+    }
+
+    /**
+     * Fetches the issuer's signing keys ahead of the first verification.
+     *
+     * @param jwksUri the issuer's {@code jwks_uri}
+     */
+    @WorkerThread
+    void prefetch(@NonNull Uri jwksUri) {
+        mKeyCache.prefetch(jwksUri);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the process wide instances of {@link OktaAppAuth}, {@link AuthStateManager} and
+ * {@link OAuthClientConfiguration}. Instances only hold the application Context and live as
+ * long as the process, so the stored state and the configuration are loaded once, and all
+ * callers share the same instance (and with it, the same lock around the stored state).
+ * <p/>
+ * Instances are kept per account. The {@code null} account is the default one, which uses the
+ * configuration in {@code R.raw.okta_app_auth_config}.
+ */
+final class InstanceRegistry {
+
+    private static final int MAX_ACCOUNT_ID_LENGTH = 64;
+    private static final Pattern ACCOUNT_ID =
+            Pattern.compile("[A-Za-z0-9_-]{1," + MAX_ACCOUNT_ID_LENGTH + "}");
+
+    private static final Object LOCK = new Object();
+
+    private static final Map<String, Object> INSTANCES = new HashMap<>();
+
+    private InstanceRegistry() {
+        throw new AssertionError("no instances");
+    }
+
+    /**
+     * Creates an instance of a registered type.
+     *
+     * @param <T> the type of instance
+     */
+    interface Factory<T> {
+
+        /**
+         * Creates the instance. Called at most once per type and account, unless the registry
+         * is cleared.
+         *
+         * @return the new instance
+         */
+        @NonNull
+        T create();
+    }
+
+    /**
+     * Returns the instance of a type for the default account, creating it if there is none yet.
+     *
+     * @param type    the type of instance
+     * @param factory creates the instance if needed
+     * @param <T>     the type of instance
+     * @return the registered instance
+     * @see #getOrCreate(Class, String, Factory)
+     */
+    @AnyThread
+    @NonNull
+    static <T> T getOrCreate(@NonNull Class<T> type, @NonNull Factory<? extends T> factory) {
+        return getOrCreate(type, null, factory);
+    }
+
+    /**
+     * Returns the instance of a type for an account, creating it if there is none yet.
+     * Concurrent callers all get the same instance.
+     *
+     * @param type      the type of instance
+     * @param accountId the account, or {@code null} for the default account
+     * @param factory   creates the instance if needed
+     * @param <T>       the type of instance
+     * @return the registered instance
+     */
+    @AnyThread
+    @NonNull
+    static <T> T getOrCreate(
+            @NonNull Class<T> type,
+            @Nullable String accountId,
+            @NonNull Factory<? extends T> factory) {
+        String key = key(type, accountId);
+        synchronized (LOCK) {
+            T instance = type.cast(INSTANCES.get(key));
+            if (instance == null) {
+                instance = factory.create();
+                INSTANCES.put(key, instance);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Makes an instance the one returned for its type and account from now on, for tests that
+     * inject their own instances.
+     *
+     * @param type      the type of instance
+     * @param accountId the account, or {@code null} for the default account
+     * @param instance  the instance
+     * @param <T>       the type of instance
+     */
+    @VisibleForTesting
+    static <T> void register(
+            @NonNull Class<T> type,
+            @Nullable String accountId,
+            @NonNull T instance) {
+        String key = key(type, accountId);
+        synchronized (LOCK) {
+            INSTANCES.put(key, instance);
+        }
+    }
+
+    /**
+     * The name of a per-account resource, such as a {@link android.content.SharedPreferences}
+     * file. The default account keeps the plain name, so existing state is picked up.
+     *
+     * @param name      the name used by the default account
+     * @param accountId the account, or {@code null} for the default account
+     * @return the name to use for the account
+     * @throws IllegalArgumentException if the account id is not valid
+     */
+    @NonNull
+    static String partitionName(@NonNull String name, @Nullable String accountId) {
+        return accountId == null ? name : name + "." + checkAccountId(accountId);
+    }
+
+    /**
+     * Checks that an account id can be used in file names. Ids are limited to letters, digits,
+     * {@code _} and {@code -}: a {@code /} is not allowed in a file name, and a {@code .} would
+     * let two different resource and account pairs map to the same name.
+     *
+     * @param accountId the account id
+     * @return the account id
+     * @throws IllegalArgumentException if the account id is not valid
+     */
+    @NonNull
+    static String checkAccountId(@Nullable String accountId) {
+        if (accountId == null || !ACCOUNT_ID.matcher(accountId).matches()) {
+            throw new IllegalArgumentException("accountId must be 1 to " + MAX_ACCOUNT_ID_LENGTH
+                    + " letters, digits, '_' or '-', was: " + accountId);
+        }
+        return accountId;
+    }
+
+    private static String key(Class<?> type, @Nullable String accountId) {
+        return accountId == null ? type.getName() : type.getName() + "#" + accountId;
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        synchronized (LOCK) {
+            INSTANCES.clear();
+        }
+    }
+}
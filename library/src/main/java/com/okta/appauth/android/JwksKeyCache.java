@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.util.Base64;
+
+import com.okta.appauth.android.OktaEventListener.Stage;
+
+import okio.Buffer;
+import okio.Okio;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the signing keys published at an issuer's {@code jwks_uri}, indexed by key ID.
+ * <p/>
+ * Keys are kept for as long as the response's {@code Cache-Control} or {@code Expires} headers
+ * allow. A key ID that is not in the cache triggers one refetch, in case the issuer rotated its
+ * keys; concurrent callers wait for that fetch instead of starting their own.
+ */
+final class JwksKeyCache {
+
+    private static final String TAG = "OktaJwksKeyCache";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DECODE_FLAGS = Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP;
+
+    @VisibleForTesting
+    static final long DEFAULT_MAX_AGE_MS = TimeUnit.HOURS.toMillis(1);
+
+    /*
+     * Unknown key IDs don't trigger a refetch more often than this, so tokens with made-up key
+     * IDs can't be used to hammer the issuer.
+     */
+    @VisibleForTesting
+    static final long MIN_REFETCH_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Object mFetchLock = new Object();
+    private volatile KeySet mKeySet = KeySet.EMPTY;
+
+    /**
+     * Returns the key with the given ID, fetching the key set if needed.
+     *
+     * @param jwksUri the issuer's {@code jwks_uri}
+     * @param keyId   the {@code kid} from the token header
+     * @return the key, or {@code null} if the issuer doesn't publish a key with that ID
+     * @throws IOException if the key set is needed but can't be fetched
+     */
+    @WorkerThread
+    @Nullable
+    PublicKey getKey(@NonNull Uri jwksUri, @NonNull String keyId) throws IOException {
+        KeySet keySet = mKeySet;
+        long now = SystemClock.elapsedRealtime();
+        if (keySet.isUsable(jwksUri, now)) {
+            PublicKey key = keySet.mKeys.get(keyId);
+            if (key != null || !keySet.canRefetch(now)) {
+                AuthEvents.cacheResult(Stage.SIGNING_KEYS, true);
+                return key;
+            }
+            AuthLog.i(TAG, "Unknown key ID, refetching signing keys");
+        }
+        AuthEvents.cacheResult(Stage.SIGNING_KEYS, false);
+        return refresh(jwksUri, keySet).mKeys.get(keyId);
+    }
+
+    /**
+     * Fetches the key set if it isn't cached yet, so that the first verification doesn't have
+     * to wait for the network.
+     *
+     * @param jwksUri the issuer's {@code jwks_uri}
+     */
+    @WorkerThread
+    void prefetch(@NonNull Uri jwksUri) {
+        KeySet keySet = mKeySet;
+        if (keySet.isUsable(jwksUri, SystemClock.elapsedRealtime())) {
+            return;
+        }
+        try {
+            refresh(jwksUri, keySet);
+        } catch (IOException ex) {
+            AuthLog.w(TAG, "Failed to prefetch signing keys", ex);
+        }
+    }
+
+    private KeySet refresh(Uri jwksUri, KeySet observed) throws IOException {
+        synchronized (mFetchLock) {
+            KeySet current = mKeySet;
+            if (current != observed && current.isUsable(jwksUri, SystemClock.elapsedRealtime())) {
+                // another thread fetched the keys while this one was waiting
+                return current;
+            }
+
+            try {
+                current = fetch(jwksUri);
+            } catch (IOException ex) {
+                if (observed.isFor(jwksUri)) {
+                    AuthLog.w(TAG, "Failed to refresh signing keys, keeping the cached ones", ex);
+                    return observed;
+                }
+                throw ex;
+            }
+            mKeySet = current;
+            return current;
+        }
+    }
+
+    private static KeySet fetch(Uri jwksUri) throws IOException {
+        AuthLog.i(TAG, "Fetching signing keys");
+        long start = AuthEvents.start(Stage.SIGNING_KEYS);
+        HttpURLConnection conn = null;
+        try {
+            conn = SharedAuthorizationService.getGuardedConnectionBuilder().openConnection(jwksUri);
+            conn.setRequestMethod("GET");
+            conn.setRequestProperty("Accept", "application/json");
+
+            int responseCode = conn.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response code " + responseCode);
+            }
+
+            Buffer body = new Buffer();
+            long byteCount = body.writeAll(Okio.source(conn.getInputStream()));
+            long fetchedAt = SystemClock.elapsedRealtime();
+            KeySet keySet = new KeySet(
+                    jwksUri,
+                    parseKeys(new JSONObject(body.readString(UTF_8))),
+                    fetchedAt,
+                    fetchedAt + maxAgeMillis(conn));
+            AuthEvents.end(Stage.SIGNING_KEYS, start, byteCount, null);
+            return keySet;
+        } catch (JSONException ex) {
+            IOException error = new IOException("Invalid key set document", ex);
+            AuthEvents.end(Stage.SIGNING_KEYS, start, -1, error);
+            throw error;
+        } catch (IOException ex) {
+            AuthEvents.end(Stage.SIGNING_KEYS, start, -1, ex);
+            throw ex;
+        } finally {
+            HttpConnections.release(conn);
+        }
+    }
+
+    @VisibleForTesting
+    static long maxAgeMillis(HttpURLConnection conn) {
+        String cacheControl = conn.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                String value = directive.trim().toLowerCase(Locale.US);
+                if ("no-cache".equals(value) || "no-store".equals(value)) {
+                    return 0;
+                }
+                if (value.startsWith("max-age=")) {
+                    try {
+                        long seconds = Long.parseLong(value.substring("max-age=".length()));
+                        return TimeUnit.SECONDS.toMillis(Math.max(0, seconds));
+                    } catch (NumberFormatException ex) {
+                        AuthLog.w(TAG, "Ignoring invalid max-age: %s", value);
+                    }
+                }
+            }
+        }
+
+        long expires = conn.getExpiration();
+        if (expires > 0) {
+            long date = conn.getDate() > 0 ? conn.getDate() : System.currentTimeMillis();
+            return Math.max(0, expires - date);
+        }
+        return DEFAULT_MAX_AGE_MS;
+    }
+
+    private static Map<String, PublicKey> parseKeys(JSONObject jwks) throws JSONException {
+        JSONArray keys = jwks.getJSONArray("keys");
+        Map<String, PublicKey> result = new HashMap<>(keys.length());
+        for (int i = 0; i < keys.length(); i++) {
+            JSONObject key = keys.getJSONObject(i);
+            String keyId = key.optString("kid", null);
+            if (keyId == null
+                    || !"RSA".equals(key.optString("kty"))
+                    || !"sig".equals(key.optString("use", "sig"))) {
+                continue;
+            }
+
+            try {
+                BigInteger modulus =
+                        new BigInteger(1, Base64.decode(key.getString("n"), DECODE_FLAGS));
+                BigInteger exponent =
+                        new BigInteger(1, Base64.decode(key.getString("e"), DECODE_FLAGS));
+                result.put(keyId, KeyFactory.getInstance("RSA")
+                        .generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+            } catch (IllegalArgumentException | GeneralSecurityException ex) {
+                AuthLog.w(TAG, "Skipping invalid key " + keyId, ex);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * An immutable snapshot of the keys fetched from one {@code jwks_uri}.
+     */
+    private static final class KeySet {
+        static final KeySet EMPTY =
+                new KeySet(null, Collections.<String, PublicKey>emptyMap(), 0, 0);
+
+        final Uri mJwksUri;
+        final Map<String, PublicKey> mKeys;
+        final long mFetchedAt;
+        final long mExpiresAt;
+
+        KeySet(Uri jwksUri, Map<String, PublicKey> keys, long fetchedAt, long expiresAt) {
+            mJwksUri = jwksUri;
+            mKeys = keys;
+            mFetchedAt = fetchedAt;
+            mExpiresAt = expiresAt;
+        }
+
+        boolean isFor(Uri jwksUri) {
+            return jwksUri.equals(mJwksUri);
+        }
+
+        boolean isUsable(Uri jwksUri, long now) {
+            return isFor(jwksUri) && now < mExpiresAt;
+        }
+
+        boolean canRefetch(long now) {
+            return now - mFetchedAt >= MIN_REFETCH_INTERVAL_MS;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import com.okta.appauth.android.OktaEventListener.Stage;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * The counters and latency histograms the SDK keeps for its operations, as returned by
+ * {@link OktaAppAuth#getMetricsSnapshot()}. Values count from process start, so exporting
+ * the difference between two snapshots gives the activity in between.
+ * </p>
+ * <p>
+ * Each counter is read atomically, but the snapshot as a whole is not: an operation that ends
+ * while the snapshot is taken may be counted in some values and not yet in others.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class MetricsSnapshot {
+
+    private final Map<Stage, StageSnapshot> mStages;
+    private final long[] mResponseStatus;
+
+    MetricsSnapshot(Map<Stage, StageSnapshot> stages, long[] responseStatus) {
+        mStages = stages;
+        mResponseStatus = responseStatus;
+    }
+
+    /**
+     * The upper bounds of the latency histogram buckets, in milliseconds. The histograms have
+     * one more bucket, for durations above the last bound.
+     *
+     * @return a copy of the bucket bounds
+     */
+    @NonNull
+    public static long[] getBucketBoundsMillis() {
+        return AuthMetrics.BUCKET_BOUNDS_MS.clone();
+    }
+
+    /**
+     * The metrics of one operation.
+     *
+     * @param stage the operation
+     * @return its metrics
+     */
+    @NonNull
+    public StageSnapshot get(@NonNull Stage stage) {
+        return mStages.get(stage);
+    }
+
+    /**
+     * The number of authorized requests, made through
+     * {@link OktaAppAuth#performAuthorizedRequest}, that received a response of a status class.
+     *
+     * @param statusClass the first digit of the HTTP status, such as {@code 2} for 2xx; or
+     *                    {@code 0} for requests that failed without a response
+     * @return the number of requests
+     */
+    public long getAuthorizedRequests(@IntRange(from = 0, to = 5) int statusClass) {
+        return mResponseStatus[statusClass];
+    }
+
+    /**
+     * The counters and latency histogram of one operation.
+     */
+    public static final class StageSnapshot {
+        private final long mCount;
+        private final long mErrorCount;
+        private final long mCacheHits;
+        private final long mCacheMisses;
+        private final long mTotalDurationNanos;
+        private final long[] mBucketCounts;
+
+        StageSnapshot(
+                long count,
+                long errorCount,
+                long cacheHits,
+                long cacheMisses,
+                long totalDurationNanos,
+                long[] bucketCounts) {
+            mCount = count;
+            mErrorCount = errorCount;
+            mCacheHits = cacheHits;
+            mCacheMisses = cacheMisses;
+            mTotalDurationNanos = totalDurationNanos;
+            mBucketCounts = bucketCounts;
+        }
+
+        /**
+         * The number of completed operations, successful or not.
+         *
+         * @return the number of operations
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * The number of operations that failed.
+         *
+         * @return the number of failures
+         */
+        public long getErrorCount() {
+            return mErrorCount;
+        }
+
+        /**
+         * The number of times the operation was served from a cache.
+         *
+         * @return the number of cache hits
+         */
+        public long getCacheHits() {
+            return mCacheHits;
+        }
+
+        /**
+         * The number of times the operation could not be served from a cache.
+         *
+         * @return the number of cache misses
+         */
+        public long getCacheMisses() {
+            return mCacheMisses;
+        }
+
+        /**
+         * The total duration of all completed operations.
+         *
+         * @return the duration in nanoseconds
+         */
+        public long getTotalDurationNanos() {
+            return mTotalDurationNanos;
+        }
+
+        /**
+         * The latency histogram. Bucket {@code i} counts the operations that took at most
+         * {@code getBucketBoundsMillis()[i]} milliseconds, and more than the previous bound.
+         *
+         * @return a copy of the bucket counts
+         * @see MetricsSnapshot#getBucketBoundsMillis()
+         */
+        @NonNull
+        public long[] getBucketCounts() {
+            return mBucketCounts.clone();
+        }
+    }
+}
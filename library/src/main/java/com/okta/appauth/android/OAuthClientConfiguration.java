@@ -23,8 +23,8 @@ import android.net.Uri;
 import android.support.annotation.AnyThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.RawRes;
 import android.support.annotation.VisibleForTesting;
-import android.util.Log;
 
 import com.okta.android.json.InvalidJsonDocumentException;
 import com.okta.android.json.JsonParser;
@@ -36,20 +36,17 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.WeakReference;
 import java.nio.charset.Charset;
 import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>
  * Holds the configuration for the okta-sdk-appauth-android library.
  * </p>
  * <p>
- * Retains a {@link WeakReference} to the configuration so multiple callers can access it without
- * needing to re-parse the resource, but without impacting memory adversely for
- * normal app operation.
+ * A single configuration is kept for the lifetime of the process, so multiple callers can
+ * access it without needing to re-parse the resource.
  * </p>
  * <p>
  * Uses a JSON document for configuration so that users of this library could easily extend this
@@ -61,9 +58,6 @@ public class OAuthClientConfiguration {
 
     private static final String TAG = "OktaOAuthClientConfig";
 
-    private static final AtomicReference<WeakReference<OAuthClientConfiguration>> INSTANCE_REF =
-            new AtomicReference<>(new WeakReference<OAuthClientConfiguration>(null));
-
     @VisibleForTesting
     static final String PREFS_NAME = "OktaAppAuthConfig";
     @VisibleForTesting
@@ -77,9 +71,25 @@ public class OAuthClientConfiguration {
     private final PackageManager mPackageManager;
     private final String mPackageName;
 
-    private int mConfigHash;
+    private volatile int mConfigHash;
+    private volatile Integer mLastKnownConfigHash;
+    private volatile boolean mLastKnownConfigHashLoaded;
     private String mConfigurationError;
 
+    /*
+     * SharedPreferences only holds listeners weakly, so a strong reference is kept here. The
+     * listener drops the memoized hash when another instance accepts a configuration.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefsListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    if (KEY_LAST_HASH.equals(key)) {
+                        mLastKnownConfigHashLoaded = false;
+                    }
+                }
+            };
+
     private String mClientId;
     private Uri mRedirectUri;
     private Uri mEndSessionRedirectUri;
@@ -88,8 +98,8 @@ public class OAuthClientConfiguration {
 
     /**
      * <p>
-     * Retrieve the configuration object via the static {@link WeakReference} or construct a new
-     * instance using the configuration provided via a resource file.
+     * Retrieve the process wide configuration object, constructing it on first use from the
+     * configuration provided via a resource file.
      * </p>
      * <p>
      * NOTE: The OAuthClientConfiguration may have an error after constructing. Call
@@ -101,16 +111,47 @@ public class OAuthClientConfiguration {
      */
     @AnyThread
     public static OAuthClientConfiguration getInstance(final Context context) {
-        OAuthClientConfiguration config = INSTANCE_REF.get().get();
-        if (config == null) {
-            config = new OAuthClientConfiguration(
-                    context.getApplicationContext(),
-                    context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
-                    context.getResources().openRawResource(R.raw.okta_app_auth_config)
-            );
-        }
+        return getInstance(context, null, R.raw.okta_app_auth_config);
+    }
 
-        return config;
+    /**
+     * <p>
+     * Retrieve the process wide configuration object of an account, constructing it on first use
+     * from the given resource file. Each account remembers its last accepted configuration
+     * separately.
+     * </p>
+     * <p>
+     * NOTE: The OAuthClientConfiguration may have an error after constructing. Call
+     * {@link #isValid()} to ensure its validity.
+     * </p>
+     *
+     * @param context     The Context from which to get the application's resources
+     * @param accountId   The account, or {@code null} for the default account
+     * @param configResId The raw resource with the account's configuration; only used when the
+     *                    configuration is constructed
+     * @return an OAuthClientConfiguration object
+     */
+    @AnyThread
+    public static OAuthClientConfiguration getInstance(
+            final Context context,
+            @Nullable final String accountId,
+            @RawRes final int configResId) {
+        return InstanceRegistry.getOrCreate(
+                OAuthClientConfiguration.class,
+                accountId,
+                new InstanceRegistry.Factory<OAuthClientConfiguration>() {
+                    @NonNull
+                    @Override
+                    public OAuthClientConfiguration create() {
+                        return new OAuthClientConfiguration(
+                                context.getApplicationContext(),
+                                context.getSharedPreferences(
+                                        InstanceRegistry.partitionName(PREFS_NAME, accountId),
+                                        Context.MODE_PRIVATE),
+                                context.getResources().openRawResource(configResId)
+                        );
+                    }
+                });
     }
 
     @VisibleForTesting
@@ -119,21 +160,25 @@ public class OAuthClientConfiguration {
             final SharedPreferences prefs,
             final InputStream configurationStream) {
         mPrefs = prefs;
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
         mPackageManager = context.getPackageManager();
         mPackageName = context.getPackageName();
 
+        boolean traced = AuthTrace.begin(AuthTrace.PARSE_CONFIGURATION);
         try {
             JSONObject jsonObject = fetchConfiguration(configurationStream);
             readConfiguration(jsonObject);
         } catch (InvalidJsonDocumentException ex) {
             mConfigurationError = ex.getMessage();
+        } finally {
+            AuthTrace.end(traced);
         }
-
-        INSTANCE_REF.set(new WeakReference<>(this));
     }
 
     /**
-     * Indicates whether the configuration has changed from the last known valid state.
+     * Indicates whether the configuration has changed from the last known valid state. The last
+     * known state is read from {@link SharedPreferences} once and memoized afterwards, so this
+     * is cheap to call on the main thread.
      *
      * @return {@code true} if the configuration has changed since the last valid state;
      *     {@code false} otherwise
@@ -144,8 +189,12 @@ public class OAuthClientConfiguration {
     }
 
     private Integer getLastKnownConfigHash() {
-        String hashString = mPrefs.getString(KEY_LAST_HASH, null);
-        return hashString == null ? null : Integer.valueOf(hashString);
+        if (!mLastKnownConfigHashLoaded) {
+            String hashString = mPrefs.getString(KEY_LAST_HASH, null);
+            mLastKnownConfigHash = hashString == null ? null : Integer.valueOf(hashString);
+            mLastKnownConfigHashLoaded = true;
+        }
+        return mLastKnownConfigHash;
     }
 
     /**
@@ -153,6 +202,8 @@ public class OAuthClientConfiguration {
      * configuration.
      */
     public void acceptConfiguration() {
+        mLastKnownConfigHash = mConfigHash;
+        mLastKnownConfigHashLoaded = true;
         mPrefs.edit().putString(KEY_LAST_HASH, String.valueOf(mConfigHash)).apply();
     }
 
@@ -217,7 +268,7 @@ public class OAuthClientConfiguration {
         //because JSONObject does not follow java has code contract
         mConfigHash = jsonObject.toString().hashCode();
 
-        Log.d(TAG, String.format("Configuration loaded with: \n%s", this.toString()));
+        AuthLog.d(TAG, "Configuration loaded with: \n%s", this);
     }
 
     private boolean isRedirectUrisRegistered() {
@@ -23,18 +23,22 @@ import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.AnyThread;
 import android.support.annotation.ColorInt;
+import android.support.annotation.IntRange;
 import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.RawRes;
 import android.support.annotation.WorkerThread;
 import android.support.customtabs.CustomTabsIntent;
 import android.text.Editable;
 import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.Log;
-import net.openid.appauth.AppAuthConfiguration;
+import android.util.LruCache;
+
+import com.okta.appauth.android.OktaEventListener.Stage;
+
 import net.openid.appauth.AuthState;
-import net.openid.appauth.AuthState.AuthStateAction;
 import net.openid.appauth.AuthorizationException;
 import net.openid.appauth.AuthorizationRequest;
 import net.openid.appauth.AuthorizationService;
@@ -43,22 +47,35 @@ import net.openid.appauth.AuthorizationServiceDiscovery;
 import net.openid.appauth.ClientAuthentication;
 import net.openid.appauth.ClientAuthentication.UnsupportedAuthenticationMethod;
 import net.openid.appauth.EndSessionRequest;
+import net.openid.appauth.GrantTypeValues;
 import net.openid.appauth.ResponseTypeValues;
+import net.openid.appauth.TokenRequest;
 import net.openid.appauth.TokenResponse;
-import net.openid.appauth.connectivity.DefaultConnectionBuilder;
+import net.openid.appauth.connectivity.ConnectionBuilder;
+import okio.Buffer;
 import okio.Okio;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -70,10 +87,17 @@ public class OktaAppAuth {
 
     private static final String TAG = "OktaAppAuth";
 
-    private static final AtomicReference<WeakReference<OktaAppAuth>> INSTANCE_REF =
-            new AtomicReference<>(new WeakReference<OktaAppAuth>(null));
+    private static final int PREPARED_REQUEST_CACHE_SIZE = 4;
+
+    // how long the background thread is kept once idle, in the foreground and in the background
+    private static final long EXECUTOR_KEEP_ALIVE_SECONDS = 30;
+    private static final long BACKGROUND_EXECUTOR_KEEP_ALIVE_SECONDS = 1;
 
     protected AtomicReference<AuthorizationService> mAuthService = new AtomicReference<>();
+    @Nullable
+    protected final String mAccountId;
+    @RawRes
+    protected final int mConfigResId;
     protected final AuthStateManager mAuthStateManager;
     protected final OAuthClientConfiguration mConfiguration;
 
@@ -82,6 +106,54 @@ public class OktaAppAuth {
     protected final AtomicReference<String> mClientId = new AtomicReference<>();
     protected final AtomicReference<AuthorizationRequest> mAuthRequest = new AtomicReference<>();
     protected final AtomicReference<CustomTabsIntent> mAuthIntent = new AtomicReference<>();
+    protected final AtomicBoolean mPrewarmConnection = new AtomicBoolean();
+    protected final AtomicBoolean mOfflineFirst = new AtomicBoolean();
+    protected final AtomicBoolean mRefreshOnForeground = new AtomicBoolean();
+
+    /*
+     * Requests (and their Custom Tabs intents) prepared ahead of time for payloads that were
+     * used before. Entries are taken out when used, so that PKCE, state and nonce values are
+     * never sent twice; a replacement is prepared in the background.
+     */
+    protected final LruCache<AuthenticationPayload, PreparedAuthRequest> mPreparedRequests =
+            new LruCache<>(PREPARED_REQUEST_CACHE_SIZE);
+    private final AtomicInteger mPreparedRequestsGeneration = new AtomicInteger();
+
+    // access tokens for narrower scopes than the configured ones, see getAccessToken(Set, ...)
+    private final ScopedTokenCache mScopedTokens = new ScopedTokenCache(
+            ScopedTokenCache.DEFAULT_MAX_SIZE,
+            new ScopedTokenCache.TokenFetcher() {
+                @Override
+                public void fetch(
+                        @NonNull Set<String> scopes,
+                        @NonNull ScopedTokenCache.FetchCallback callback) {
+                    mintScopedToken(scopes, callback);
+                }
+            });
+
+    /*
+     * The listeners of the refresh in flight or waiting to start, or null when there is none.
+     * Concurrent refreshes share one token request: with refresh token rotation, a second
+     * request with the same refresh token would be rejected, and end the session. For the same
+     * reason the refresh token is used by one request at a time, refreshes and scoped token
+     * mints alike; requests that want it while it is in use wait in mRefreshTokenQueue.
+     */
+    private final Object mRefreshLock = new Object();
+    private List<OktaAuthListener> mRefreshListeners;
+    private boolean mRefreshTokenInUse;
+    private final Queue<Runnable> mRefreshTokenQueue = new ArrayDeque<>();
+
+    /*
+     * The listeners of the initialization in flight, or null when there is none. Calls to init
+     * made meanwhile wait for it rather than fetching the discovery document again.
+     */
+    private final Object mInitLock = new Object();
+    private List<OktaAuthListener> mInitListeners;
+
+    // the callbacks of the userinfo requests in flight, by the access token they were sent with
+    private final Map<String, List<OktaAuthActionCallback<JSONObject>>> mUserInfoCallbacks =
+            new HashMap<>();
+    private final UserInfoCache mUserInfoCache;
 
     protected ExecutorService mExecutor;
 
@@ -91,20 +163,58 @@ public class OktaAppAuth {
     protected Context mContext;
 
     /**
-     * Retrieve the manager object via the static {@link WeakReference} or construct a new instance.
+     * Retrieve the process wide manager object, constructing it on first use. The instance is
+     * kept for the lifetime of the process, so the stored state and configuration are only
+     * loaded once.
      *
      * @param context The Context from which to get the application's environment
      * @return am OktaAppAuth object
      */
     @AnyThread
-    public static OktaAppAuth getInstance(@NonNull Context context) {
-        OktaAppAuth oktaAppAuth = INSTANCE_REF.get().get();
-        if (oktaAppAuth == null) {
-            oktaAppAuth = new OktaAppAuth(context.getApplicationContext());
-            INSTANCE_REF.set(new WeakReference<>(oktaAppAuth));
-        }
+    public static OktaAppAuth getInstance(@NonNull final Context context) {
+        return InstanceRegistry.getOrCreate(
+                OktaAppAuth.class,
+                new InstanceRegistry.Factory<OktaAppAuth>() {
+                    @NonNull
+                    @Override
+                    public OktaAppAuth create() {
+                        return new OktaAppAuth(context.getApplicationContext());
+                    }
+                });
+    }
 
-        return oktaAppAuth;
+    /**
+     * Retrieve the process wide manager object of an account, constructing it on first use.
+     * Accounts are independent of each other: each has its own configuration, stored tokens,
+     * discovery document and background thread, so several accounts (possibly at different
+     * issuers) can be initialized and refreshed in parallel. Once constructed, switching
+     * between accounts is a map lookup.
+     *
+     * @param context     The Context from which to get the application's environment
+     * @param accountId   A stable, app defined id of the account, used to name its stored state;
+     *                    1 to 64 letters, digits, {@code _} or {@code -}
+     * @param configResId The raw resource with the account's configuration, in the format of
+     *                    {@code okta_app_auth_config.json}
+     * @return an OktaAppAuth object
+     * @throws IllegalArgumentException if the account id is not valid
+     */
+    @AnyThread
+    public static OktaAppAuth getInstance(
+            @NonNull final Context context,
+            @NonNull final String accountId,
+            @RawRes final int configResId) {
+        InstanceRegistry.checkAccountId(accountId);
+        return InstanceRegistry.getOrCreate(
+                OktaAppAuth.class,
+                accountId,
+                new InstanceRegistry.Factory<OktaAppAuth>() {
+                    @NonNull
+                    @Override
+                    public OktaAppAuth create() {
+                        return new OktaAppAuth(
+                                context.getApplicationContext(), accountId, configResId);
+                    }
+                });
     }
 
     /**
@@ -114,10 +224,53 @@ public class OktaAppAuth {
      */
     @AnyThread
     protected OktaAppAuth(Context context) {
+        this(context, null, R.raw.okta_app_auth_config);
+    }
+
+    /**
+     * Constructs an OktaAppAuth object for an account.
+     *
+     * @param context     The application Context
+     * @param accountId   The account, or {@code null} for the default account
+     * @param configResId The raw resource with the account's configuration
+     */
+    @AnyThread
+    protected OktaAppAuth(
+            Context context,
+            @Nullable String accountId,
+            @RawRes int configResId) {
         mContext = context.getApplicationContext();
-        mExecutor = Executors.newSingleThreadExecutor();
-        mAuthStateManager = AuthStateManager.getInstance(mContext);
-        mConfiguration = OAuthClientConfiguration.getInstance(mContext);
+        mAccountId = accountId;
+        mConfigResId = configResId;
+        mExecutor = createExecutor();
+        mAuthStateManager = AuthStateManager.getInstance(mContext, accountId);
+        mConfiguration = OAuthClientConfiguration.getInstance(mContext, accountId, configResId);
+        mUserInfoCache = UserInfoCache.getInstance(mContext, accountId);
+        ProcessLifecycleMonitor.getInstance(mContext).addListener(
+                new ProcessLifecycleMonitor.Listener() {
+                    @Override
+                    public void onForeground() {
+                        onAppForegrounded();
+                    }
+
+                    @Override
+                    public void onBackground() {
+                        onAppBackgrounded();
+                    }
+                });
+    }
+
+    /*
+     * A single thread, which goes away once idle so that an instance kept for the lifetime of the
+     * process does not hold a thread for it.
+     */
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1, 1,
+                EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
@@ -153,14 +306,215 @@ public class OktaAppAuth {
             final OktaAuthListener listener,
             @ColorInt int customTabColor) {
         mCustomTabColor = customTabColor;
+        final OktaAuthListener timedListener = timed(Stage.INIT, listener);
+        synchronized (mInitLock) {
+            if (mInitListeners != null) {
+                AuthLog.d(TAG, "Joining the initialization in flight");
+                mInitListeners.add(timedListener);
+                return;
+            }
+            mInitListeners = new ArrayList<>();
+            mInitListeners.add(timedListener);
+        }
+        AuthorizationParametersPool.getInstance().prefill();
+        final OktaAuthListener initListener = new OktaAuthListener() {
+            @Override
+            public void onSuccess() {
+                for (OktaAuthListener waiting : takeInitListeners()) {
+                    waiting.onSuccess();
+                }
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                for (OktaAuthListener waiting : takeInitListeners()) {
+                    waiting.onTokenFailure(ex);
+                }
+            }
+        };
         mExecutor.submit(new Runnable() {
             @Override
             public void run() {
-                doInit(context, listener);
+                boolean traced = AuthTrace.begin(AuthTrace.INIT);
+                try {
+                    doInit(context, initListener);
+                } catch (RuntimeException ex) {
+                    // don't leave later calls waiting on an initialization that failed
+                    takeInitListeners();
+                    throw ex;
+                } finally {
+                    AuthTrace.end(traced);
+                }
             }
         });
     }
 
+    private List<OktaAuthListener> takeInitListeners() {
+        synchronized (mInitLock) {
+            List<OktaAuthListener> listeners = mInitListeners;
+            mInitListeners = null;
+            return listeners != null
+                    ? listeners
+                    : Collections.<OktaAuthListener>emptyList();
+        }
+    }
+
+    /**
+     * Enables opening a keep-alive connection to the issuer during {@link #init}, once the
+     * client is configured. The session token flow started by
+     * {@link #authenticate(String, OktaNativeAuthListener)} can then reuse that connection for
+     * both the authorize and the token requests instead of paying for a TCP and TLS handshake.
+     * Disabled by default.
+     *
+     * @param prewarm {@code true} to warm up the connection during initialization
+     */
+    @AnyThread
+    public void setPrewarmConnection(boolean prewarm) {
+        mPrewarmConnection.set(prewarm);
+    }
+
+    /**
+     * <p>
+     * Enables offline-first mode, for apps used on unreliable networks. Disabled by default.
+     * </p>
+     * <ul>
+     * <li>{@link #init} completes from the stored configuration, as it always does once the
+     * discovery document has been fetched; on first use, it waits for a network connection
+     * instead of failing.</li>
+     * <li>{@link #getUserInfo} serves the last userinfo response of the signed in user when the
+     * device is offline or the issuer can't be reached. The response is stored on the device
+     * for that purpose, until the session is cleared. Pass an {@link OktaFreshnessCallback} to
+     * tell stored responses from fresh ones.</li>
+     * <li>{@link #refreshAccessToken} and {@link #performAuthorizedRequest} wait for a network
+     * connection when the device is offline, rather than failing right away.</li>
+     * </ul>
+     * <p>
+     * {@link #getTokens()} never needs the network, whatever the mode.
+     * </p>
+     *
+     * @param offlineFirst {@code true} to enable offline-first mode
+     */
+    @AnyThread
+    public void setOfflineFirst(boolean offlineFirst) {
+        mOfflineFirst.set(offlineFirst);
+        if (!offlineFirst) {
+            mUserInfoCache.clear();
+        }
+    }
+
+    /**
+     * Enables refreshing the access token when the app comes back to the foreground, if it
+     * expired while the app was in the background, so that it is fresh by the time the app
+     * makes requests with it. The refresh is only made when the user is logged in and there is
+     * a refresh token; its outcome is reported to {@link OktaEventListener}. Disabled by default.
+     *
+     * @param refreshOnForeground {@code true} to refresh expired tokens on coming to the
+     *                            foreground
+     */
+    @AnyThread
+    public void setRefreshOnForeground(boolean refreshOnForeground) {
+        mRefreshOnForeground.set(refreshOnForeground);
+    }
+
+    /**
+     * Enables checking the signature of every ID token received against the keys published at
+     * the issuer's {@code jwks_uri}. Token responses with an ID token that fails the check are
+     * discarded and reported with
+     * {@link AuthorizationException.GeneralErrors#ID_TOKEN_VALIDATION_ERROR}. The keys are
+     * fetched during {@link #init} and cached for as long as the issuer allows. Disabled by
+     * default.
+     *
+     * @param enabled {@code true} to verify ID token signatures
+     */
+    @AnyThread
+    public void setIdTokenSignatureVerification(boolean enabled) {
+        mAuthStateManager.setIdTokenVerifier(
+                enabled ? new IdTokenVerifier(new JwksKeyCache()) : null);
+    }
+
+    /**
+     * Sets the {@link ConnectionBuilder} used for every AppAuth network call: discovery, token
+     * exchange and refresh, and the authorize request of the session token flow. Use
+     * {@link OktaConnectionBuilder} to apply connect and read timeouts, optionally on top of
+     * your own ConnectionBuilder. The setting is process wide and is also picked up by
+     * {@link OktaManagementActivity}, so it is best called from
+     * {@link android.app.Application#onCreate()} before {@link #init}.
+     *
+     * @param connectionBuilder The ConnectionBuilder to open connections with
+     */
+    @AnyThread
+    public void setConnectionBuilder(@NonNull ConnectionBuilder connectionBuilder) {
+        SharedAuthorizationService.setConnectionBuilder(connectionBuilder);
+        SharedAuthorizationService.release(mAuthService.getAndSet(null));
+        invalidatePreparedRequests();
+    }
+
+    /**
+     * Sets the process wide listener for timing and outcome events of all operations, such as
+     * {@link #init}, {@link #login}, token refreshes and {@link #getUserInfo}. By default,
+     * events are discarded.
+     *
+     * @param listener The listener, or {@code null} to stop receiving events
+     */
+    @AnyThread
+    public static void setEventListener(@Nullable OktaEventListener listener) {
+        AuthEvents.setListener(listener);
+    }
+
+    /**
+     * Enables {@link android.os.Trace} sections for the SDK's work, so that it shows up in
+     * system traces, such as those captured by Android Studio's profiler or Perfetto. Work done
+     * on one thread is labelled {@code Okta:init}, {@code Okta:parseConfiguration},
+     * {@code Okta:readState}, {@code Okta:writeState}, {@code Okta:createAuthorizationService},
+     * {@code Okta:prepareAuthRequest} and {@code Okta:verifyIdToken}. Each operation reported
+     * to the {@link OktaEventListener} also gets an async section named after its stage, such as
+     * {@code Okta:DISCOVERY} or {@code Okta:REFRESH}, covering its network calls. Disabled by
+     * default; sections need API 18.
+     *
+     * @param enabled {@code true} to write trace sections
+     */
+    @AnyThread
+    public static void setTracingEnabled(boolean enabled) {
+        AuthTrace.setEnabled(enabled);
+    }
+
+    /**
+     * Routes the SDK's log messages to the given logger, for example to forward them to the
+     * app's own logging or crash reporting.
+     *
+     * @param logger the logger, or {@code null} to restore the default, which writes to logcat
+     */
+    @AnyThread
+    public static void setLogger(@Nullable OktaLogger logger) {
+        AuthLog.setLogger(logger);
+    }
+
+    /**
+     * Sets the lowest priority of the messages that the SDK logs. Messages below it are not
+     * formatted or passed to the {@link OktaLogger}. The default is {@link Log#DEBUG} in debug
+     * builds of the SDK and {@link Log#WARN} in release builds; use {@link Log#ASSERT} to turn
+     * logging off.
+     *
+     * @param priority one of the {@link Log} priority constants
+     */
+    @AnyThread
+    public static void setLogLevel(@IntRange(from = Log.VERBOSE, to = Log.ASSERT) int priority) {
+        AuthLog.setLevel(priority);
+    }
+
+    /**
+     * Returns the counters and latency histograms that the SDK keeps for its operations, such
+     * as token refreshes, authorized requests, storage and discovery. The values are process
+     * wide and count from process start.
+     *
+     * @return a snapshot of the current values
+     */
+    @AnyThread
+    @NonNull
+    public static MetricsSnapshot getMetricsSnapshot() {
+        return AuthMetrics.snapshot();
+    }
+
     /**
      * Performs revocation of accessToken or refreshToken.
      *
@@ -199,6 +553,7 @@ public class OktaAppAuth {
             throw new IllegalStateException("Okta should be initialized first");
         }
 
+        mScopedTokens.clear();
         if (mAuthStateManager.getCurrent().getRefreshToken() != null) {
             //if we have refresh token we have to perform revoke it first
             mExecutor.submit(new Runnable() {
@@ -233,7 +588,10 @@ public class OktaAppAuth {
     }
 
     @WorkerThread
-    private void doRevoke(String token,@NonNull RevokeTokenRequest.RevokeListener listener) {
+    private void doRevoke(
+            String token,
+            @NonNull final RevokeTokenRequest.RevokeListener listener) {
+        final long start = AuthEvents.start(Stage.REVOKE);
         RevokeTokenRequest request =
                 new RevokeTokenRequest.Builder(
                         mAuthStateManager.getCurrent()
@@ -243,7 +601,19 @@ public class OktaAppAuth {
                         .addToken(token)
                         .build();
 
-        request.performRequest(listener);
+        request.performRequest(new RevokeTokenRequest.RevokeListener() {
+            @Override
+            public void onSuccess() {
+                AuthEvents.end(Stage.REVOKE, start, -1, null);
+                listener.onSuccess();
+            }
+
+            @Override
+            public void onError(AuthorizationException ex) {
+                AuthEvents.end(Stage.REVOKE, start, -1, ex);
+                listener.onError(ex);
+            }
+        });
     }
 
     /**
@@ -281,6 +651,7 @@ public class OktaAppAuth {
         if (mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration() == null) {
             throw new IllegalStateException("Okta should be initialized first");
         }
+        mScopedTokens.clear();
         mExecutor.submit(new Runnable() {
             @Override
             public void run() {
@@ -288,7 +659,9 @@ public class OktaAppAuth {
                         OktaManagementActivity.createStartIntent(
                                 context.getApplicationContext(),
                                 completionIntent,
-                                cancelIntent),
+                                cancelIntent,
+                                mAccountId,
+                                mConfigResId),
                         cancelIntent, payload);
             }
         });
@@ -303,6 +676,7 @@ public class OktaAppAuth {
     public void authenticate(
             final String sessionToken,
             @Nullable final OktaNativeAuthListener listener) {
+        mScopedTokens.clear();
         mExecutor.submit(new Runnable() {
             @Override
             public void run() {
@@ -333,7 +707,9 @@ public class OktaAppAuth {
                         OktaManagementActivity.createStartIntent(
                                 context.getApplicationContext(),
                                 completionIntent,
-                                cancelIntent),
+                                cancelIntent,
+                                mAccountId,
+                                mConfigResId),
                         cancelIntent);
             }
         });
@@ -357,18 +733,19 @@ public class OktaAppAuth {
             }
             mAuthStateManager.replace(clearedState);
         }
+        invalidatePreparedRequests();
+        mScopedTokens.clear();
+        mUserInfoCache.clear();
     }
 
     /**
-     * Disposes state that will not normally be handled by garbage collection. This should be
-     * called when this service is no longer required, including when any owning activity is
-     * paused or destroyed (i.e. in {@link android.app.Activity#onDestroy()}).
+     * Disposes state that will not normally be handled by garbage collection. The authorization
+     * service is shared with {@link OktaManagementActivity}, so it is only torn down once the
+     * activity has released it as well. This is done when the app goes to the background, and
+     * the service is created again on next use, so calling this is optional.
      */
     public void dispose() {
-        if (mAuthService.get() != null) {
-            mAuthService.get().dispose();
-            mAuthService.set(null);
-        }
+        SharedAuthorizationService.release(mAuthService.getAndSet(null));
     }
 
     /**
@@ -405,52 +782,217 @@ public class OktaAppAuth {
 
     /**
      * The expiration time of the current access token (if available), as milliseconds from the
-     * UNIX epoch (consistent with {@link System#currentTimeMillis()}).
+     * UNIX epoch (consistent with {@link System#currentTimeMillis()}). For JWT access tokens
+     * this is the {@code exp} claim, adjusted for the estimated difference between the device
+     * and server clocks.
      *
      * @return Milliseconds from the UNIX epoch at which point the access token will expire
      */
     public Long getAccessTokenExpirationTime() {
-        return mAuthStateManager.getCurrent().getAccessTokenExpirationTime();
+        AuthState state = mAuthStateManager.getCurrent();
+        TokenClaims claims = TokenClaims.forToken(state.getAccessToken());
+        Long serverExpirationTime = claims != null ? claims.getExpirationTime() : null;
+        if (serverExpirationTime != null) {
+            return ServerClock.toDeviceTime(
+                    ServerClock.hostOf(claims.getIssuer()), serverExpirationTime);
+        }
+        return state.getAccessTokenExpirationTime();
     }
 
     /**
      * Refreshes the access token if a refresh token is available to do so. This method will
      * do nothing if there is no refresh token.
      *
-     * @param listener An OktaAuthSuccessListener that will be called once the refresh is complete
+     * @param listener An OktaAuthSuccessListener that will be called once the refresh is
+     *                 complete, on the calling thread if it has a Looper (such as the main
+     *                 thread), or else on a background thread
+     */
+    public void refreshAccessToken(OktaAuthListener listener) {
+        if (mOfflineFirst.get()) {
+            // held work is resumed on the executor, so the caller's Looper is captured now
+            final OktaAuthListener callingThreadListener = onCallingThread(listener);
+            getConnectivityMonitor().runWhenConnected(new Runnable() {
+                @Override
+                public void run() {
+                    doRefreshAccessToken(callingThreadListener);
+                }
+            }, mExecutor);
+            return;
+        }
+        doRefreshAccessToken(listener);
+    }
+
+    /*
+     * AppAuth times the access token with the device clock at the time it was received, which is
+     * wrong once the device clock is adjusted; the server's own expiry is not.
      */
-    public void refreshAccessToken(final OktaAuthListener listener) {
+    private static boolean needsTokenRefresh(AuthState state) {
+        TokenClaims claims = TokenClaims.forToken(state.getAccessToken());
+        return state.getNeedsTokenRefresh() || (claims != null && claims.isExpired());
+    }
+
+    private ConnectivityMonitor getConnectivityMonitor() {
+        return ConnectivityMonitor.getInstance(mContext);
+    }
+
+    private void doRefreshAccessToken(OktaAuthListener callerListener) {
+        // the ID token may be verified, or the refresh made by another process, in the
+        // background, but listeners are called back where they were before
+        final OktaAuthListener listener = onCallingThread(callerListener);
         if (!hasRefreshToken()) {
-            Log.d(TAG, "Calling refreshAccessToken without a refresh token");
+            AuthLog.d(TAG, "Calling refreshAccessToken without a refresh token");
             listener.onTokenFailure(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
             return;
         }
 
+        if (mAuthStateManager instanceof RemoteAuthStateManager) {
+            mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    AuthorizationException ex =
+                            ((RemoteAuthStateManager) mAuthStateManager).requestRefresh();
+                    if (ex == null) {
+                        listener.onSuccess();
+                    } else {
+                        listener.onTokenFailure(ex);
+                    }
+                }
+            });
+            return;
+        }
+
+        synchronized (mRefreshLock) {
+            if (mRefreshListeners != null) {
+                AuthLog.d(TAG, "Joining the token refresh in flight");
+                mRefreshListeners.add(listener);
+                return;
+            }
+            mRefreshListeners = new ArrayList<>();
+            mRefreshListeners.add(listener);
+        }
+        final OktaAuthListener refreshListener = new OktaAuthListener() {
+            @Override
+            public void onSuccess() {
+                List<OktaAuthListener> listeners = takeRefreshListeners();
+                releaseRefreshToken();
+                for (OktaAuthListener waiting : listeners) {
+                    waiting.onSuccess();
+                }
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                List<OktaAuthListener> listeners = takeRefreshListeners();
+                releaseRefreshToken();
+                for (OktaAuthListener waiting : listeners) {
+                    waiting.onTokenFailure(ex);
+                }
+            }
+        };
+        useRefreshToken(new Runnable() {
+            @Override
+            public void run() {
+                requestTokenRefresh(refreshListener);
+            }
+        });
+    }
+
+    private void requestTokenRefresh(OktaAuthListener leaderListener) {
+        // timed here, so that every refresh is counted once, whoever asked for it
+        final long start = AuthEvents.start(Stage.REFRESH);
+        final OktaAuthListener refreshListener = timed(Stage.REFRESH, start, leaderListener);
+
+        // the request and the check of its response must use the same state
+        AuthState state = mAuthStateManager.getCurrent();
+        final String refreshToken = state.getRefreshToken();
+        if (refreshToken == null) {
+            // the session ended while waiting for a scoped token mint
+            refreshListener.onTokenFailure(
+                    AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+            return;
+        }
         ClientAuthentication clientAuthentication;
         try {
-            clientAuthentication = mAuthStateManager.getCurrent().getClientAuthentication();
+            clientAuthentication = state.getClientAuthentication();
         } catch (UnsupportedAuthenticationMethod ex) {
-            Log.e(TAG, "Token request cannot be made; client authentication for the token "
-                    + "endpoint could not be constructed (%s)", ex);
-            listener.onTokenFailure(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+            AuthLog.e(TAG, "Token request cannot be made; client authentication for the token "
+                    + "endpoint could not be constructed", ex);
+            refreshListener.onTokenFailure(
+                    AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
             return;
         }
 
+        try {
+            createAuthorizationServiceIfNeeded().performTokenRequest(
+                    state.createTokenRefreshRequest(),
+                    clientAuthentication,
+                    new AuthorizationService.TokenResponseCallback() {
+                        @Override
+                        public void onTokenRequestCompleted(
+                                @Nullable final TokenResponse tokenResponse,
+                                @Nullable final AuthorizationException authException) {
+                            if (!mAuthStateManager.isIdTokenVerificationEnabled()) {
+                                handleAccessTokenResponse(tokenResponse,
+                                        authException, refreshToken, refreshListener);
+                                return;
+                            }
+                            // verifying the ID token may need the network
+                            mExecutor.submit(new Runnable() {
+                                @Override
+                                public void run() {
+                                    handleAccessTokenResponse(
+                                            tokenResponse,
+                                            authException,
+                                            refreshToken,
+                                            refreshListener);
+                                }
+                            });
+                        }
+                    });
+        } catch (RuntimeException ex) {
+            AuthEvents.end(Stage.REFRESH, start, -1, ex);
+            // don't leave later refreshes waiting on one that never started
+            takeRefreshListeners();
+            releaseRefreshToken();
+            throw ex;
+        }
+    }
 
-        createAuthorizationServiceIfNeeded().performTokenRequest(
-                mAuthStateManager.getCurrent().createTokenRefreshRequest(),
-                clientAuthentication,
-                new AuthorizationService.TokenResponseCallback() {
-                    @Override
-                    public void onTokenRequestCompleted(@Nullable TokenResponse tokenResponse,
-                                                        @Nullable AuthorizationException
-                                                                authException) {
-                        handleAccessTokenResponse(
-                                tokenResponse,
-                                authException,
-                                listener);
-                    }
-                });
+    /*
+     * Runs a request that uses the refresh token now, or once the request using it finishes.
+     * The request must call releaseRefreshToken() once its response, including a rotated
+     * refresh token, has been stored.
+     */
+    private void useRefreshToken(Runnable request) {
+        synchronized (mRefreshLock) {
+            if (mRefreshTokenInUse) {
+                AuthLog.d(TAG, "Refresh token in use, waiting for the request in flight");
+                mRefreshTokenQueue.add(request);
+                return;
+            }
+            mRefreshTokenInUse = true;
+        }
+        request.run();
+    }
+
+    private void releaseRefreshToken() {
+        Runnable next;
+        synchronized (mRefreshLock) {
+            next = mRefreshTokenQueue.poll();
+            if (next == null) {
+                mRefreshTokenInUse = false;
+                return;
+            }
+        }
+        next.run();
+    }
+
+    private List<OktaAuthListener> takeRefreshListeners() {
+        synchronized (mRefreshLock) {
+            List<OktaAuthListener> listeners = mRefreshListeners;
+            mRefreshListeners = null;
+            return listeners;
+        }
     }
 
     /**
@@ -465,66 +1007,186 @@ public class OktaAppAuth {
     /**
      * Fetches the user's information from the userinfo OpenID Connect endpoint. Provides the
      * user info as a JSONObject through a callback interface if successful, and calls a failure
-     * method on the callback in case of failure.
+     * method on the callback in case of failure. Calls made while a request for the same access
+     * token is in flight share its response, each getting its own JSONObject. In offline-first
+     * mode, the last response is served when the issuer can't be reached.
      *
      * @param callback An OktaAuthActionCallback providing the user info as a JSONObject on success
      *                 while calling one of the failure methods in case of a failure
+     * @see #setOfflineFirst(boolean)
      */
     public void getUserInfo(final OktaAuthActionCallback<JSONObject> callback) {
-        performAuthorizedRequest(new BearerAuthRequest() {
-            @NonNull
-            @Override
-            public HttpURLConnection createRequest() throws Exception {
-                AuthorizationServiceDiscovery discovery =
-                        mAuthStateManager.getCurrent()
-                                .getAuthorizationServiceConfiguration()
-                                .discoveryDoc;
-
-                URL userInfoEndpoint = new URL(discovery.getUserinfoEndpoint().toString());
+        if (mOfflineFirst.get() && !getConnectivityMonitor().isConnected()) {
+            UserInfoCache.Entry stored = readStoredUserInfo();
+            if (stored != null) {
+                deliverUserInfo(Collections.singletonList(callback), stored);
+                return;
+            }
+        }
 
-                HttpURLConnection conn = (HttpURLConnection) userInfoEndpoint.openConnection();
-                conn.setInstanceFollowRedirects(false);
-                return conn;
+        String accessToken = mAuthStateManager.getCurrent().getAccessToken();
+        final String key = accessToken != null ? accessToken : "";
+        synchronized (mUserInfoCallbacks) {
+            List<OktaAuthActionCallback<JSONObject>> waiting = mUserInfoCallbacks.get(key);
+            if (waiting != null) {
+                AuthLog.d(TAG, "Joining the userinfo request in flight");
+                waiting.add(callback);
+                return;
             }
+            waiting = new ArrayList<>();
+            waiting.add(callback);
+            mUserInfoCallbacks.put(key, waiting);
+        }
 
-            @Override
-            public void onSuccess(@NonNull InputStream response) {
-                String jsonString;
-                try {
-                    jsonString = Okio.buffer(Okio.source(response))
-                            .readString(Charset.forName("UTF-8"));
-                } catch (IOException e) {
-                    onFailure(-1, e);
-                    return;
+        final long start = AuthEvents.start(Stage.USER_INFO);
+        try {
+            performAuthorizedRequest(new BearerAuthRequest() {
+                @NonNull
+                @Override
+                public HttpURLConnection createRequest() throws Exception {
+                    AuthorizationServiceDiscovery discovery =
+                            mAuthStateManager.getCurrent()
+                                    .getAuthorizationServiceConfiguration()
+                                    .discoveryDoc;
+
+                    URL userInfoEndpoint = new URL(discovery.getUserinfoEndpoint().toString());
+
+                    HttpURLConnection conn =
+                            (HttpURLConnection) userInfoEndpoint.openConnection();
+                    conn.setInstanceFollowRedirects(false);
+                    return conn;
                 }
-                JSONObject jsonObject;
-                try {
-                    jsonObject = new JSONObject(jsonString);
-                } catch (JSONException e) {
-                    onFailure(-1, e);
-                    return;
+
+                @Override
+                public void onSuccess(@NonNull InputStream response) {
+                    Buffer body = new Buffer();
+                    long byteCount;
+                    try {
+                        byteCount = body.writeAll(Okio.source(response));
+                    } catch (IOException e) {
+                        onFailure(-1, e);
+                        return;
+                    }
+                    String json = body.readString(Charset.forName("UTF-8"));
+                    try {
+                        new JSONObject(json);
+                    } catch (JSONException e) {
+                        onFailure(-1, e);
+                        return;
+                    }
+
+                    AuthEvents.end(Stage.USER_INFO, start, byteCount, null);
+                    long now = System.currentTimeMillis();
+                    if (mOfflineFirst.get()) {
+                        mUserInfoCache.write(json, now);
+                    }
+                    deliverUserInfo(takeUserInfoCallbacks(key),
+                            new UserInfoCache.Entry(json, new Freshness(now, false)));
                 }
 
-                callback.onSuccess(jsonObject);
-            }
+                @Override
+                public void onTokenFailure(@NonNull AuthorizationException ex) {
+                    AuthLog.e(TAG, "Authorization error when fetching user info");
+                    AuthEvents.end(Stage.USER_INFO, start, -1, ex);
+                    List<OktaAuthActionCallback<JSONObject>> callbacks =
+                            takeUserInfoCallbacks(key);
+                    // a token refresh that could not reach the issuer
+                    UserInfoCache.Entry stored =
+                            AuthorizationException.GeneralErrors.NETWORK_ERROR.equals(ex)
+                                    && mOfflineFirst.get()
+                                    ? readStoredUserInfo()
+                                    : null;
+                    if (stored != null) {
+                        deliverUserInfo(callbacks, stored);
+                        return;
+                    }
+                    for (OktaAuthActionCallback<JSONObject> waiting : callbacks) {
+                        waiting.onTokenFailure(ex);
+                    }
+                }
 
-            @Override
-            public void onTokenFailure(@NonNull AuthorizationException ex) {
-                Log.e(TAG, "Authorization error when fetching user info");
-                callback.onTokenFailure(ex);
+                @Override
+                public void onFailure(int httpResponseCode, Exception ex) {
+                    List<OktaAuthActionCallback<JSONObject>> callbacks =
+                            takeUserInfoCallbacks(key);
+                    if (callbacks.isEmpty()) {
+                        // already reported for the status code
+                        return;
+                    }
+                    AuthEvents.end(Stage.USER_INFO, start, -1, ex != null
+                            ? ex
+                            : new IOException("HTTP status " + httpResponseCode));
+                    if (ex != null) {
+                        AuthLog.e(TAG, "Error when querying userinfo endpoint", ex);
+                    } else {
+                        AuthLog.e(TAG, "Bad status code when querying userinfo endpoint: %s",
+                                httpResponseCode);
+                    }
+                    UserInfoCache.Entry stored = ex instanceof IOException && mOfflineFirst.get()
+                            ? readStoredUserInfo()
+                            : null;
+                    if (stored != null) {
+                        deliverUserInfo(callbacks, stored);
+                        return;
+                    }
+                    for (OktaAuthActionCallback<JSONObject> waiting : callbacks) {
+                        waiting.onFailure(httpResponseCode, ex);
+                    }
+                }
+            });
+        } catch (RuntimeException ex) {
+            // the caller gets the exception, anyone who joined meanwhile gets a failure
+            List<OktaAuthActionCallback<JSONObject>> callbacks = takeUserInfoCallbacks(key);
+            callbacks.remove(callback);
+            for (OktaAuthActionCallback<JSONObject> waiting : callbacks) {
+                waiting.onFailure(-1, ex);
             }
+            throw ex;
+        }
+    }
 
-            @Override
-            public void onFailure(int httpResponseCode, Exception ex) {
-                if (ex != null) {
-                    Log.e(TAG, "Error when querying userinfo endpoint", ex);
-                } else {
-                    Log.e(TAG, "Bad status code when querying userinfo endpoint: " +
-                            httpResponseCode);
-                }
-                callback.onFailure(httpResponseCode, ex);
+    /*
+     * The stored userinfo response of the signed in user, served when the issuer can't be
+     * reached.
+     */
+    @Nullable
+    private UserInfoCache.Entry readStoredUserInfo() {
+        TokenClaims claims = TokenClaims.forToken(mAuthStateManager.getCurrent().getIdToken());
+        UserInfoCache.Entry stored =
+                mUserInfoCache.read(claims != null ? claims.getSubject() : null);
+        AuthEvents.cacheResult(Stage.USER_INFO, stored != null);
+        if (stored != null) {
+            AuthLog.i(TAG, "Issuer unreachable, serving the stored user info");
+        }
+        return stored;
+    }
+
+    private static void deliverUserInfo(
+            List<OktaAuthActionCallback<JSONObject>> callbacks,
+            UserInfoCache.Entry userInfo) {
+        for (OktaAuthActionCallback<JSONObject> callback : callbacks) {
+            // each caller gets its own object, which it may modify
+            JSONObject jsonObject;
+            try {
+                jsonObject = new JSONObject(userInfo.mJson);
+            } catch (JSONException e) {
+                callback.onFailure(-1, e);
+                continue;
             }
-        });
+            if (callback instanceof OktaFreshnessCallback) {
+                ((OktaFreshnessCallback<JSONObject>) callback).onFreshness(userInfo.mFreshness);
+            }
+            callback.onSuccess(jsonObject);
+        }
+    }
+
+    private List<OktaAuthActionCallback<JSONObject>> takeUserInfoCallbacks(String key) {
+        synchronized (mUserInfoCallbacks) {
+            List<OktaAuthActionCallback<JSONObject>> callbacks = mUserInfoCallbacks.remove(key);
+            return callbacks != null
+                    ? callbacks
+                    : Collections.<OktaAuthActionCallback<JSONObject>>emptyList();
+        }
     }
 
     /**
@@ -573,20 +1235,124 @@ public class OktaAppAuth {
      *               handlers
      */
     public void performAuthorizedRequest(final BearerAuthRequest action) {
-        if (mAuthStateManager.getCurrent().getNeedsTokenRefresh() && !hasRefreshToken()) {
-            Log.i(TAG, "Attempted to take an authorized action, but don't have a refresh token");
+        if (mOfflineFirst.get() && !getConnectivityMonitor().isConnected()) {
+            AuthLog.i(TAG, "Offline, sending the authorized request once connected");
+            getConnectivityMonitor().runWhenConnected(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        performAuthorizedRequest(action);
+                    } catch (IllegalStateException ex) {
+                        // the session ended while waiting; there is no caller to throw to
+                        action.onFailure(-1, ex);
+                    }
+                }
+            }, mExecutor);
+            return;
+        }
+
+        AuthState state = mAuthStateManager.getCurrent();
+        boolean needsRefresh = needsTokenRefresh(state);
+
+        if (needsRefresh && state.getRefreshToken() == null) {
+            AuthLog.i(TAG,
+                    "Attempted to take an authorized action, but don't have a refresh token");
             throw new IllegalStateException("No refresh token to get new authorization");
         }
 
-        mAuthStateManager.getCurrent().performActionWithFreshTokens(
-                createAuthorizationServiceIfNeeded(),
-                new AuthStateAction() {
-                    @Override
-                    public void execute(@Nullable String accessToken, @Nullable String idToken,
-                                        @Nullable AuthorizationException ex) {
-                        doAuthorizedAction(accessToken, ex, action);
-                    }
-                });
+        if (!needsRefresh) {
+            doAuthorizedAction(state.getAccessToken(), null, action);
+            return;
+        }
+
+        if (mAuthStateManager instanceof RemoteAuthStateManager) {
+            // the process that owns the auth state does the refresh
+            mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    AuthorizationException ex =
+                            ((RemoteAuthStateManager) mAuthStateManager).requestRefresh();
+                    doAuthorizedAction(
+                            mAuthStateManager.getCurrent().getAccessToken(), ex, action);
+                }
+            });
+            return;
+        }
+
+        // refreshed here rather than by AuthState, so that the refresh is shared with other
+        // callers and the new tokens are stored
+        doRefreshAccessToken(new OktaAuthListener() {
+            @Override
+            public void onSuccess() {
+                doAuthorizedAction(mAuthStateManager.getCurrent().getAccessToken(), null, action);
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                doAuthorizedAction(null, ex, action);
+            }
+        });
+    }
+
+    /**
+     * Provides an access token for a subset of the scopes that were granted at login, for
+     * resource servers that should not receive the full access token. The token is minted with
+     * the refresh token and kept until shortly before it expires, so later calls with the same
+     * scopes (in any order) don't go to the network. The tokens are dropped when the session
+     * ends.
+     *
+     * @param scopes   The scopes the access token should be limited to
+     * @param callback Receives the access token, or calls
+     *                 {@link OktaAuthActionCallback#onTokenFailure(AuthorizationException)} if
+     *                 it could not be obtained
+     */
+    @AnyThread
+    public void getAccessToken(
+            @NonNull Set<String> scopes,
+            @NonNull final OktaAuthActionCallback<String> callback) {
+        if (!hasRefreshToken()) {
+            AuthLog.d(TAG, "Calling getAccessToken without a refresh token");
+            callback.onTokenFailure(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+            return;
+        }
+        mScopedTokens.getAccessToken(scopes, new ScopedTokenCache.Callback() {
+            @Override
+            public void onComplete(
+                    @Nullable String accessToken,
+                    @Nullable AuthorizationException ex) {
+                if (ex != null) {
+                    callback.onTokenFailure(ex);
+                } else {
+                    callback.onSuccess(accessToken);
+                }
+            }
+        });
+    }
+
+    /**
+     * Performs an authorized action like {@link #performAuthorizedRequest(BearerAuthRequest)},
+     * with an access token limited to the given scopes.
+     *
+     * @param scopes The scopes the access token should be limited to
+     * @param action An BearerAuthRequest detailing the action to take with success and failure
+     *               handlers
+     * @see #getAccessToken(Set, OktaAuthActionCallback)
+     */
+    public void performAuthorizedRequest(
+            @NonNull Set<String> scopes,
+            @NonNull final BearerAuthRequest action) {
+        if (!hasRefreshToken()) {
+            AuthLog.i(TAG, "Attempted to take a scoped action, but don't have a refresh token");
+            throw new IllegalStateException("No refresh token to get new authorization");
+        }
+        mScopedTokens.getAccessToken(scopes, new ScopedTokenCache.Callback() {
+            @Override
+            public void onComplete(
+                    @Nullable String accessToken,
+                    @Nullable AuthorizationException ex) {
+                doAuthorizedAction(accessToken, ex, action);
+            }
+        });
     }
 
     /**
@@ -598,6 +1364,27 @@ public class OktaAppAuth {
         return Tokens.fromAuthState(mAuthStateManager.getCurrent());
     }
 
+    /**
+     * Returns the circuit breaker of the issuer, which suspends requests to it while it is
+     * rate limiting or failing.
+     *
+     * @return the {@link CircuitBreaker}, or {@code null} if there is no configuration yet
+     */
+    @AnyThread
+    @Nullable
+    public CircuitBreaker getCircuitBreaker() {
+        Uri discoveryUri = mConfiguration.getDiscoveryUri();
+        if (discoveryUri == null || discoveryUri.getHost() == null) {
+            return null;
+        }
+        return CircuitBreaker.forHost(discoveryUri.getHost());
+    }
+
+    private boolean isIssuerHost(String host) {
+        Uri discoveryUri = mConfiguration.getDiscoveryUri();
+        return discoveryUri != null && host.equalsIgnoreCase(discoveryUri.getHost());
+    }
+
     @WorkerThread
     private void doInit(final Context context, final OktaAuthListener listener) {
         mInitializationListener.set(listener);
@@ -605,10 +1392,11 @@ public class OktaAppAuth {
 
         if (mConfiguration.hasConfigurationChanged()) {
             // discard any existing authorization state due to the change of configuration
-            Log.i(TAG, "Configuration change detected, discarding old state");
+            AuthLog.i(TAG, "Configuration change detected, discarding old state");
             mAuthStateManager.replace(new AuthState());
             if (!mConfiguration.isValid()) {
-                Log.e(TAG, "Configuration was invalid: " + mConfiguration.getConfigurationError());
+                AuthLog.e(TAG, "Configuration was invalid: %s",
+                        mConfiguration.getConfigurationError());
                 listener.onTokenFailure(
                         AuthorizationException.GeneralErrors.INVALID_DISCOVERY_DOCUMENT);
                 return;
@@ -617,14 +1405,33 @@ public class OktaAppAuth {
         }
 
 
-        if (mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration() != null) {
+        boolean cached =
+                mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration() != null;
+        AuthEvents.cacheResult(Stage.DISCOVERY, cached);
+        if (cached) {
             // configuration is already created, skip to client initialization
-            Log.i(TAG, "auth config already established");
+            AuthLog.i(TAG, "auth config already established");
             initializeClient();
             return;
         }
 
-        Log.i(TAG, "Retrieving OpenID discovery doc");
+        if (mOfflineFirst.get()) {
+            // there is no stored configuration to start from, so wait rather than fail
+            getConnectivityMonitor().runWhenConnected(new Runnable() {
+                @Override
+                public void run() {
+                    fetchDiscoveryDocument();
+                }
+            }, mExecutor);
+        } else {
+            fetchDiscoveryDocument();
+        }
+    }
+
+    @AnyThread
+    private void fetchDiscoveryDocument() {
+        AuthLog.i(TAG, "Retrieving OpenID discovery doc");
+        final long start = AuthEvents.start(Stage.DISCOVERY);
         AuthorizationServiceConfiguration.fetchFromUrl(
                 mConfiguration.getDiscoveryUri(),
                 new AuthorizationServiceConfiguration.RetrieveConfigurationCallback() {
@@ -632,10 +1439,11 @@ public class OktaAppAuth {
                     public void onFetchConfigurationCompleted(
                             @Nullable AuthorizationServiceConfiguration serviceConfiguration,
                             @Nullable AuthorizationException ex) {
+                        AuthEvents.end(Stage.DISCOVERY, start, -1, ex);
                         handleConfigurationRetrievalResult(serviceConfiguration, ex);
                     }
                 },
-                DefaultConnectionBuilder.INSTANCE);
+                SharedAuthorizationService.getGuardedConnectionBuilder());
     }
 
     /*
@@ -643,7 +1451,7 @@ public class OktaAppAuth {
      */
     @WorkerThread
     private void initializeClient() {
-        Log.i(TAG, "Using static client ID: " + mConfiguration.getClientId());
+        AuthLog.i(TAG, "Using static client ID: %s", mConfiguration.getClientId());
         // use a statically configured client ID
         mClientId.set(mConfiguration.getClientId());
         initializeAuthRequest();
@@ -654,39 +1462,99 @@ public class OktaAppAuth {
     private void initializeAuthRequest() {
         createAuthRequest("");
         mInitializationListener.get().onSuccess();
+        if (mPrewarmConnection.get()) {
+            prewarmConnection();
+        }
+        mAuthStateManager.prefetchIdTokenKeys();
+    }
+
+    /*
+     * The discovery document lives on the same host as the authorize and token endpoints, and a
+     * HEAD request for it is cheap, so it is used to establish the pooled connection.
+     */
+    @WorkerThread
+    private void prewarmConnection() {
+        AuthLog.i(TAG, "Pre-warming connection to the issuer");
+        HttpConnections.prewarm(
+                SharedAuthorizationService.getGuardedConnectionBuilder(),
+                mConfiguration.getDiscoveryUri());
     }
 
-    private void createAuthRequest(@Nullable AuthenticationPayload payload) {
+    private AuthorizationRequest buildAuthRequest(@NonNull AuthenticationPayload payload) {
         AuthorizationRequest.Builder authRequestBuilder = new AuthorizationRequest.Builder(
                 mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration(),
                 mClientId.get(),
                 ResponseTypeValues.CODE,
                 mConfiguration.getRedirectUri())
                 .setScopes(mConfiguration.getScopes());
+        AuthorizationParametersPool.getInstance().take().applyTo(authRequestBuilder);
 
-        if (payload != null) {
-            authRequestBuilder.setAdditionalParameters(payload.getAdditionalParameters());
-            if (!TextUtils.isEmpty(payload.toString())) {
-                authRequestBuilder.setState(payload.getState());
-            }
-            if (!TextUtils.isEmpty(payload.getLoginHint())) {
-                authRequestBuilder.setLoginHint(payload.getLoginHint());
-            }
+        authRequestBuilder.setAdditionalParameters(payload.getAdditionalParameters());
+        if (!TextUtils.isEmpty(payload.getState())) {
+            authRequestBuilder.setState(payload.getState());
+        }
+        if (!TextUtils.isEmpty(payload.getLoginHint())) {
+            authRequestBuilder.setLoginHint(payload.getLoginHint());
         }
 
-        mAuthRequest.set(authRequestBuilder.build());
+        return authRequestBuilder.build();
+    }
+
+    @WorkerThread
+    private PreparedAuthRequest prepareAuthRequest(@NonNull AuthenticationPayload payload) {
+        boolean traced = AuthTrace.begin(AuthTrace.PREPARE_AUTH_REQUEST);
+        try {
+            AuthorizationRequest request = buildAuthRequest(payload);
+            CustomTabsIntent.Builder intentBuilder = createAuthorizationServiceIfNeeded()
+                    .createCustomTabsIntentBuilder(request.toUri());
+            intentBuilder.setToolbarColor(mCustomTabColor);
+            return new PreparedAuthRequest(request, intentBuilder.build());
+        } finally {
+            AuthTrace.end(traced);
+        }
+    }
+
+    /*
+     * Prepares the next request for a payload in the background, unless the cache has been
+     * invalidated in the meantime.
+     */
+    @AnyThread
+    private void schedulePreparedRequest(final AuthenticationPayload payload) {
+        final int generation = mPreparedRequestsGeneration.get();
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mPreparedRequestsGeneration.get()) {
+                    return;
+                }
+                PreparedAuthRequest prepared = prepareAuthRequest(payload);
+                if (generation == mPreparedRequestsGeneration.get()) {
+                    mPreparedRequests.put(payload, prepared);
+                }
+            }
+        });
+    }
+
+    @AnyThread
+    private void invalidatePreparedRequests() {
+        mPreparedRequestsGeneration.incrementAndGet();
+        mPreparedRequests.evictAll();
     }
 
     @Deprecated
     private void createAuthRequest(@Nullable String loginHint) {
-        Log.i(TAG, "Creating auth request" +
-                (loginHint == null ? "" : ("for login hint: " + loginHint)));
+        if (loginHint == null) {
+            AuthLog.i(TAG, "Creating auth request");
+        } else {
+            AuthLog.i(TAG, "Creating auth request for login hint: %s", loginHint);
+        }
         AuthorizationRequest.Builder authRequestBuilder = new AuthorizationRequest.Builder(
                 mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration(),
                 mClientId.get(),
                 ResponseTypeValues.CODE,
                 mConfiguration.getRedirectUri())
                 .setScopes(mConfiguration.getScopes());
+        AuthorizationParametersPool.getInstance().take().applyTo(authRequestBuilder);
 
         if (!TextUtils.isEmpty(loginHint)) {
             authRequestBuilder.setLoginHint(loginHint);
@@ -695,9 +1563,87 @@ public class OktaAppAuth {
         mAuthRequest.set(authRequestBuilder.build());
     }
 
+    /*
+     * Rebuilds the auth request for a new login hint in the background and lets the browser
+     * pre-fetch it, unless the current request already carries that hint.
+     */
+    @AnyThread
+    private void updateLoginHint(final String loginHint) {
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                AuthorizationRequest current = mAuthRequest.get();
+                if (current == null || TextUtils.equals(
+                        TextUtils.isEmpty(loginHint) ? null : loginHint, current.loginHint)) {
+                    return;
+                }
+                createAuthRequest(loginHint);
+                warmUpBrowser(mAuthRequest.get().toUri());
+            }
+        });
+    }
+
+    /*
+     * The Custom Tabs connection keeps the browser's service bound to this process, so it is let
+     * go while no one can log in. It is released on the background thread, after the work that
+     * is already queued there and may still use it.
+     */
+    @MainThread
+    private void onAppBackgrounded() {
+        if (mExecutor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) mExecutor).setKeepAliveTime(
+                    BACKGROUND_EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        }
+        if (mAuthService.get() == null) {
+            return;
+        }
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                AuthLog.i(TAG, "App in background, releasing the browser connection");
+                // prepared requests carry a Custom Tabs session of the released service
+                invalidatePreparedRequests();
+                dispose();
+            }
+        });
+    }
+
+    @MainThread
+    private void onAppForegrounded() {
+        if (mExecutor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) mExecutor).setKeepAliveTime(
+                    EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        }
+        mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                boolean loggedIn = isUserLoggedIn();
+                AuthorizationRequest request = mAuthRequest.get();
+                if (!loggedIn && request != null) {
+                    warmUpBrowser(request.toUri());
+                }
+                if (loggedIn && mRefreshOnForeground.get() && hasRefreshToken()
+                        && needsTokenRefresh(mAuthStateManager.getCurrent())) {
+                    AuthLog.i(TAG, "Access token expired in the background, refreshing");
+                    refreshAccessToken(new OktaAuthListener() {
+                        @Override
+                        public void onSuccess() {
+                            AuthLog.d(TAG, "Catch-up refresh done");
+                        }
+
+                        @Override
+                        public void onTokenFailure(@NonNull AuthorizationException ex) {
+                            AuthLog.w(TAG, "Catch-up refresh failed", ex);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
     @WorkerThread
     private void warmUpBrowser(Uri uri) {
-        Log.i(TAG, "Warming up browser instance for auth request");
+        AuthLog.i(TAG, "Warming up browser instance for auth request");
         CustomTabsIntent.Builder intentBuilder =
                 createAuthorizationServiceIfNeeded().createCustomTabsIntentBuilder(uri);
         intentBuilder.setToolbarColor(mCustomTabColor);
@@ -708,75 +1654,96 @@ public class OktaAppAuth {
     private void handleConfigurationRetrievalResult(AuthorizationServiceConfiguration config,
                                                     AuthorizationException ex) {
         if (config == null) {
-            Log.e(TAG, "Failed to retrieve discovery document", ex);
+            AuthLog.e(TAG, "Failed to retrieve discovery document", ex);
             mInitializationListener.get().onTokenFailure(ex);
             return;
         }
 
-        Log.i(TAG, "Discovery document retrieved");
+        AuthLog.i(TAG, "Discovery document retrieved");
         mAuthStateManager.replace(new AuthState(config));
+        invalidatePreparedRequests();
         mExecutor.submit(new Runnable() {
             @Override
             public void run() {
-                initializeClient();
+                try {
+                    initializeClient();
+                } catch (RuntimeException ex) {
+                    takeInitListeners();
+                    throw ex;
+                }
             }
         });
     }
 
     @WorkerThread
     private void recreateAuthorizationService(Context context) {
-        if (mAuthService.get() != null) {
-            Log.i(TAG, "Discarding existing AuthService instance");
-            mAuthService.get().dispose();
+        AuthorizationService previous =
+                mAuthService.getAndSet(SharedAuthorizationService.acquire(context));
+        if (previous != null) {
+            AuthLog.i(TAG, "Releasing existing AuthService instance");
+            SharedAuthorizationService.release(previous);
         }
-        mAuthService.set(createAuthorizationService(context));
         mAuthRequest.set(null);
         mAuthIntent.set(null);
+        invalidatePreparedRequests();
     }
 
     /**
-     * Handles recreating the authorization service if it has been cleared out.
+     * Handles recreating the authorization service if it has been cleared out. Only the service
+     * is acquired again; the auth request, which does not depend on it, is kept, and the Custom
+     * Tabs intent is rebuilt on the new service by the next {@link #warmUpBrowser(Uri)}.
      *
      * @return a usable instance of {@see AuthorizationService}
      */
     AuthorizationService createAuthorizationServiceIfNeeded() {
-        if (mAuthService.get() == null) {
-            recreateAuthorizationService(mContext);
+        AuthorizationService service = mAuthService.get();
+        if (service == null) {
+            AuthLog.i(TAG, "Acquiring AuthService instance again");
+            service = SharedAuthorizationService.acquire(mContext);
+            if (!mAuthService.compareAndSet(null, service)) {
+                // another thread acquired it first
+                SharedAuthorizationService.release(service);
+                service = mAuthService.get();
+            }
         }
-        return mAuthService.get();
-    }
-
-    private AuthorizationService createAuthorizationService(Context context) {
-        Log.i(TAG, "Creating authorization service");
-        AppAuthConfiguration.Builder builder = new AppAuthConfiguration.Builder();
-
-        return new AuthorizationService(context, builder.build());
+        return service;
     }
 
     @WorkerThread
     private void doAuth(PendingIntent completionIntent,
                         PendingIntent cancelIntent,
                         AuthenticationPayload payload) {
-        Log.d(TAG, "Starting authorization flow");
+        AuthLog.d(TAG, "Starting authorization flow");
+        long start = AuthEvents.start(Stage.LOGIN);
         if (payload != null) {
-            createAuthRequest(payload);
+            PreparedAuthRequest prepared = mPreparedRequests.remove(payload);
+            AuthEvents.cacheResult(Stage.LOGIN, prepared != null);
+            if (prepared == null) {
+                AuthLog.d(TAG, "No prepared request for payload, building one");
+                prepared = prepareAuthRequest(payload);
+            }
+            mAuthRequest.set(prepared.mRequest);
+            mAuthIntent.set(prepared.mAuthIntent);
+            schedulePreparedRequest(payload);
+        } else {
+            warmUpBrowser(mAuthRequest.get().toUri());
         }
-        AuthorizationRequest request = mAuthRequest.get();
-        warmUpBrowser(request.toUri());
         createAuthorizationServiceIfNeeded().performAuthorizationRequest(
-                request,
+                mAuthRequest.get(),
                 completionIntent,
                 cancelIntent,
                 mAuthIntent.get());
+        AuthEvents.end(Stage.LOGIN, start, -1, null);
     }
 
     @WorkerThread
     private void doAuth(String sessionToken, OktaNativeAuthListener listener) {
-        Log.d(TAG, "Starting native authorization flow");
+        AuthLog.d(TAG, "Starting native authorization flow");
         SessionAuthenticationService
                 sessionAuthenticationService = new SessionAuthenticationService(
                 mAuthStateManager,
-                createAuthorizationServiceIfNeeded());
+                createAuthorizationServiceIfNeeded(),
+                SharedAuthorizationService.getGuardedConnectionBuilder());
         sessionAuthenticationService.performAuthorizationRequest(
                 mAuthRequest.get(),
                 sessionToken,
@@ -785,7 +1752,7 @@ public class OktaAppAuth {
 
     @WorkerThread
     private void doEndSession(PendingIntent completionIntent, PendingIntent cancelIntent) {
-        Log.d(TAG, "Starting end session flow");
+        AuthLog.d(TAG, "Starting end session flow");
 
         EndSessionRequest request = new EndSessionRequest(
                 mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration(),
@@ -805,17 +1772,176 @@ public class OktaAppAuth {
                 cancelIntent, endSessionIntent);
     }
 
-    @WorkerThread
+    @AnyThread
+    void mintScopedToken(
+            @NonNull final Set<String> scopes,
+            @NonNull final ScopedTokenCache.FetchCallback callback) {
+        if (mAuthStateManager instanceof RemoteAuthStateManager) {
+            // the process that owns the auth state spends the refresh token
+            mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    ((RemoteAuthStateManager) mAuthStateManager)
+                            .requestScopedToken(scopes, callback);
+                }
+            });
+            return;
+        }
+        useRefreshToken(new Runnable() {
+            @Override
+            public void run() {
+                requestScopedToken(scopes, callback);
+            }
+        });
+    }
+
+    private void requestScopedToken(
+            @NonNull Set<String> scopes,
+            @NonNull final ScopedTokenCache.FetchCallback callback) {
+        AuthState state = mAuthStateManager.getCurrent();
+        AuthorizationServiceConfiguration config = state.getAuthorizationServiceConfiguration();
+        if (config == null || state.getRefreshToken() == null) {
+            releaseRefreshToken();
+            callback.onComplete(null, AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+            return;
+        }
+        ClientAuthentication clientAuthentication;
+        try {
+            clientAuthentication = state.getClientAuthentication();
+        } catch (UnsupportedAuthenticationMethod ex) {
+            AuthLog.e(TAG, "Token request cannot be made; client authentication for the token "
+                    + "endpoint could not be constructed", ex);
+            releaseRefreshToken();
+            callback.onComplete(null, AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+            return;
+        }
+
+        final String refreshToken = state.getRefreshToken();
+        TokenRequest request = new TokenRequest.Builder(config, mClientId.get())
+                .setGrantType(GrantTypeValues.REFRESH_TOKEN)
+                .setRefreshToken(refreshToken)
+                .setScopes(scopes)
+                .build();
+        try {
+            createAuthorizationServiceIfNeeded().performTokenRequest(
+                    request,
+                    clientAuthentication,
+                    new AuthorizationService.TokenResponseCallback() {
+                        @Override
+                        public void onTokenRequestCompleted(
+                                @Nullable final TokenResponse tokenResponse,
+                                @Nullable final AuthorizationException authException) {
+                            // storing a rotated refresh token writes to disk
+                            mExecutor.submit(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (tokenResponse != null
+                                            && tokenResponse.refreshToken != null) {
+                                        mAuthStateManager.updateRefreshToken(
+                                                refreshToken, tokenResponse.refreshToken);
+                                    }
+                                    releaseRefreshToken();
+                                    callback.onComplete(tokenResponse, authException);
+                                }
+                            });
+                        }
+                    });
+        } catch (RuntimeException ex) {
+            releaseRefreshToken();
+            throw ex;
+        }
+    }
+
+    /*
+     * Reports the time until the listener is called as an event for the stage.
+     */
+    private static OktaAuthListener timed(Stage stage, OktaAuthListener listener) {
+        return timed(stage, AuthEvents.start(stage), listener);
+    }
+
+    private static OktaAuthListener timed(
+            final Stage stage,
+            final long start,
+            final OktaAuthListener listener) {
+        return new OktaAuthListener() {
+            @Override
+            public void onSuccess() {
+                AuthEvents.end(stage, start, -1, null);
+                listener.onSuccess();
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                AuthEvents.end(stage, start, -1, ex);
+                listener.onTokenFailure(ex);
+            }
+        };
+    }
+
+    /*
+     * Calls the listener back on the thread that made the request if it has a Looper, such as
+     * the main thread, where AppAuth used to call it back.
+     */
+    private static OktaAuthListener onCallingThread(final OktaAuthListener listener) {
+        Looper looper = Looper.myLooper();
+        if (looper == null) {
+            return listener;
+        }
+        final Handler handler = new Handler(looper);
+        return new OktaAuthListener() {
+            @Override
+            public void onSuccess() {
+                runOn(handler, new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onSuccess();
+                    }
+                });
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull final AuthorizationException ex) {
+                runOn(handler, new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onTokenFailure(ex);
+                    }
+                });
+            }
+        };
+    }
+
+    private static void runOn(Handler handler, Runnable runnable) {
+        if (Looper.myLooper() == handler.getLooper()) {
+            runnable.run();
+        } else {
+            handler.post(runnable);
+        }
+    }
+
+    @AnyThread
     private void handleAccessTokenResponse(
             @Nullable TokenResponse tokenResponse,
             @Nullable AuthorizationException authException,
+            @NonNull String refreshToken,
             @NonNull OktaAuthListener listener) {
-        mAuthStateManager.updateAfterTokenResponse(tokenResponse, authException);
-        if (authException == null) {
+        AuthorizationException error = authException != null
+                ? authException
+                : mAuthStateManager.verifyIdToken(tokenResponse);
+        AuthState updated = mAuthStateManager.updateAfterVerifiedTokenResponse(
+                error == null ? tokenResponse : null,
+                error,
+                refreshToken);
+        if (error == null && tokenResponse != null
+                && !TextUtils.equals(tokenResponse.accessToken, updated.getAccessToken())) {
+            // the session was cleared or replaced while the refresh was in flight
+            error = AuthorizationException.GeneralErrors.PROGRAM_CANCELED_AUTH_FLOW;
+        }
+        if (error == null) {
             listener.onSuccess();
         } else {
-            Log.i(TAG, "Encountered an error with the access token response", authException);
-            listener.onTokenFailure(authException);
+            AuthLog.i(TAG, "Encountered an error with the access token response", error);
+            listener.onTokenFailure(error);
         }
     }
 
@@ -824,7 +1950,7 @@ public class OktaAppAuth {
             final AuthorizationException ex,
             final BearerAuthRequest action) {
         if (ex != null) {
-            Log.e(TAG, "Token refresh failed when performing action", ex);
+            AuthLog.e(TAG, "Token refresh failed when performing action", ex);
             action.onTokenFailure(ex);
             return;
         }
@@ -835,8 +1961,11 @@ public class OktaAppAuth {
                 HttpURLConnection conn;
                 try {
                     conn = action.createRequest();
+                    if (isIssuerHost(conn.getURL().getHost())) {
+                        conn = CircuitBreakerConnection.wrap(conn);
+                    }
                 } catch (Exception e) {
-                    Log.e(TAG, "Exception when creating authenticated request", e);
+                    AuthLog.e(TAG, "Exception when creating authenticated request", e);
                     action.onFailure(-1, e);
                     return;
                 }
@@ -847,16 +1976,30 @@ public class OktaAppAuth {
 
                 );
 
+                int responseCode;
+                long start = AuthEvents.start(Stage.AUTHORIZED_REQUEST);
+                try {
+                    responseCode = conn.getResponseCode();
+                } catch (IOException e) {
+                    AuthMetrics.recordResponseStatus(-1);
+                    AuthEvents.end(Stage.AUTHORIZED_REQUEST, start, -1, e);
+                    AuthLog.e(TAG, "Exception when adding authorization header to request", e);
+                    action.onFailure(-1, e);
+                    return;
+                }
+                AuthMetrics.recordResponseStatus(responseCode);
+                AuthEvents.end(Stage.AUTHORIZED_REQUEST, start, -1, null);
+
                 InputStream response;
                 try {
-                    if (conn.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                    if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
                         //4xx and 5xx should be considered failures
-                        action.onFailure(conn.getResponseCode(), null);
+                        action.onFailure(responseCode, null);
                     }
 
                     response = conn.getInputStream();
                 } catch (IOException e) {
-                    Log.e(TAG, "Exception when adding authorization header to request", e);
+                    AuthLog.e(TAG, "Exception when adding authorization header to request", e);
                     action.onFailure(-1, e);
                     return;
                 }
@@ -938,6 +2081,21 @@ public class OktaAppAuth {
         void onFailure(int httpResponseCode, Exception ex);
     }
 
+    /**
+     * An {@link OktaAuthActionCallback} that is also told how fresh a successful result is.
+     *
+     * @param <T> The type of object which is returned
+     * @see #setOfflineFirst(boolean)
+     */
+    public interface OktaFreshnessCallback<T> extends OktaAuthActionCallback<T> {
+        /**
+         * Called right before {@link #onSuccess(Object)}.
+         *
+         * @param freshness When the result was fetched, and whether it was served from storage
+         */
+        void onFreshness(@NonNull Freshness freshness);
+    }
+
     /**
      * Interface that allows a caller to construct an HttpURLConnection to a protected endpoint
      * and receive callbacks when the action succeeds or fails. The access token will be
@@ -1003,9 +2161,20 @@ public class OktaAppAuth {
 
         private static final int DEBOUNCE_DELAY_MS = 500;
 
-        private OktaAppAuth mOktaAppAuth;
-        private Handler mHandler;
-        private RecreateAuthRequestTask mTask;
+        private final OktaAppAuth mOktaAppAuth;
+        private final Handler mHandler;
+        private CharSequence mLoginHint = "";
+
+        /*
+         * A single task, re-posted on every change. The text is read when the task runs rather
+         * than on every keystroke.
+         */
+        private final Runnable mDebounceTask = new Runnable() {
+            @Override
+            public void run() {
+                mOktaAppAuth.updateLoginHint(mLoginHint.toString().trim());
+            }
+        };
 
         /**
          * Constructs a new LoginHintChangeHandler with the OktaAppAuth object that will be used
@@ -1016,7 +2185,6 @@ public class OktaAppAuth {
         public LoginHintChangeHandler(OktaAppAuth oktaAppAuth) {
             mOktaAppAuth = oktaAppAuth;
             mHandler = new Handler(Looper.getMainLooper());
-            mTask = new RecreateAuthRequestTask(oktaAppAuth, "");
         }
 
         @Override
@@ -1025,9 +2193,9 @@ public class OktaAppAuth {
 
         @Override
         public void onTextChanged(CharSequence cs, int start, int before, int count) {
-            mTask.cancel();
-            mTask = new RecreateAuthRequestTask(mOktaAppAuth, cs.toString().trim());
-            mHandler.postDelayed(mTask, DEBOUNCE_DELAY_MS);
+            mLoginHint = cs;
+            mHandler.removeCallbacks(mDebounceTask);
+            mHandler.postDelayed(mDebounceTask, DEBOUNCE_DELAY_MS);
         }
 
         @Override
@@ -1036,35 +2204,15 @@ public class OktaAppAuth {
     }
 
     /**
-     * Responds to changes in the login hint. After a "debounce" delay, warms up the browser
-     * for a request with the new login hint; this avoids constantly re-initializing the
-     * browser while the user is typing.
-     * @deprecated As of version 0.3.0, will be removed as a part of version 1.0.0
+     * An authorization request together with the Custom Tabs intent that launches it.
      */
-    @Deprecated
-    private static final class RecreateAuthRequestTask implements Runnable {
-
-        private final AtomicBoolean mCanceled = new AtomicBoolean();
-
-        private OktaAppAuth mOktaAppAuth;
-        private final String mLoginHint;
-
-        private RecreateAuthRequestTask(OktaAppAuth oktaAppAuth, String loginHint) {
-            mOktaAppAuth = oktaAppAuth;
-            mLoginHint = loginHint;
-        }
-
-        @Override
-        public void run() {
-            if (mCanceled.get()) {
-                return;
-            }
-
-            mOktaAppAuth.createAuthRequest(mLoginHint);
-        }
+    protected static final class PreparedAuthRequest {
+        final AuthorizationRequest mRequest;
+        final CustomTabsIntent mAuthIntent;
 
-        public void cancel() {
-            mCanceled.set(true);
+        PreparedAuthRequest(AuthorizationRequest request, CustomTabsIntent authIntent) {
+            mRequest = request;
+            mAuthIntent = authIntent;
         }
     }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import net.openid.appauth.connectivity.ConnectionBuilder;
+import net.openid.appauth.connectivity.DefaultConnectionBuilder;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ConnectionBuilder} that applies a connect and read timeout policy on top of another
+ * ConnectionBuilder. By default it delegates to AppAuth's {@link DefaultConnectionBuilder}; pass
+ * your own delegate to reuse a custom socket factory or connection pool.
+ *
+ * @see OktaAppAuth#setConnectionBuilder(ConnectionBuilder)
+ */
+public class OktaConnectionBuilder implements ConnectionBuilder {
+
+    private static final int UNSET = -1;
+
+    private final ConnectionBuilder mDelegate;
+    private final int mConnectTimeoutMs;
+    private final int mReadTimeoutMs;
+
+    private OktaConnectionBuilder(ConnectionBuilder delegate,
+                                  int connectTimeoutMs,
+                                  int readTimeoutMs) {
+        this.mDelegate = delegate;
+        this.mConnectTimeoutMs = connectTimeoutMs;
+        this.mReadTimeoutMs = readTimeoutMs;
+    }
+
+    @NonNull
+    @Override
+    public HttpURLConnection openConnection(@NonNull Uri uri) throws IOException {
+        HttpURLConnection conn = mDelegate.openConnection(uri);
+        if (mConnectTimeoutMs != UNSET) {
+            conn.setConnectTimeout(mConnectTimeoutMs);
+        }
+        if (mReadTimeoutMs != UNSET) {
+            conn.setReadTimeout(mReadTimeoutMs);
+        }
+        return conn;
+    }
+
+    /**
+     * Creates instances of {@link OktaConnectionBuilder}.
+     */
+    public static class Builder {
+
+        private ConnectionBuilder mDelegate = DefaultConnectionBuilder.INSTANCE;
+        private int mConnectTimeoutMs = UNSET;
+        private int mReadTimeoutMs = UNSET;
+
+        /**
+         * Specifies the ConnectionBuilder that opens the connections. Defaults to
+         * {@link DefaultConnectionBuilder#INSTANCE}.
+         *
+         * @param delegate the ConnectionBuilder to delegate to
+         * @return current Builder
+         */
+        public Builder setDelegate(@NonNull ConnectionBuilder delegate) {
+            this.mDelegate = delegate;
+            return this;
+        }
+
+        /**
+         * Specifies the connect timeout. If not set, the delegate's timeout is kept.
+         *
+         * @param timeout the timeout, zero meaning no timeout
+         * @param unit    the unit of the timeout
+         * @return current Builder
+         */
+        public Builder setConnectTimeout(long timeout, @NonNull TimeUnit unit) {
+            this.mConnectTimeoutMs = toMillis(timeout, unit);
+            return this;
+        }
+
+        /**
+         * Specifies the read timeout. If not set, the delegate's timeout is kept.
+         *
+         * @param timeout the timeout, zero meaning no timeout
+         * @param unit    the unit of the timeout
+         * @return current Builder
+         */
+        public Builder setReadTimeout(long timeout, @NonNull TimeUnit unit) {
+            this.mReadTimeoutMs = toMillis(timeout, unit);
+            return this;
+        }
+
+        /**
+         * Constructs a new instance of {@link OktaConnectionBuilder}.
+         *
+         * @return constructed connection builder
+         */
+        public OktaConnectionBuilder build() {
+            return new OktaConnectionBuilder(mDelegate, mConnectTimeoutMs, mReadTimeoutMs);
+        }
+
+        private static int toMillis(long timeout, TimeUnit unit) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout must not be negative");
+            }
+            long millis = unit.toMillis(timeout);
+            return millis > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) millis;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.openid.appauth.AuthorizationException;
+
+/**
+ * <p>
+ * Receives timing and outcome events for the operations of the SDK, for metrics and tracing.
+ * Register an implementation with {@link OktaAppAuth#setEventListener(OktaEventListener)} and
+ * override the methods of interest; all methods do nothing by default.
+ * </p>
+ * <p>
+ * Events are delivered synchronously, on whichever thread performs the operation, including
+ * the main thread. Implementations must be thread safe and return quickly, for example by
+ * updating counters or handing the event to a background queue. Exceptions thrown by a
+ * listener are logged and otherwise ignored.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class OktaEventListener {
+
+    /**
+     * A listener that ignores all events. This is the default.
+     */
+    public static final OktaEventListener NONE = new OktaEventListener() {
+    };
+
+    /**
+     * The operations that events are reported for.
+     */
+    public enum Stage {
+        /** {@link OktaAppAuth#init}, up to the call to its listener. */
+        INIT,
+        /** Fetching the OpenID Connect discovery document. */
+        DISCOVERY,
+        /** Preparing and launching the browser for {@link OktaAppAuth#login}. */
+        LOGIN,
+        /** Exchanging an authorization code for tokens. */
+        CODE_EXCHANGE,
+        /**
+         * A refresh token request, made by {@link OktaAppAuth#refreshAccessToken} or for an
+         * authorized request with an expired access token. Callers that share a refresh in
+         * flight are reported once.
+         */
+        REFRESH,
+        /** {@link OktaAppAuth#getUserInfo}. */
+        USER_INFO,
+        /** Revoking a token. */
+        REVOKE,
+        /** Reading the stored auth state. */
+        READ_STATE,
+        /** Storing the auth state. */
+        WRITE_STATE,
+        /** {@link OktaAppAuth#performAuthorizedRequest}, up to the response status. */
+        AUTHORIZED_REQUEST,
+        /** Minting an access token for a narrower scope set. */
+        SCOPED_TOKEN,
+        /** Fetching the issuer's signing keys to verify ID tokens. */
+        SIGNING_KEYS
+    }
+
+    /**
+     * Called when an operation starts.
+     *
+     * @param stage the operation
+     */
+    @AnyThread
+    public void onStart(@NonNull Stage stage) {
+    }
+
+    /**
+     * Called when an operation completes, successfully or not.
+     *
+     * @param stage         the operation
+     * @param durationNanos the time since the matching {@link #onStart(Stage)}
+     * @param byteCount     the size of the response read, or of the state written, in bytes;
+     *                      {@code -1} if unknown
+     * @param error         the reason the operation failed, or {@code null} on success. Most
+     *                      failures are an {@link AuthorizationException}, whose {@code type}
+     *                      and {@code code} identify the error
+     */
+    @AnyThread
+    public void onEnd(
+            @NonNull Stage stage,
+            long durationNanos,
+            long byteCount,
+            @Nullable Exception error) {
+    }
+
+    /**
+     * Called when an operation could be served from a cache, or could not.
+     *
+     * @param stage the operation
+     * @param hit   {@code true} if the cached value was used
+     */
+    @AnyThread
+    public void onCacheResult(@NonNull Stage stage, boolean hit) {
+    }
+
+    /**
+     * Called when the {@link CircuitBreaker} of a host opens, lets a probe request through or
+     * closes again.
+     *
+     * @param host         the host of the breaker
+     * @param state        the new state
+     * @param retryDelayMs when the breaker opened, how long requests will fail fast for;
+     *                     {@code 0} otherwise
+     */
+    @AnyThread
+    public void onCircuitStateChanged(
+            @NonNull String host,
+            @NonNull CircuitBreaker.State state,
+            long retryDelayMs) {
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * <p>
+ * Receives the log messages of the SDK. Register an implementation with
+ * {@link OktaAppAuth#setLogger(OktaLogger)} to route them into the app's own logging, and
+ * choose which messages are produced with {@link OktaAppAuth#setLogLevel(int)}.
+ * </p>
+ * <p>
+ * Messages are delivered synchronously, on whichever thread logs them, including the main
+ * thread. Implementations must be thread safe and return quickly. Messages below the log level
+ * are never formatted, so they cost nothing.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class OktaLogger {
+
+    /**
+     * A logger that writes to logcat through {@link Log}. This is the default.
+     */
+    public static final OktaLogger LOGCAT = new OktaLogger() {
+        @Override
+        public void log(
+                int priority,
+                @NonNull String tag,
+                @NonNull String message,
+                @Nullable Throwable tr) {
+            if (tr != null) {
+                message = message + '\n' + Log.getStackTraceString(tr);
+            }
+            Log.println(priority, tag, message);
+        }
+    };
+
+    /**
+     * A logger that discards all messages.
+     */
+    public static final OktaLogger NONE = new OktaLogger() {
+        @Override
+        public void log(
+                int priority,
+                @NonNull String tag,
+                @NonNull String message,
+                @Nullable Throwable tr) {
+        }
+    };
+
+    /**
+     * Called for each message at or above the log level.
+     *
+     * @param priority the priority of the message, one of the {@link Log} constants such as
+     *                 {@link Log#DEBUG} or {@link Log#WARN}
+     * @param tag      identifies the component of the SDK that logged the message
+     * @param message  the formatted message
+     * @param tr       the exception to log with the message, or {@code null}
+     */
+    @AnyThread
+    public abstract void log(
+            int priority,
+            @NonNull String tag,
+            @NonNull String message,
+            @Nullable Throwable tr);
+}
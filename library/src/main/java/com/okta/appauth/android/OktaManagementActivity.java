@@ -19,14 +19,16 @@ import android.app.Activity;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.support.annotation.AnyThread;
 import android.support.annotation.MainThread;
 import android.support.annotation.Nullable;
+import android.support.annotation.RawRes;
 import android.support.annotation.VisibleForTesting;
-import android.support.annotation.WorkerThread;
-import android.util.Log;
 
-import net.openid.appauth.AppAuthConfiguration;
+import com.okta.appauth.android.OktaEventListener.Stage;
+
 import net.openid.appauth.AuthState;
 import net.openid.appauth.AuthorizationException;
 import net.openid.appauth.AuthorizationManagementResponse;
@@ -49,6 +51,10 @@ public class OktaManagementActivity extends Activity {
     static final String KEY_COMPLETE_INTENT = "completeIntent";
     @VisibleForTesting
     static final String KEY_CANCEL_INTENT = "cancelIntent";
+    @VisibleForTesting
+    static final String KEY_ACCOUNT_ID = "accountId";
+    @VisibleForTesting
+    static final String KEY_CONFIG_RES_ID = "configResId";
 
     private AuthorizationService mAuthService;
     private AuthStateManager mStateManager;
@@ -57,6 +63,10 @@ public class OktaManagementActivity extends Activity {
     PendingIntent mCompleteIntent;
     @VisibleForTesting
     PendingIntent mCancelIntent;
+    @VisibleForTesting
+    String mAccountId;
+    @VisibleForTesting
+    int mConfigResId = R.raw.okta_app_auth_config;
 
     /**
      * Creates an Intent to drive the token exchange to this Activity. Takes two PendingIntents as
@@ -66,40 +76,47 @@ public class OktaManagementActivity extends Activity {
      * @param completeIntent The PendingIntent to direct the flow once the token exchange completes
      * @param cancelIntent The PendingIntent to direct the flow if the authentication is cancelled
      *     or if the authorization fails
+     * @param accountId The account the flow belongs to, or {@code null} for the default account
+     * @param configResId The raw resource with the account's configuration, so the account can be
+     *     restored if the process was killed while the browser was shown
      * @return A PendingIntent that will start this Activity
      */
     static PendingIntent createStartIntent(
             Context context,
             PendingIntent completeIntent,
-            PendingIntent cancelIntent) {
+            PendingIntent cancelIntent,
+            @Nullable String accountId,
+            @RawRes int configResId) {
         Intent tokenExchangeIntent = new Intent(context, OktaManagementActivity.class);
         tokenExchangeIntent.putExtra(KEY_COMPLETE_INTENT, completeIntent);
         tokenExchangeIntent.putExtra(KEY_CANCEL_INTENT, cancelIntent);
-        return PendingIntent.getActivity(context, 0, tokenExchangeIntent, 0);
+        tokenExchangeIntent.putExtra(KEY_ACCOUNT_ID, accountId);
+        tokenExchangeIntent.putExtra(KEY_CONFIG_RES_ID, configResId);
+        // extras don't tell PendingIntents apart, so each account gets its own request code
+        int requestCode = accountId == null ? 0 : accountId.hashCode();
+        return PendingIntent.getActivity(context, requestCode, tokenExchangeIntent, 0);
     }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mStateManager = AuthStateManager.getInstance(this);
-
-        mAuthService = new AuthorizationService(
-                this,
-                new AppAuthConfiguration.Builder()
-                        .build());
-
         if (savedInstanceState == null) {
             extractState(getIntent().getExtras());
         } else {
             extractState(savedInstanceState);
         }
+
+        mStateManager = AuthStateManager.getInstance(this, mAccountId);
+
+        mAuthService = SharedAuthorizationService.acquire(this);
     }
 
     @Override
     protected void onStart() {
         super.onStart();
-        OAuthClientConfiguration config = OAuthClientConfiguration.getInstance(this);
+        OAuthClientConfiguration config =
+                OAuthClientConfiguration.getInstance(this, mAccountId, mConfigResId);
         if (config.hasConfigurationChanged()) {
             signOut();
             return;
@@ -111,7 +128,7 @@ public class OktaManagementActivity extends Activity {
         AuthorizationException ex = AuthorizationException.fromIntent(getIntent());
 
         if (ex != null || response == null) {
-            Log.w(TAG, "Authorization flow failed: " + ex);
+            AuthLog.w(TAG, "Authorization flow failed", ex);
             sendPendingIntent(mCancelIntent);
         } else if (isLoginFlow(response)) {
             runLoginFlow((AuthorizationResponse) response, ex);
@@ -152,12 +169,15 @@ public class OktaManagementActivity extends Activity {
     protected void onSaveInstanceState(Bundle state) {
         state.putParcelable(KEY_COMPLETE_INTENT, mCompleteIntent);
         state.putParcelable(KEY_CANCEL_INTENT, mCancelIntent);
+        state.putString(KEY_ACCOUNT_ID, mAccountId);
+        state.putInt(KEY_CONFIG_RES_ID, mConfigResId);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mAuthService.dispose();
+        SharedAuthorizationService.release(mAuthService);
+        mAuthService = null;
     }
 
     @MainThread
@@ -176,39 +196,56 @@ public class OktaManagementActivity extends Activity {
 
     @MainThread
     private void exchangeAuthorizationCode(AuthorizationResponse authorizationResponse) {
-        Log.d(TAG, "Exchanging authorization code");
+        AuthLog.d(TAG, "Exchanging authorization code");
 
         ClientAuthentication clientAuthentication;
         try {
             clientAuthentication = mStateManager.getCurrent().getClientAuthentication();
         } catch (ClientAuthentication.UnsupportedAuthenticationMethod ex) {
-            Log.w(TAG, "Token request cannot be made, client authentication for the token "
-                    + "endpoint could not be constructed (%s)", ex);
+            AuthLog.w(TAG, "Token request cannot be made, client authentication for the token "
+                    + "endpoint could not be constructed", ex);
             return;
         }
 
+        final long start = AuthEvents.start(Stage.CODE_EXCHANGE);
         mAuthService.performTokenRequest(
                 authorizationResponse.createTokenExchangeRequest(),
                 clientAuthentication,
                 new AuthorizationService.TokenResponseCallback() {
                     @Override
-                    public void onTokenRequestCompleted(@Nullable TokenResponse response,
-                            @Nullable AuthorizationException ex) {
-                        handleCodeExchangeResponse(response, ex);
+                    public void onTokenRequestCompleted(@Nullable final TokenResponse response,
+                            @Nullable final AuthorizationException ex) {
+                        if (!mStateManager.isIdTokenVerificationEnabled()) {
+                            handleCodeExchangeResponse(response, ex, start);
+                            return;
+                        }
+                        // verifying the ID token may need the network
+                        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                handleCodeExchangeResponse(response, ex, start);
+                            }
+                        });
                     }
                 });
     }
 
-    @WorkerThread
+    @AnyThread
     private void handleCodeExchangeResponse(
             @Nullable TokenResponse tokenResponse,
-            @Nullable AuthorizationException authException) {
-
-        mStateManager.updateAfterTokenResponse(tokenResponse, authException);
-        if (!mStateManager.getCurrent().isAuthorized()) {
+            @Nullable AuthorizationException authException,
+            long start) {
+
+        AuthorizationException error = authException != null
+                ? authException
+                : mStateManager.verifyIdToken(tokenResponse);
+        mStateManager.updateAfterVerifiedTokenResponse(
+                error == null ? tokenResponse : null, error, null);
+        AuthEvents.end(Stage.CODE_EXCHANGE, start, -1, error);
+        if (error != null || !mStateManager.getCurrent().isAuthorized()) {
             final String message = "Authorization Code exchange failed"
-                    + ((authException != null) ? authException.error : "");
-            Log.e(TAG, message);
+                    + ((error != null) ? error.error : "");
+            AuthLog.e(TAG, message);
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
@@ -234,13 +271,15 @@ public class OktaManagementActivity extends Activity {
         }
         mCompleteIntent = state.getParcelable(KEY_COMPLETE_INTENT);
         mCancelIntent = state.getParcelable(KEY_CANCEL_INTENT);
+        mAccountId = state.getString(KEY_ACCOUNT_ID);
+        mConfigResId = state.getInt(KEY_CONFIG_RES_ID, R.raw.okta_app_auth_config);
     }
 
     private void sendPendingIntent(PendingIntent pendingIntent) {
         try {
             pendingIntent.send();
         } catch (PendingIntent.CanceledException e) {
-            Log.e(TAG, "Unable to send intent", e);
+            AuthLog.e(TAG, "Unable to send intent", e);
         }
         finish();
     }
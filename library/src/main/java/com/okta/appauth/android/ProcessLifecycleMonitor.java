@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.AnyThread;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tells when the app as a whole moves to the background (no activity of it is started any more)
+ * and back to the foreground, by counting the activities started in the process. An activity
+ * stopped only to be recreated for a configuration change does not count as going to the
+ * background.
+ * <p/>
+ * The monitor is registered on first use, possibly after some activities have started. Only the
+ * activities it has seen start are counted, so stopping one of the earlier ones does not send
+ * the app to the background while it may still be visible.
+ */
+final class ProcessLifecycleMonitor implements Application.ActivityLifecycleCallbacks {
+
+    private static final String TAG = "OktaProcessLifecycle";
+
+    /**
+     * Called on the main thread when the app changes between foreground and background.
+     */
+    interface Listener {
+        @MainThread
+        void onForeground();
+
+        @MainThread
+        void onBackground();
+    }
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    // only touched on the main thread
+    private final Set<Activity> mStartedActivities =
+            Collections.newSetFromMap(new WeakHashMap<Activity, Boolean>());
+    private boolean mInBackground;
+
+    @VisibleForTesting
+    ProcessLifecycleMonitor() {
+    }
+
+    /**
+     * Returns the process wide monitor, registering it with the application on first use.
+     *
+     * @param context Any Context; the monitor is registered with its application Context
+     * @return the monitor
+     */
+    @AnyThread
+    @NonNull
+    static ProcessLifecycleMonitor getInstance(@NonNull final Context context) {
+        return InstanceRegistry.getOrCreate(
+                ProcessLifecycleMonitor.class,
+                new InstanceRegistry.Factory<ProcessLifecycleMonitor>() {
+                    @NonNull
+                    @Override
+                    public ProcessLifecycleMonitor create() {
+                        ProcessLifecycleMonitor monitor = new ProcessLifecycleMonitor();
+                        Context app = context.getApplicationContext();
+                        if (app instanceof Application) {
+                            ((Application) app).registerActivityLifecycleCallbacks(monitor);
+                        } else {
+                            AuthLog.w(TAG, "No Application to observe, lifecycle is not tracked");
+                        }
+                        return monitor;
+                    }
+                });
+    }
+
+    @AnyThread
+    void addListener(@NonNull Listener listener) {
+        mListeners.add(listener);
+    }
+
+    @MainThread
+    boolean isInBackground() {
+        return mInBackground;
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        if (mStartedActivities.add(activity) && mStartedActivities.size() == 1
+                && mInBackground) {
+            mInBackground = false;
+            AuthLog.d(TAG, "App moved to the foreground");
+            for (Listener listener : mListeners) {
+                listener.onForeground();
+            }
+        }
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        if (!mStartedActivities.remove(activity)) {
+            // started before the monitor was registered
+            return;
+        }
+        if (mStartedActivities.isEmpty() && !mInBackground
+                && !activity.isChangingConfigurations()) {
+            mInBackground = true;
+            AuthLog.d(TAG, "App moved to the background");
+            for (Listener listener : mListeners) {
+                listener.onBackground();
+            }
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        // not needed
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+        // not needed
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+        // not needed
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        // not needed
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        // not needed
+    }
+}
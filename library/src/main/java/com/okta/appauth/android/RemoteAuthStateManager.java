@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.TokenResponse;
+import org.json.JSONException;
+
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link AuthStateManager} for processes that don't own the auth state. Reads and writes go
+ * to the {@link AuthStateProvider} in the owning process, and the cached state is dropped
+ * whenever the provider reports a change.
+ */
+class RemoteAuthStateManager extends AuthStateManager {
+
+    private static final String TAG = "OktaRemoteAuthState";
+
+    private final ContentResolver mResolver;
+    private final Uri mUri;
+
+    // held here, as the resolver only keeps a weak reference to its observers
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    };
+
+    RemoteAuthStateManager(@NonNull Context context) {
+        super(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                new ReentrantLock());
+        mResolver = context.getContentResolver();
+        mUri = AuthStateProvider.getUri(context);
+        mResolver.registerContentObserver(mUri, false, mObserver);
+    }
+
+    @NonNull
+    @Override
+    AuthState readState() {
+        Bundle result = call(AuthStateProvider.METHOD_GET, null);
+        return deserialize(result.getString(AuthStateProvider.KEY_STATE));
+    }
+
+    @Override
+    void writeState(@Nullable AuthState state) {
+        call(AuthStateProvider.METHOD_REPLACE,
+                (state != null ? state : new AuthState()).jsonSerializeString());
+    }
+
+    /**
+     * Asks the owning process to refresh the tokens, and picks up the result.
+     *
+     * @return {@code null} on success, the reason for the failure otherwise
+     */
+    @WorkerThread
+    @Nullable
+    AuthorizationException requestRefresh() {
+        Bundle result = call(
+                AuthStateProvider.METHOD_REFRESH, getCurrent().getAccessToken());
+        replaceCached(deserialize(result.getString(AuthStateProvider.KEY_STATE)));
+
+        return readError(result);
+    }
+
+    /**
+     * Asks the owning process to mint an access token for the scopes, as only that process may
+     * spend the refresh token.
+     *
+     * @param scopes   The scopes the access token should be limited to
+     * @param callback Called with the token response, or the reason for the failure
+     */
+    @WorkerThread
+    void requestScopedToken(
+            @NonNull Set<String> scopes,
+            @NonNull ScopedTokenCache.FetchCallback callback) {
+        Bundle result = call(
+                AuthStateProvider.METHOD_MINT_SCOPED_TOKEN, TextUtils.join(" ", scopes));
+        AuthorizationException error = readError(result);
+        String response = result.getString(AuthStateProvider.KEY_TOKEN_RESPONSE);
+        if (error != null || response == null) {
+            callback.onComplete(null, error != null
+                    ? error : AuthorizationException.GeneralErrors.SERVER_ERROR);
+            return;
+        }
+        try {
+            callback.onComplete(TokenResponse.jsonDeserialize(response), null);
+        } catch (JSONException ex) {
+            callback.onComplete(null, AuthorizationException.GeneralErrors.SERVER_ERROR);
+        }
+    }
+
+    @Nullable
+    private static AuthorizationException readError(Bundle result) {
+        String error = result.getString(AuthStateProvider.KEY_ERROR);
+        if (error == null) {
+            return null;
+        }
+        try {
+            return AuthorizationException.fromJson(error);
+        } catch (JSONException ex) {
+            return AuthorizationException.GeneralErrors.SERVER_ERROR;
+        }
+    }
+
+    @AnyThread
+    private Bundle call(String method, @Nullable String arg) {
+        Bundle result = mResolver.call(mUri, method, arg, null);
+        if (result == null) {
+            throw new IllegalStateException("AuthStateProvider is not available");
+        }
+        return result;
+    }
+
+    private static AuthState deserialize(@Nullable String state) {
+        if (state == null) {
+            return new AuthState();
+        }
+        try {
+            return AuthState.jsonDeserialize(state);
+        } catch (JSONException ex) {
+            AuthLog.w(TAG, "Failed to deserialize shared auth state - discarding");
+            return new AuthState();
+        }
+    }
+}
@@ -19,7 +19,6 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 import android.support.annotation.WorkerThread;
-import android.util.Log;
 import net.openid.appauth.AuthorizationException;
 import okio.ByteString;
 import org.json.JSONException;
@@ -98,7 +97,7 @@ class RevokeTokenRequest {
             try {
                 resultUrlBuilder = new StringBuilder(mServiceConfig.getString(REVOKE_ENDPOINT_KEY));
             } catch (JSONException e) {
-                Log.e(TAG, "build: ", e);
+                AuthLog.e(TAG, "build: ", e);
                 return null;
             }
             resultUrlBuilder.append("?");
@@ -114,7 +113,7 @@ class RevokeTokenRequest {
             try {
                 url = new URL(ByteString.encodeUtf8(resultUrlBuilder.toString()).utf8());
             } catch (MalformedURLException e) {
-                Log.e(TAG, "build: ", e);
+                AuthLog.e(TAG, "build: ", e);
                 return null;
             }
 
@@ -131,7 +130,8 @@ class RevokeTokenRequest {
     void performRequest(@NonNull RevokeListener callback) {
 
         try {
-            HttpURLConnection urlConnection = (HttpURLConnection) mRevokeUrl.openConnection();
+            HttpURLConnection urlConnection = CircuitBreakerConnection.wrap(
+                    (HttpURLConnection) mRevokeUrl.openConnection());
             urlConnection.setDoOutput(true);
             urlConnection.setInstanceFollowRedirects(false);
             urlConnection.setChunkedStreamingMode(0);
@@ -149,9 +149,13 @@ class RevokeTokenRequest {
                 callback.onError(AuthorizationException.TokenRequestErrors.OTHER);
             }
 
-            Log.d(TAG, "performRequest: responseCode " + urlConnection.getResponseCode());
+            AuthLog.d(TAG, "performRequest: responseCode %s", responseCode);
+        } catch (CircuitOpenException e) {
+            AuthLog.w(TAG, "performRequest: %s", e.getMessage());
+            callback.onError(AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.NETWORK_ERROR, e));
         } catch (IOException e) {
-            Log.e(TAG, "performRequest: ", e);
+            AuthLog.e(TAG, "performRequest: ", e);
             callback.onError(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
         }
     }
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.okta.appauth.android.OktaEventListener.Stage;
+
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.TokenResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access tokens for narrower scope sets than the configured one, minted with the refresh token.
+ * Tokens are kept per scope set until shortly before they expire, and concurrent requests for
+ * the same scope set share a single token request.
+ */
+final class ScopedTokenCache {
+
+    @VisibleForTesting
+    static final int DEFAULT_MAX_SIZE = 8;
+
+    // tokens are only handed out if they stay valid a little longer, as AppAuth does
+    @VisibleForTesting
+    static final long EXPIRY_MARGIN_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Requests a new access token for a scope set.
+     */
+    interface TokenFetcher {
+
+        /**
+         * Starts the token request. The callback may be called on any thread.
+         *
+         * @param scopes   the scopes of the token
+         * @param callback receives the result
+         */
+        @AnyThread
+        void fetch(@NonNull Set<String> scopes, @NonNull FetchCallback callback);
+    }
+
+    /**
+     * The result of a {@link TokenFetcher} request.
+     */
+    interface FetchCallback {
+
+        /**
+         * Called once the token request completes.
+         *
+         * @param response the token response, if successful
+         * @param ex       the reason for the failure otherwise
+         */
+        void onComplete(@Nullable TokenResponse response, @Nullable AuthorizationException ex);
+    }
+
+    /**
+     * Receives a cached or newly minted access token.
+     */
+    interface Callback {
+
+        /**
+         * Called with the access token, or the reason it couldn't be obtained.
+         *
+         * @param accessToken the access token, if successful
+         * @param ex          the reason for the failure otherwise
+         */
+        void onComplete(@Nullable String accessToken, @Nullable AuthorizationException ex);
+    }
+
+    private final Object mLock = new Object();
+    private final LruCache<String, Entry> mTokens;
+    private final Map<String, List<Callback>> mInFlight = new HashMap<>();
+    private final TokenFetcher mFetcher;
+
+    // bumped by clear(), so that tokens requested before are not cached
+    private int mGeneration;
+
+    ScopedTokenCache(int maxSize, @NonNull TokenFetcher fetcher) {
+        mTokens = new LruCache<>(maxSize);
+        mFetcher = fetcher;
+    }
+
+    /**
+     * Provides an access token for a scope set, from the cache if there is one that is still
+     * valid. Otherwise a token is requested, unless a request for the same scope set is already
+     * in flight, in which case the callback receives the result of that request.
+     *
+     * @param scopes   the scopes of the token
+     * @param callback receives the token; called synchronously for cached tokens
+     */
+    @AnyThread
+    void getAccessToken(@NonNull Set<String> scopes, @NonNull Callback callback) {
+        if (scopes.isEmpty()) {
+            throw new IllegalArgumentException("scopes must not be empty");
+        }
+        final String key = key(scopes);
+        final List<Callback> waiting;
+        final int generation;
+        String accessToken = null;
+        synchronized (mLock) {
+            Entry entry = mTokens.get(key);
+            if (entry != null && entry.isValid()) {
+                accessToken = entry.mAccessToken;
+                waiting = null;
+            } else {
+                if (entry != null) {
+                    mTokens.remove(key);
+                }
+                List<Callback> inFlight = mInFlight.get(key);
+                if (inFlight != null) {
+                    // a miss, as the caller has to wait for the request
+                    inFlight.add(callback);
+                    AuthEvents.cacheResult(Stage.SCOPED_TOKEN, false);
+                    return;
+                }
+                waiting = new ArrayList<>();
+                waiting.add(callback);
+                mInFlight.put(key, waiting);
+            }
+            generation = mGeneration;
+        }
+
+        AuthEvents.cacheResult(Stage.SCOPED_TOKEN, waiting == null);
+        if (waiting == null) {
+            callback.onComplete(accessToken, null);
+            return;
+        }
+        final long start = AuthEvents.start(Stage.SCOPED_TOKEN);
+        mFetcher.fetch(scopes, new FetchCallback() {
+            @Override
+            public void onComplete(
+                    @Nullable TokenResponse response,
+                    @Nullable AuthorizationException ex) {
+                AuthEvents.end(Stage.SCOPED_TOKEN, start, -1, ex);
+                complete(key, generation, waiting, response, ex);
+            }
+        });
+    }
+
+    /**
+     * Drops all tokens, and keeps tokens that are currently being requested from being cached.
+     * Called when the session they were minted for ends.
+     */
+    @AnyThread
+    void clear() {
+        synchronized (mLock) {
+            mGeneration++;
+            mTokens.evictAll();
+            // requests in flight still complete for their callers, but new callers don't join
+            mInFlight.clear();
+        }
+    }
+
+    private void complete(
+            String key,
+            int generation,
+            List<Callback> waiting,
+            @Nullable TokenResponse response,
+            @Nullable AuthorizationException ex) {
+        if (ex == null && (response == null || response.accessToken == null)) {
+            ex = AuthorizationException.TokenRequestErrors.OTHER;
+        }
+        String accessToken = ex == null ? response.accessToken : null;
+
+        List<Callback> callbacks;
+        synchronized (mLock) {
+            if (mInFlight.get(key) == waiting) {
+                mInFlight.remove(key);
+            }
+            Long expiresAt = accessToken != null ? expirationTime(response) : null;
+            if (generation == mGeneration && expiresAt != null) {
+                mTokens.put(key, new Entry(accessToken, expiresAt));
+            }
+            callbacks = new ArrayList<>(waiting);
+        }
+        for (Callback callback : callbacks) {
+            callback.onComplete(accessToken, ex);
+        }
+    }
+
+    @Nullable
+    private static Long expirationTime(TokenResponse response) {
+        // a JWT's own expiry is not affected by a wrong device clock
+        TokenClaims claims = TokenClaims.forToken(response.accessToken);
+        Long serverExpirationTime = claims != null ? claims.getExpirationTime() : null;
+        if (serverExpirationTime != null) {
+            return ServerClock.toDeviceTime(
+                    ServerClock.hostOf(claims.getIssuer()), serverExpirationTime);
+        }
+        return response.accessTokenExpirationTime;
+    }
+
+    private static String key(Set<String> scopes) {
+        return TextUtils.join(" ", new TreeSet<>(scopes));
+    }
+
+    private static final class Entry {
+        final String mAccessToken;
+        final long mExpiresAt;
+
+        Entry(String accessToken, long expiresAt) {
+            mAccessToken = accessToken;
+            mExpiresAt = expiresAt;
+        }
+
+        boolean isValid() {
+            return System.currentTimeMillis() + EXPIRY_MARGIN_MS < mExpiresAt;
+        }
+    }
+}
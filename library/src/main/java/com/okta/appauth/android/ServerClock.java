@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates how far the device clock is from each issuer's clock, using the {@code Date} header of
+ * responses from the issuer and the {@code iat} claim of freshly issued ID tokens. Responses are
+ * sampled by {@link CircuitBreakerConnection}, so every request made through the guarded
+ * ConnectionBuilder counts, including the token requests AppAuth sends. Expiry times
+ * issued by a server (such as the {@code exp} claim of a JWT) are compared against that server's
+ * clock rather than the device clock. Accounts may use different issuers, so an offset is kept
+ * per issuer host and a server's samples never move another server's estimate.
+ */
+final class ServerClock {
+
+    private static final String TAG = "OktaServerClock";
+
+    /*
+     * Date headers have a resolution of one second and the request latency adds to that, so
+     * offsets below this are treated as noise.
+     */
+    @VisibleForTesting
+    static final long MIN_SKEW_MS = TimeUnit.SECONDS.toMillis(2);
+
+    // each new sample moves the estimate a quarter of the way, so one slow response can't skew it
+    private static final int SMOOTHING_FACTOR = 4;
+
+    private static final Object LOCK = new Object();
+
+    // by lower case host, guarded by LOCK
+    private static final Map<String, Estimate> ESTIMATES = new HashMap<>();
+
+    private static final class Estimate {
+        long mEstimatedOffsetMs;
+        long mOffsetMs;
+
+        Estimate(long offsetMs) {
+            mEstimatedOffsetMs = offsetMs;
+        }
+    }
+
+    private ServerClock() {
+        throw new AssertionError("no instances");
+    }
+
+    /**
+     * Records the {@code Date} header of a response from an issuer. Must only be called once
+     * the response has been received. Connections guarded by a {@link CircuitBreakerConnection}
+     * are sampled when their response is reported, so this must not be called for them as well.
+     *
+     * @param conn A connection to the issuer
+     */
+    @AnyThread
+    static void onResponse(@NonNull HttpURLConnection conn) {
+        long serverTime = conn.getHeaderFieldDate("Date", 0);
+        if (serverTime > 0) {
+            addSample(conn.getURL().getHost(), serverTime - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Records the issue time of an ID token that was just received, against the clock of the
+     * issuer named in its {@code iss} claim.
+     *
+     * @param idToken The encoded ID token, may be {@code null}
+     */
+    @AnyThread
+    static void onIdTokenIssued(@Nullable String idToken) {
+        TokenClaims claims = TokenClaims.forToken(idToken);
+        Long issuedAt = claims != null ? claims.getLong("iat") : null;
+        String host = claims != null ? hostOf(claims.getIssuer()) : null;
+        if (issuedAt != null && host != null) {
+            addSample(host, TimeUnit.SECONDS.toMillis(issuedAt) - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * The host of an issuer, as the clocks are keyed.
+     *
+     * @param issuer The issuer URL, such as the {@code iss} claim of a token, may be {@code null}
+     * @return the host, or {@code null} if there is none
+     */
+    @AnyThread
+    @Nullable
+    static String hostOf(@Nullable String issuer) {
+        return issuer != null ? Uri.parse(issuer).getHost() : null;
+    }
+
+    @VisibleForTesting
+    static void addSample(@Nullable String host, long offsetMs) {
+        if (host == null) {
+            return;
+        }
+        String key = host.toLowerCase(Locale.US);
+        synchronized (LOCK) {
+            Estimate estimate = ESTIMATES.get(key);
+            if (estimate == null) {
+                estimate = new Estimate(offsetMs);
+                ESTIMATES.put(key, estimate);
+            } else {
+                estimate.mEstimatedOffsetMs +=
+                        (offsetMs - estimate.mEstimatedOffsetMs) / SMOOTHING_FACTOR;
+            }
+
+            long applied = Math.abs(estimate.mEstimatedOffsetMs) < MIN_SKEW_MS
+                    ? 0 : estimate.mEstimatedOffsetMs;
+            if (applied != estimate.mOffsetMs) {
+                AuthLog.i(TAG, "Server clock offset is now %s", applied + "ms for " + key);
+                estimate.mOffsetMs = applied;
+            }
+        }
+    }
+
+    /**
+     * The estimated offset of a server's clock from the device clock.
+     *
+     * @param host The server's host, may be {@code null}
+     * @return milliseconds to add to the device time to get the server time; {@code 0} for a
+     *     server that no sample was recorded for
+     */
+    @AnyThread
+    static long getOffsetMillis(@Nullable String host) {
+        if (host == null) {
+            return 0;
+        }
+        synchronized (LOCK) {
+            Estimate estimate = ESTIMATES.get(host.toLowerCase(Locale.US));
+            return estimate != null ? estimate.mOffsetMs : 0;
+        }
+    }
+
+    /**
+     * The current time on a server, as milliseconds from the UNIX epoch.
+     *
+     * @param host The server's host, may be {@code null}
+     * @return the estimated server time
+     */
+    @AnyThread
+    static long currentTimeMillis(@Nullable String host) {
+        return System.currentTimeMillis() + getOffsetMillis(host);
+    }
+
+    /**
+     * Converts a time issued by a server to the device clock, so that it can be compared with
+     * {@link System#currentTimeMillis()}.
+     *
+     * @param host         The server's host, may be {@code null}
+     * @param serverTimeMs a time on the server clock
+     * @return the same instant on the device clock
+     */
+    @AnyThread
+    static long toDeviceTime(@Nullable String host, long serverTimeMs) {
+        return serverTimeMs - getOffsetMillis(host);
+    }
+
+    @VisibleForTesting
+    static void reset() {
+        synchronized (LOCK) {
+            ESTIMATES.clear();
+        }
+    }
+}
@@ -20,17 +20,20 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
+import com.okta.appauth.android.OktaEventListener.Stage;
+
 import net.openid.appauth.AuthorizationException;
 import net.openid.appauth.AuthorizationRequest;
 import net.openid.appauth.AuthorizationResponse;
 import net.openid.appauth.AuthorizationService;
 import net.openid.appauth.ClientAuthentication;
 import net.openid.appauth.TokenResponse;
+import net.openid.appauth.connectivity.ConnectionBuilder;
+import net.openid.appauth.connectivity.DefaultConnectionBuilder;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -41,12 +44,25 @@ class SessionAuthenticationService {
 
     private AuthStateManager mStateManager;
     private AuthorizationService mAuthService;
+    private ConnectionBuilder mConnectionBuilder;
 
     SessionAuthenticationService(
             AuthStateManager manager,
             AuthorizationService authorizationService) {
+        this(manager, authorizationService, DefaultConnectionBuilder.INSTANCE);
+    }
+
+    /*
+     * The connection builder should be the same one the AuthorizationService was configured
+     * with, so that the authorize and token requests share a pooled keep-alive connection.
+     */
+    SessionAuthenticationService(
+            AuthStateManager manager,
+            AuthorizationService authorizationService,
+            ConnectionBuilder connectionBuilder) {
         mStateManager = manager;
         mAuthService = authorizationService;
+        mConnectionBuilder = connectionBuilder;
     }
 
     void performAuthorizationRequest(
@@ -73,7 +89,8 @@ class SessionAuthenticationService {
                 request.configuration,
                 request.clientId,
                 request.responseType,
-                request.redirectUri)
+                request.redirectUri);
+        AuthorizationParametersPool.getInstance().take().applyTo(authRequestBuilder)
                 .setNonce(request.nonce)
                 .setScopes(request.getScopeSet())
                 .setAdditionalParameters(additionalParameters);
@@ -106,12 +123,12 @@ class SessionAuthenticationService {
             final AuthorizationRequest request) {
         HttpURLConnection conn = null;
         try {
-            URL url = new URL(request.toUri().toString());
-            conn = (HttpURLConnection) url.openConnection();
+            conn = mConnectionBuilder.openConnection(request.toUri());
+            conn.setInstanceFollowRedirects(false);
 
+            String location = conn.getHeaderField("Location");
             if (conn.getResponseCode() != HttpURLConnection.HTTP_MOVED_TEMP ||
-                    (conn.getHeaderField("Location") == null ||
-                            conn.getHeaderField("Location").length() == 0)) {
+                    TextUtils.isEmpty(location)) {
                 AuthenticationError error = AuthenticationError.createAuthenticationError(
                         AuthenticationError.INVALID_AUTHORIZE_REQUEST, conn.getResponseCode());
                 mStateManager.updateAfterAuthorization(
@@ -121,7 +138,7 @@ class SessionAuthenticationService {
                 return new AuthenticationResult<AuthorizationResponse>(null, error);
             }
 
-            Uri locationUri = Uri.parse(conn.getHeaderField("Location"));
+            Uri locationUri = Uri.parse(location);
             String code = locationUri.getQueryParameter("code");
             String state = locationUri.getQueryParameter("state");
             if (TextUtils.isEmpty(code) || TextUtils.isEmpty(state)) {
@@ -160,9 +177,8 @@ class SessionAuthenticationService {
                     null,
                     AuthenticationError.createAuthenticationError(ex));
         } finally {
-            if (conn != null) {
-                conn.disconnect();
-            }
+            // keep the socket alive for the token request that follows
+            HttpConnections.release(conn);
         }
     }
 
@@ -170,9 +186,10 @@ class SessionAuthenticationService {
     private AuthenticationResult<TokenResponse> exchangeCodeForTokens(
             final AuthorizationResponse authorizationResponse) {
         final CountDownLatch countDownLatch = new CountDownLatch(1);
-        final AtomicReference<AuthenticationResult> result =
-                new AtomicReference<AuthenticationResult>(null);
+        final AtomicReference<TokenResponse> tokenResponse = new AtomicReference<>();
+        final AtomicReference<AuthorizationException> tokenException = new AtomicReference<>();
 
+        long start = AuthEvents.start(Stage.CODE_EXCHANGE);
         try {
             ClientAuthentication clientAuthentication = mStateManager.getCurrent()
                     .getClientAuthentication();
@@ -183,26 +200,36 @@ class SessionAuthenticationService {
                         @Override
                         public void onTokenRequestCompleted(@Nullable TokenResponse response,
                                                             @Nullable AuthorizationException ex) {
-                            mStateManager.updateAfterTokenResponse(response, ex);
-                            AuthenticationResult<TokenResponse> authenticationResult =
-                                    new AuthenticationResult<TokenResponse>(
-                                            response,
-                                            (ex != null ?
-                                                    AuthenticationError
-                                                            .createAuthenticationError(ex) : null));
-                            result.compareAndSet(null, authenticationResult);
+                            tokenResponse.set(response);
+                            tokenException.set(ex);
                             countDownLatch.countDown();
                         }
                     });
             countDownLatch.await();
-            return result.get();
+
+            // handled on this thread rather than in the callback, which runs on the main
+            // thread, as verifying the ID token may need the network
+            AuthorizationException ex = tokenException.get();
+            if (ex == null) {
+                ex = mStateManager.verifyIdToken(tokenResponse.get());
+            }
+            mStateManager.updateAfterVerifiedTokenResponse(
+                    ex == null ? tokenResponse.get() : null,
+                    ex,
+                    null);
+            AuthEvents.end(Stage.CODE_EXCHANGE, start, -1, ex);
+            return new AuthenticationResult<TokenResponse>(
+                    ex == null ? tokenResponse.get() : null,
+                    ex != null ? AuthenticationError.createAuthenticationError(ex) : null);
         } catch (ClientAuthentication.UnsupportedAuthenticationMethod ex) {
+            AuthEvents.end(Stage.CODE_EXCHANGE, start, -1, ex);
             mStateManager.updateAfterTokenResponse(
                     null,
                     AuthorizationException.TokenRequestErrors.byString(ex.getMessage()));
             return new AuthenticationResult<TokenResponse>(
                     null, AuthenticationError.createAuthenticationError(ex));
         } catch (InterruptedException ex) {
+            AuthEvents.end(Stage.CODE_EXCHANGE, start, -1, ex);
             mStateManager.updateAfterTokenResponse(
                     null,
                     AuthorizationException.TokenRequestErrors.byString(ex.getMessage()));
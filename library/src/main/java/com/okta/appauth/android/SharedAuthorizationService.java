@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.openid.appauth.AppAuthConfiguration;
+import net.openid.appauth.AuthorizationService;
+import net.openid.appauth.connectivity.ConnectionBuilder;
+import net.openid.appauth.connectivity.DefaultConnectionBuilder;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Holds a single, process-wide {@link AuthorizationService} that is shared between
+ * {@link OktaAppAuth} and {@link OktaManagementActivity}. Callers acquire a reference and must
+ * release it when they are done; the service (and its Custom Tabs connection) is disposed once
+ * the last reference is released.
+ * <p/>
+ * Also holds the {@link ConnectionBuilder} used for every AppAuth network call, so that the
+ * redirect activity uses the same connection policy as {@link OktaAppAuth}.
+ */
+final class SharedAuthorizationService {
+
+    private static final String TAG = "OktaSharedAuthService";
+
+    private static final Object LOCK = new Object();
+
+    private static final Map<AuthorizationService, Integer> REF_COUNTS = new IdentityHashMap<>();
+
+    private static AuthorizationService sService;
+    private static volatile ConnectionBuilder sConnectionBuilder =
+            DefaultConnectionBuilder.INSTANCE;
+    private static volatile ConnectionBuilder sGuardedConnectionBuilder =
+            CircuitBreakerConnection.wrap(DefaultConnectionBuilder.INSTANCE);
+
+    private SharedAuthorizationService() {
+        throw new AssertionError("no instances");
+    }
+
+    /**
+     * Returns the shared service, creating it if no one currently holds a reference.
+     *
+     * @param context Any Context; only its application Context is retained
+     * @return the shared AuthorizationService
+     */
+    @AnyThread
+    @NonNull
+    static AuthorizationService acquire(@NonNull Context context) {
+        synchronized (LOCK) {
+            if (sService == null) {
+                AuthLog.i(TAG, "Creating authorization service");
+                boolean traced = AuthTrace.begin(AuthTrace.CREATE_AUTHORIZATION_SERVICE);
+                try {
+                    sService = new AuthorizationService(
+                            context.getApplicationContext(),
+                            new AppAuthConfiguration.Builder()
+                                    .setConnectionBuilder(sGuardedConnectionBuilder)
+                                    .build());
+                } finally {
+                    AuthTrace.end(traced);
+                }
+                REF_COUNTS.put(sService, 0);
+            }
+            REF_COUNTS.put(sService, REF_COUNTS.get(sService) + 1);
+            return sService;
+        }
+    }
+
+    /**
+     * Releases a reference obtained from {@link #acquire(Context)}. Services that did not come
+     * from this holder are disposed right away.
+     *
+     * @param service The service to release, may be {@code null}
+     */
+    @AnyThread
+    static void release(@Nullable AuthorizationService service) {
+        if (service == null) {
+            return;
+        }
+
+        synchronized (LOCK) {
+            Integer refCount = REF_COUNTS.get(service);
+            if (refCount == null) {
+                service.dispose();
+                return;
+            }
+
+            if (refCount > 1) {
+                REF_COUNTS.put(service, refCount - 1);
+                return;
+            }
+
+            AuthLog.i(TAG, "Disposing authorization service");
+            REF_COUNTS.remove(service);
+            service.dispose();
+            if (service == sService) {
+                sService = null;
+            }
+        }
+    }
+
+    /**
+     * Replaces the ConnectionBuilder used for AppAuth calls. Services handed out before the
+     * change keep working until released; the next {@link #acquire(Context)} creates a new one.
+     *
+     * @param connectionBuilder The ConnectionBuilder to use from now on
+     */
+    @AnyThread
+    static void setConnectionBuilder(@NonNull ConnectionBuilder connectionBuilder) {
+        synchronized (LOCK) {
+            sConnectionBuilder = connectionBuilder;
+            sGuardedConnectionBuilder = CircuitBreakerConnection.wrap(connectionBuilder);
+            sService = null;
+        }
+    }
+
+    /**
+     * Returns the ConnectionBuilder used for AppAuth calls.
+     *
+     * @return the current ConnectionBuilder
+     */
+    @AnyThread
+    @NonNull
+    static ConnectionBuilder getConnectionBuilder() {
+        return sConnectionBuilder;
+    }
+
+    /**
+     * Returns the ConnectionBuilder for requests to the issuer, whose connections go through
+     * the {@link CircuitBreaker} of their host.
+     *
+     * @return the current ConnectionBuilder, guarded
+     */
+    @AnyThread
+    @NonNull
+    static ConnectionBuilder getGuardedConnectionBuilder() {
+        return sGuardedConnectionBuilder;
+    }
+}
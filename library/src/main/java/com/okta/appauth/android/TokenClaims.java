@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Base64;
+import android.util.LruCache;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The decoded claims of a JWT, such as an ID token or a JWT access token. The signature is
+ * <b>not</b> checked; use the claims for display and local decisions only.
+ * <p/>
+ * Claims are decoded once per token value and kept in a small process wide cache, so repeated
+ * lookups for the same token are plain map reads. Instances are immutable and can be shared
+ * between threads.
+ */
+public final class TokenClaims {
+
+    private static final String TAG = "OktaTokenClaims";
+
+    private static final int CACHE_SIZE = 8;
+    private static final int DECODE_FLAGS = Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /*
+     * Tokens that are not JWTs (e.g. opaque access tokens) are cached as this instance so they
+     * are not parsed again either.
+     */
+    private static final TokenClaims NOT_A_JWT =
+            new TokenClaims(Collections.<String, Object>emptyMap());
+
+    private static final LruCache<String, TokenClaims> CACHE = new LruCache<>(CACHE_SIZE);
+
+    private final Map<String, Object> mClaims;
+
+    private TokenClaims(Map<String, Object> claims) {
+        mClaims = Collections.unmodifiableMap(claims);
+    }
+
+    /**
+     * Returns the claims of a JWT, decoding it only if it hasn't been seen recently.
+     *
+     * @param token the encoded JWT
+     * @return the claims, or {@code null} if the token is {@code null} or not a JWT
+     */
+    @AnyThread
+    @Nullable
+    static TokenClaims forToken(@Nullable String token) {
+        if (token == null) {
+            return null;
+        }
+
+        TokenClaims claims = CACHE.get(token);
+        if (claims == null) {
+            claims = decode(token);
+            CACHE.put(token, claims);
+        }
+        return claims == NOT_A_JWT ? null : claims;
+    }
+
+    private static TokenClaims decode(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return NOT_A_JWT;
+        }
+
+        try {
+            String payload = new String(Base64.decode(parts[1], DECODE_FLAGS), UTF_8);
+            return new TokenClaims(toMap(new JSONObject(payload)));
+        } catch (IllegalArgumentException | JSONException ex) {
+            AuthLog.w(TAG, "Token is not a JWT", ex);
+            return NOT_A_JWT;
+        }
+    }
+
+    private static Map<String, Object> toMap(JSONObject json) throws JSONException {
+        Map<String, Object> map = new HashMap<>(json.length());
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            map.put(key, unwrap(json.get(key)));
+        }
+        return map;
+    }
+
+    private static Object unwrap(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            return Collections.unmodifiableMap(toMap((JSONObject) value));
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            List<Object> list = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                list.add(unwrap(array.get(i)));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        return value == JSONObject.NULL ? null : value;
+    }
+
+    /**
+     * All claims of the token. Nested objects are maps and arrays are lists.
+     *
+     * @return the claims, which can't be modified
+     */
+    @NonNull
+    public Map<String, Object> getClaims() {
+        return mClaims;
+    }
+
+    /**
+     * Returns a claim.
+     *
+     * @param name the claim name
+     * @return the claim value, or {@code null} if the token doesn't have it
+     */
+    @Nullable
+    public Object get(@NonNull String name) {
+        return mClaims.get(name);
+    }
+
+    /**
+     * Returns a string claim.
+     *
+     * @param name the claim name
+     * @return the claim value, or {@code null} if missing or not a string
+     */
+    @Nullable
+    public String getString(@NonNull String name) {
+        Object value = mClaims.get(name);
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * Returns a numeric claim, such as {@code exp} or {@code iat}.
+     *
+     * @param name the claim name
+     * @return the claim value, or {@code null} if missing or not a number
+     */
+    @Nullable
+    public Long getLong(@NonNull String name) {
+        Object value = mClaims.get(name);
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+
+    /**
+     * The {@code sub} claim.
+     *
+     * @return the subject, if present
+     */
+    @Nullable
+    public String getSubject() {
+        return getString("sub");
+    }
+
+    /**
+     * The {@code iss} claim.
+     *
+     * @return the issuer, if present
+     */
+    @Nullable
+    public String getIssuer() {
+        return getString("iss");
+    }
+
+    /**
+     * The {@code exp} claim, as milliseconds from the UNIX epoch (consistent with
+     * {@link System#currentTimeMillis()}).
+     *
+     * @return the expiration time, if present
+     */
+    @Nullable
+    public Long getExpirationTime() {
+        Long exp = getLong("exp");
+        return exp == null ? null : TimeUnit.SECONDS.toMillis(exp);
+    }
+
+    /**
+     * Whether the token has expired. The {@code exp} claim is compared against the clock of the
+     * issuer named in the {@code iss} claim, as estimated from its responses, so a wrong device
+     * clock doesn't affect the result.
+     *
+     * @return {@code true} if the token has an {@code exp} claim in the past
+     */
+    public boolean isExpired() {
+        Long expirationTime = getExpirationTime();
+        return expirationTime != null && expirationTime
+                <= ServerClock.currentTimeMillis(ServerClock.hostOf(getIssuer()));
+    }
+}
@@ -23,9 +23,9 @@ import net.openid.appauth.AuthState;
  */
 public class Tokens {
 
-    private String mIdToken;
-    private String mAccessToken;
-    private String mRefreshToken;
+    private final String mIdToken;
+    private final String mAccessToken;
+    private final String mRefreshToken;
 
     Tokens(String idToken, String accessToken, String refreshToken) {
         this.mIdToken = idToken;
@@ -68,4 +68,26 @@ public class Tokens {
     public String getRefreshToken() {
         return mRefreshToken;
     }
+
+    /**
+     * The claims of the current ID token, decoded on first use. The signature is not checked.
+     *
+     * @return ID token claims, or {@code null} if there is no ID token
+     */
+    @Nullable
+    public TokenClaims getIdTokenClaims() {
+        return TokenClaims.forToken(mIdToken);
+    }
+
+    /**
+     * The claims of the current access token, decoded on first use. The signature is not
+     * checked.
+     *
+     * @return access token claims, or {@code null} if there is no access token or it is not a
+     * JWT
+     */
+    @Nullable
+    public TokenClaims getAccessTokenClaims() {
+        return TokenClaims.forToken(mAccessToken);
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The last userinfo response of the signed in user, kept so that it can be served while the
+ * server can't be reached. An entry is only returned for the subject it was fetched for, so a
+ * different user never sees it, and it is removed when the session is cleared.
+ */
+final class UserInfoCache {
+
+    private static final String TAG = "OktaUserInfoCache";
+
+    @VisibleForTesting
+    static final String PREFS_NAME = "OktaUserInfo";
+    private static final String KEY_USER_INFO = "userInfo";
+    private static final String KEY_FETCHED_AT = "fetchedAt";
+
+    private static final String CLAIM_SUBJECT = "sub";
+
+    private final SharedPreferences mPrefs;
+
+    /**
+     * A stored userinfo response.
+     */
+    static final class Entry {
+        final String mJson;
+        final Freshness mFreshness;
+
+        Entry(@NonNull String json, @NonNull Freshness freshness) {
+            mJson = json;
+            mFreshness = freshness;
+        }
+    }
+
+    @VisibleForTesting
+    UserInfoCache(@NonNull SharedPreferences prefs) {
+        mPrefs = prefs;
+    }
+
+    /**
+     * Returns the cache of an account.
+     *
+     * @param context   The Context from which to get the application's environment
+     * @param accountId The account, or {@code null} for the default account
+     * @return the cache
+     */
+    @AnyThread
+    @NonNull
+    static UserInfoCache getInstance(
+            @NonNull final Context context,
+            @Nullable final String accountId) {
+        return InstanceRegistry.getOrCreate(
+                UserInfoCache.class,
+                accountId,
+                new InstanceRegistry.Factory<UserInfoCache>() {
+                    @NonNull
+                    @Override
+                    public UserInfoCache create() {
+                        return new UserInfoCache(context.getSharedPreferences(
+                                InstanceRegistry.partitionName(PREFS_NAME, accountId),
+                                Context.MODE_PRIVATE));
+                    }
+                });
+    }
+
+    /**
+     * Stores a userinfo response that was just received.
+     *
+     * @param json      The response body
+     * @param fetchedAt When it was received, in milliseconds since the epoch
+     */
+    @AnyThread
+    void write(@NonNull String json, long fetchedAt) {
+        mPrefs.edit()
+                .putString(KEY_USER_INFO, json)
+                .putLong(KEY_FETCHED_AT, fetchedAt)
+                .apply();
+    }
+
+    /**
+     * Returns the stored userinfo response of a user.
+     *
+     * @param subject The subject of the signed in user, from the ID token
+     * @return the response, or {@code null} if there is none for the subject
+     */
+    @AnyThread
+    @Nullable
+    Entry read(@Nullable String subject) {
+        if (subject == null) {
+            return null;
+        }
+        String json = mPrefs.getString(KEY_USER_INFO, null);
+        if (json == null) {
+            return null;
+        }
+        try {
+            if (!TextUtils.equals(subject, new JSONObject(json).optString(CLAIM_SUBJECT))) {
+                return null;
+            }
+        } catch (JSONException ex) {
+            AuthLog.w(TAG, "Failed to parse stored userinfo - discarding");
+            clear();
+            return null;
+        }
+        return new Entry(json, new Freshness(mPrefs.getLong(KEY_FETCHED_AT, 0), true));
+    }
+
+    @AnyThread
+    void clear() {
+        mPrefs.edit().clear().apply();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.okta.TestUtils;
+import com.okta.appauth.android.OktaEventListener.Stage;
+
+import net.openid.appauth.AuthState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AuthEventsTest {
+
+    private RecordingListener mListener;
+    private AuthStateManager mStateManager;
+
+    @Before
+    public void setUp() {
+        InstanceRegistry.clear();
+        mListener = new RecordingListener();
+        OktaAppAuth.setEventListener(mListener);
+        mStateManager = new AuthStateManager(
+                RuntimeEnvironment.application.getSharedPreferences(
+                        AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE),
+                new ReentrantLock());
+    }
+
+    @After
+    public void tearDown() {
+        OktaAppAuth.setEventListener(null);
+    }
+
+    @Test
+    public void testWriteStateReportsSize() {
+        AuthState state = new AuthState(TestUtils.getTestServiceConfig());
+        mStateManager.replace(state);
+
+        assertThat(mListener.mEvents).containsExactly("start WRITE_STATE", "end WRITE_STATE");
+        assertThat(mListener.mLastByteCount).isEqualTo(state.jsonSerializeString().length());
+        assertThat(mListener.mLastError).isNull();
+    }
+
+    @Test
+    public void testFailingListenerDoesNotBreakOperation() {
+        OktaAppAuth.setEventListener(new OktaEventListener() {
+            @Override
+            public void onStart(@NonNull Stage stage) {
+                throw new IllegalStateException("listener bug");
+            }
+        });
+
+        mStateManager.replace(new AuthState(TestUtils.getTestServiceConfig()));
+
+        mStateManager.invalidate();
+        assertThat(mStateManager.getCurrent().getAuthorizationServiceConfiguration()).isNotNull();
+    }
+
+    @Test
+    public void testNoEventsAfterListenerIsRemoved() {
+        OktaAppAuth.setEventListener(null);
+
+        mStateManager.replace(new AuthState());
+
+        assertThat(mListener.mEvents).isEmpty();
+    }
+
+    private static class RecordingListener extends OktaEventListener {
+        final List<String> mEvents = new ArrayList<>();
+        long mLastByteCount;
+        Exception mLastError;
+
+        @Override
+        public void onStart(@NonNull Stage stage) {
+            mEvents.add("start " + stage);
+        }
+
+        @Override
+        public void onEnd(
+                @NonNull Stage stage,
+                long durationNanos,
+                long byteCount,
+                @Nullable Exception error) {
+            mEvents.add("end " + stage);
+            mLastByteCount = byteCount;
+            mLastError = error;
+        }
+
+        @Override
+        public void onCacheResult(@NonNull Stage stage, boolean hit) {
+            mEvents.add((hit ? "hit " : "miss ") + stage);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AuthLogTest {
+
+    private List<String> mMessages;
+    private List<Throwable> mThrowables;
+
+    @Before
+    public void setUp() {
+        mMessages = new ArrayList<>();
+        mThrowables = new ArrayList<>();
+        OktaAppAuth.setLogger(new OktaLogger() {
+            @Override
+            public void log(
+                    int priority,
+                    @NonNull String tag,
+                    @NonNull String message,
+                    @Nullable Throwable tr) {
+                mMessages.add(priority + " " + tag + " " + message);
+                if (tr != null) {
+                    mThrowables.add(tr);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        AuthLog.reset();
+    }
+
+    @Test
+    public void testMessagesAreFormattedForTheLogger() {
+        OktaAppAuth.setLogLevel(Log.DEBUG);
+
+        AuthLog.d("Tag", "value is %s", 42);
+
+        assertThat(mMessages).containsExactly(Log.DEBUG + " Tag value is 42");
+    }
+
+    @Test
+    public void testThrowablesAreGivenToTheLogger() {
+        OktaAppAuth.setLogLevel(Log.DEBUG);
+        Exception ex = new Exception("cause");
+
+        AuthLog.d("Tag", "debug", ex);
+        AuthLog.i("Tag", "info", ex);
+        AuthLog.w("Tag", "host is %s", "example.com", ex);
+
+        assertThat(mMessages).containsExactly(
+                Log.DEBUG + " Tag debug",
+                Log.INFO + " Tag info",
+                Log.WARN + " Tag host is example.com");
+        assertThat(mThrowables).containsExactly(ex, ex, ex);
+    }
+
+    @Test
+    public void testMessagesBelowLevelAreNotFormatted() {
+        OktaAppAuth.setLogLevel(Log.WARN);
+        Object argument = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("formatted a disabled message");
+            }
+        };
+
+        AuthLog.d("Tag", "value is %s", argument);
+        AuthLog.i("Tag", "value is %s", argument);
+        AuthLog.w("Tag", "warning");
+
+        assertThat(mMessages).containsExactly(Log.WARN + " Tag warning");
+    }
+
+    @Test
+    public void testFailingLoggerIsIgnored() {
+        OktaAppAuth.setLogger(new OktaLogger() {
+            @Override
+            public void log(
+                    int priority,
+                    @NonNull String tag,
+                    @NonNull String message,
+                    @Nullable Throwable tr) {
+                throw new IllegalStateException("broken");
+            }
+        });
+
+        AuthLog.e("Tag", "error");
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+
+import com.okta.appauth.android.OktaEventListener.Stage;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AuthMetricsTest {
+
+    @Before
+    public void setUp() {
+        InstanceRegistry.clear();
+        AuthMetrics.reset();
+    }
+
+    @Test
+    public void testDurationsAreBucketed() {
+        AuthMetrics.recordEnd(Stage.REFRESH, TimeUnit.MILLISECONDS.toNanos(5), false);
+        AuthMetrics.recordEnd(Stage.REFRESH, TimeUnit.MILLISECONDS.toNanos(300), true);
+        AuthMetrics.recordEnd(Stage.REFRESH, TimeUnit.SECONDS.toNanos(60), false);
+
+        MetricsSnapshot.StageSnapshot refresh =
+                OktaAppAuth.getMetricsSnapshot().get(Stage.REFRESH);
+        long[] buckets = refresh.getBucketCounts();
+
+        assertThat(refresh.getCount()).isEqualTo(3);
+        assertThat(refresh.getErrorCount()).isEqualTo(1);
+        assertThat(buckets).hasSize(MetricsSnapshot.getBucketBoundsMillis().length + 1);
+        assertThat(buckets[0]).isEqualTo(1);
+        assertThat(buckets[5]).isEqualTo(1);
+        assertThat(buckets[buckets.length - 1]).isEqualTo(1);
+    }
+
+    @Test
+    public void testResponsesAreCountedByStatusClass() {
+        AuthMetrics.recordResponseStatus(200);
+        AuthMetrics.recordResponseStatus(204);
+        AuthMetrics.recordResponseStatus(503);
+        AuthMetrics.recordResponseStatus(-1);
+
+        MetricsSnapshot snapshot = OktaAppAuth.getMetricsSnapshot();
+
+        assertThat(snapshot.getAuthorizedRequests(2)).isEqualTo(2);
+        assertThat(snapshot.getAuthorizedRequests(4)).isEqualTo(0);
+        assertThat(snapshot.getAuthorizedRequests(5)).isEqualTo(1);
+        assertThat(snapshot.getAuthorizedRequests(0)).isEqualTo(1);
+    }
+
+    @Test
+    public void testEventsAreRecordedWithoutListener() {
+        AuthStateManager stateManager = new AuthStateManager(
+                RuntimeEnvironment.application.getSharedPreferences(
+                        AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE),
+                new ReentrantLock());
+
+        stateManager.replace(new AuthState());
+        AuthEvents.cacheResult(Stage.DISCOVERY, true);
+        AuthEvents.end(Stage.REVOKE, System.nanoTime(), -1,
+                AuthorizationException.TokenRequestErrors.INVALID_CLIENT);
+
+        MetricsSnapshot snapshot = OktaAppAuth.getMetricsSnapshot();
+        assertThat(snapshot.get(Stage.WRITE_STATE).getCount()).isEqualTo(1);
+        assertThat(snapshot.get(Stage.DISCOVERY).getCacheHits()).isEqualTo(1);
+        assertThat(snapshot.get(Stage.REVOKE).getErrorCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByLaterEvents() {
+        MetricsSnapshot snapshot = OktaAppAuth.getMetricsSnapshot();
+
+        AuthMetrics.recordEnd(Stage.LOGIN, 0, false);
+
+        assertThat(snapshot.get(Stage.LOGIN).getCount()).isEqualTo(0);
+    }
+}
@@ -17,17 +17,29 @@ package com.okta.appauth.android;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.okta.TestUtils;
 
 import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.GrantTypeValues;
+import net.openid.appauth.TokenRequest;
+import net.openid.appauth.TokenResponse;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static com.okta.appauth.android.AuthStateManager.KEY_STATE;
+import static net.openid.appauth.AuthorizationException.GeneralErrors.ID_TOKEN_VALIDATION_ERROR;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 
@@ -45,7 +57,9 @@ public class AuthStateManagerTest {
                 .getSharedPreferences(AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE);
         mPrefsLock = new ThrowingReentrantLock();
 
+        InstanceRegistry.clear();
         sut = new AuthStateManager(mPrefs, mPrefsLock);
+        InstanceRegistry.register(AuthStateManager.class, null, sut);
     }
 
     @Test
@@ -108,6 +122,45 @@ public class AuthStateManagerTest {
         assertThat(mPrefs.contains(KEY_STATE)).isFalse();
     }
 
+    @Test
+    public void testRejectedTokenResponseIsLoggedWithReason() {
+        final List<String> warnings = new ArrayList<>();
+        OktaAppAuth.setLogger(new OktaLogger() {
+            @Override
+            public void log(
+                    int priority,
+                    @NonNull String tag,
+                    @NonNull String message,
+                    @Nullable Throwable tr) {
+                if (priority == Log.WARN && tr instanceof AuthorizationException) {
+                    warnings.add(message);
+                }
+            }
+        });
+        // without a jwks_uri to check the ID token against, the response is rejected
+        sut.setIdTokenVerifier(new IdTokenVerifier(new JwksKeyCache()));
+        AuthState current = sut.getCurrent();
+        TokenRequest request = new TokenRequest.Builder(
+                TestUtils.getTestServiceConfig(), TestUtils.TEST_CLIENT_ID)
+                .setGrantType(GrantTypeValues.REFRESH_TOKEN)
+                .setRefreshToken("refresh")
+                .build();
+        TokenResponse response = new TokenResponse.Builder(request)
+                .setTokenType(TokenResponse.TOKEN_TYPE_BEARER)
+                .setAccessToken("access")
+                .setIdToken(TestUtils.getUnsignedIdToken())
+                .build();
+
+        try {
+            assertThat(sut.updateAfterTokenResponse(response, null)).isSameAs(current);
+        } finally {
+            AuthLog.reset();
+        }
+
+        assertThat(warnings).containsExactly("Discarding token response, keeping the current "
+                + "state: " + ID_TOKEN_VALIDATION_ERROR.errorDescription);
+    }
+
     private static class ThrowingReentrantLock extends ReentrantLock {
         @Override
         public void lock() {
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.os.Process;
+
+import com.okta.TestUtils;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowBinder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class AuthStateProviderTest {
+
+    private Context mContext;
+    private AuthStateManager mOwner;
+    private RemoteAuthStateManager mRemote;
+
+    @Before
+    public void setUp() {
+        InstanceRegistry.clear();
+        mContext = RuntimeEnvironment.application;
+        Robolectric.setupContentProvider(
+                AuthStateProvider.class, AuthStateProvider.getUri(mContext).getAuthority());
+        mRemote = new RemoteAuthStateManager(mContext);
+        mOwner = AuthStateManager.getInstance(mContext);
+    }
+
+    @Test
+    public void testRemoteWritesAreStoredByOwner() {
+        mRemote.replace(new AuthState(TestUtils.getTestServiceConfig()));
+
+        mOwner.invalidate();
+        assertThat(mOwner.getCurrent().getAuthorizationServiceConfiguration()).isNotNull();
+    }
+
+    @Test
+    public void testRemoteSeesOwnerChanges() {
+        assertThat(mRemote.getCurrent().getAuthorizationServiceConfiguration()).isNull();
+
+        mOwner.replace(new AuthState(TestUtils.getTestServiceConfig()));
+
+        assertThat(mRemote.getCurrent().getAuthorizationServiceConfiguration()).isNotNull();
+    }
+
+    @Test
+    public void testRefreshWithoutRefreshTokenFailsInOwner() {
+        mOwner.replace(new AuthState(TestUtils.getTestServiceConfig()));
+
+        AuthorizationException ex = mRemote.requestRefresh();
+
+        assertThat(ex).isEqualTo(AuthorizationException.TokenRequestErrors.INVALID_REQUEST);
+    }
+
+    @Test
+    public void testCallsFromOtherAppsAreRejected() {
+        ShadowBinder.setCallingUid(Process.myUid() + 1);
+        try {
+            mRemote.getCurrent();
+            fail("Expected a SecurityException");
+        } catch (SecurityException ex) {
+            // expected
+        } finally {
+            ShadowBinder.setCallingUid(Process.myUid());
+        }
+    }
+}
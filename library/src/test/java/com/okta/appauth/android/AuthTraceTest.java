@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+
+import net.openid.appauth.AuthState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowTrace;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AuthTraceTest {
+
+    private AuthStateManager mStateManager;
+
+    @Before
+    public void setUp() {
+        InstanceRegistry.clear();
+        mStateManager = new AuthStateManager(
+                RuntimeEnvironment.application.getSharedPreferences(
+                        AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE),
+                new ReentrantLock());
+    }
+
+    @After
+    public void tearDown() {
+        OktaAppAuth.setTracingEnabled(false);
+    }
+
+    @Test
+    public void testStorageIsTracedWhenEnabled() {
+        OktaAppAuth.setTracingEnabled(true);
+
+        mStateManager.replace(new AuthState());
+        mStateManager.readState();
+
+        assertThat(ShadowTrace.getCurrentSections()).isEmpty();
+        assertThat(ShadowTrace.getPreviousSections())
+                .contains(AuthTrace.WRITE_STATE, AuthTrace.READ_STATE);
+    }
+
+    @Test
+    public void testNothingIsTracedByDefault() {
+        mStateManager.replace(new AuthState());
+
+        assertThat(ShadowTrace.getPreviousSections()).doesNotContain(AuthTrace.WRITE_STATE);
+    }
+
+    @Test
+    public void testSectionStartedBeforeDisablingIsEnded() {
+        OktaAppAuth.setTracingEnabled(true);
+        boolean traced = AuthTrace.begin(AuthTrace.INIT);
+        OktaAppAuth.setTracingEnabled(false);
+
+        AuthTrace.end(traced);
+
+        assertThat(ShadowTrace.getCurrentSections()).isEmpty();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import com.okta.TestUtils;
+
+import net.openid.appauth.AuthorizationRequest;
+import net.openid.appauth.CodeVerifierUtil;
+import net.openid.appauth.ResponseTypeValues;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AuthorizationParametersPoolTest {
+
+    @Test
+    public void testPrefillFillsToCapacity() {
+        AuthorizationParametersPool sut =
+                new AuthorizationParametersPool(TestUtils.buildSyncynchronesExecutorService());
+        sut.prefill();
+        assertThat(sut.size()).isEqualTo(AuthorizationParametersPool.CAPACITY);
+    }
+
+    @Test
+    public void testTakeGeneratesWhenEmpty() {
+        AuthorizationParametersPool sut = new AuthorizationParametersPool(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                // never fills in the background
+            }
+        });
+
+        AuthorizationParametersPool.Parameters parameters = sut.take();
+
+        assertThat(parameters.mCodeVerifierChallenge).isEqualTo(
+                CodeVerifierUtil.deriveCodeVerifierChallenge(parameters.mCodeVerifier));
+        assertThat(parameters.mState).isNotEmpty();
+        assertThat(parameters.mNonce).isNotEmpty();
+    }
+
+    @Test
+    public void testParametersAreNeverHandedOutTwice() {
+        AuthorizationParametersPool sut =
+                new AuthorizationParametersPool(TestUtils.buildSyncynchronesExecutorService());
+        Set<String> verifiers = new HashSet<>();
+        Set<String> states = new HashSet<>();
+        for (int i = 0; i < AuthorizationParametersPool.CAPACITY * 3; i++) {
+            AuthorizationParametersPool.Parameters parameters = sut.take();
+            assertThat(verifiers.add(parameters.mCodeVerifier)).isTrue();
+            assertThat(states.add(parameters.mState)).isTrue();
+        }
+        assertThat(sut.size()).isEqualTo(AuthorizationParametersPool.CAPACITY);
+    }
+
+    @Test
+    public void testApplyToSetsRequestValues() {
+        AuthorizationParametersPool sut =
+                new AuthorizationParametersPool(TestUtils.buildSyncynchronesExecutorService());
+        AuthorizationParametersPool.Parameters parameters = sut.take();
+
+        AuthorizationRequest request = parameters.applyTo(
+                TestUtils.getMinimalAuthRequestBuilder(ResponseTypeValues.CODE)).build();
+
+        assertThat(request.codeVerifier).isEqualTo(parameters.mCodeVerifier);
+        assertThat(request.codeVerifierChallenge).isEqualTo(parameters.mCodeVerifierChallenge);
+        assertThat(request.state).isEqualTo(parameters.mState);
+        assertThat(request.nonce).isEqualTo(parameters.mNonce);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.okta.ConnectionBuilderForTest;
+import com.okta.testing.FakeOktaServer;
+import com.okta.testing.FakeOktaServer.Endpoint;
+
+import net.openid.appauth.connectivity.ConnectionBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.HttpURLConnection;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static com.okta.appauth.android.CircuitBreaker.BASE_BACKOFF_MS;
+import static com.okta.appauth.android.CircuitBreaker.FAILURE_THRESHOLD;
+import static com.okta.appauth.android.CircuitBreaker.MAX_BACKOFF_MS;
+import static com.okta.appauth.android.CircuitBreaker.PROBE_TIMEOUT_MS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class CircuitBreakerTest {
+
+    private static final long NOW = TimeUnit.HOURS.toMillis(1);
+
+    private FixedRandom mRandom;
+    private CircuitBreaker mBreaker;
+    private List<String> mEvents;
+
+    @Before
+    public void setUp() {
+        CircuitBreaker.reset();
+        ServerClock.reset();
+        mRandom = new FixedRandom();
+        mBreaker = new CircuitBreaker("example.okta.com", mRandom);
+        mEvents = new ArrayList<>();
+        OktaAppAuth.setEventListener(new OktaEventListener() {
+            @Override
+            public void onCircuitStateChanged(
+                    @NonNull String host,
+                    @NonNull CircuitBreaker.State state,
+                    long retryDelayMs) {
+                mEvents.add(state + " " + retryDelayMs);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        OktaAppAuth.setEventListener(null);
+        CircuitBreaker.reset();
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveServerErrors() {
+        for (int i = 1; i < FAILURE_THRESHOLD; i++) {
+            assertThat(mBreaker.tryAcquire(NOW)).isTrue();
+            mBreaker.onResponse(HttpURLConnection.HTTP_UNAVAILABLE, -1, NOW);
+            assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        }
+        mBreaker.onResponse(HttpURLConnection.HTTP_BAD_GATEWAY, -1, NOW);
+
+        assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(mBreaker.tryAcquire(NOW + 1)).isFalse();
+        assertThat(mEvents).containsExactly("OPEN " + BASE_BACKOFF_MS / 2);
+    }
+
+    @Test
+    public void testListenerIsCalledOutsideTheLock() {
+        final List<Boolean> heldLock = new ArrayList<>();
+        OktaAppAuth.setEventListener(new OktaEventListener() {
+            @Override
+            public void onCircuitStateChanged(
+                    @NonNull String host,
+                    @NonNull CircuitBreaker.State state,
+                    long retryDelayMs) {
+                heldLock.add(Thread.holdsLock(mBreaker));
+            }
+        });
+
+        mBreaker.onResponse(429, 0, NOW);
+        assertThat(mBreaker.tryAcquire(NOW + BASE_BACKOFF_MS)).isTrue();
+        mBreaker.onResponse(HttpURLConnection.HTTP_OK, -1, NOW + BASE_BACKOFF_MS);
+
+        // OPEN, HALF_OPEN, CLOSED
+        assertThat(heldLock).containsExactly(false, false, false);
+    }
+
+    @Test
+    public void testSuccessResetsFailureCount() {
+        for (int i = 1; i < FAILURE_THRESHOLD; i++) {
+            mBreaker.onResponse(HttpURLConnection.HTTP_INTERNAL_ERROR, -1, NOW);
+        }
+        mBreaker.onResponse(HttpURLConnection.HTTP_OK, -1, NOW);
+        mBreaker.onResponse(HttpURLConnection.HTTP_INTERNAL_ERROR, -1, NOW);
+
+        assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testClientErrorsAreNotFailures() {
+        for (int i = 0; i < FAILURE_THRESHOLD * 2; i++) {
+            mBreaker.onResponse(HttpURLConnection.HTTP_BAD_REQUEST, -1, NOW);
+            mBreaker.onResponse(HttpURLConnection.HTTP_UNAUTHORIZED, -1, NOW);
+        }
+
+        assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testRateLimitOpensImmediatelyForRetryAfter() {
+        long retryAfterMs = TimeUnit.SECONDS.toMillis(30);
+        mRandom.mValue = 0.5;
+
+        mBreaker.onResponse(429, retryAfterMs, NOW);
+
+        long delayMs = retryAfterMs + BASE_BACKOFF_MS / 2;
+        assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(mBreaker.getRetryDelayMillis(NOW)).isEqualTo(delayMs);
+        assertThat(mBreaker.tryAcquire(NOW + retryAfterMs)).isFalse();
+        assertThat(mBreaker.tryAcquire(NOW + delayMs)).isTrue();
+        assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    public void testRateLimitWithoutRetryAfterUsesBackoff() {
+        mBreaker.onResponse(429, -1, NOW);
+
+        assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(mBreaker.getRetryDelayMillis(NOW)).isEqualTo(BASE_BACKOFF_MS / 2);
+    }
+
+    @Test
+    public void testLateFailureOnlyExtendsRetryTime() {
+        mBreaker.onResponse(429, 1000, NOW);
+        long retryDelayMs = mBreaker.getRetryDelayMillis(NOW);
+
+        mBreaker.onResponse(HttpURLConnection.HTTP_UNAVAILABLE, -1, NOW);
+        mBreaker.onResponse(429, 10, NOW);
+        assertThat(mBreaker.getRetryDelayMillis(NOW)).isEqualTo(retryDelayMs);
+
+        mBreaker.onResponse(429, 60000, NOW);
+        assertThat(mBreaker.getRetryDelayMillis(NOW)).isEqualTo(60000);
+        assertThat(mEvents).hasSize(1);
+    }
+
+    @Test
+    public void testHalfOpenLetsOneProbeThrough() {
+        mBreaker.onResponse(429, 0, NOW);
+
+        assertThat(mBreaker.tryAcquire(NOW + BASE_BACKOFF_MS)).isTrue();
+        assertThat(mBreaker.tryAcquire(NOW + BASE_BACKOFF_MS)).isFalse();
+
+        mBreaker.onResponse(HttpURLConnection.HTTP_OK, -1, NOW + BASE_BACKOFF_MS);
+        assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(mBreaker.tryAcquire(NOW + BASE_BACKOFF_MS)).isTrue();
+        assertThat(mEvents).containsExactly("OPEN 0", "HALF_OPEN 0", "CLOSED 0");
+    }
+
+    @Test
+    public void testFailedProbeReopensWithLongerBackoff() {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            mBreaker.onResponse(HttpURLConnection.HTTP_UNAVAILABLE, -1, NOW);
+        }
+        long probeAt = NOW + mBreaker.getRetryDelayMillis(NOW);
+        assertThat(mBreaker.tryAcquire(probeAt)).isTrue();
+
+        mBreaker.onResponse(HttpURLConnection.HTTP_UNAVAILABLE, -1, probeAt);
+
+        assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(mBreaker.getRetryDelayMillis(probeAt)).isEqualTo(BASE_BACKOFF_MS);
+    }
+
+    @Test
+    public void testLostProbeIsReplacedAfterTimeout() {
+        mBreaker.onResponse(429, 0, NOW);
+        assertThat(mBreaker.tryAcquire(NOW)).isTrue();
+
+        assertThat(mBreaker.tryAcquire(NOW + PROBE_TIMEOUT_MS - 1)).isFalse();
+        assertThat(mBreaker.tryAcquire(NOW + PROBE_TIMEOUT_MS)).isTrue();
+    }
+
+    @Test
+    public void testNetworkErrorDuringProbeAllowsAnotherProbe() {
+        mBreaker.onResponse(429, 0, NOW);
+        assertThat(mBreaker.tryAcquire(NOW)).isTrue();
+
+        mBreaker.onNetworkError();
+
+        assertThat(mBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(mBreaker.tryAcquire(NOW)).isTrue();
+    }
+
+    @Test
+    public void testBackoffGrowsWithinBounds() {
+        for (int attempt = 1; attempt <= 40; attempt++) {
+            long nominal = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt - 1, 30));
+            mRandom.mValue = 0;
+            assertThat(mBreaker.backoffMillis(attempt)).isEqualTo(nominal / 2);
+            mRandom.mValue = 0.999;
+            assertThat(mBreaker.backoffMillis(attempt)).isBetween(nominal / 2, nominal);
+        }
+    }
+
+    @Test
+    public void testRetryAfterHeader() throws Exception {
+        SimpleDateFormat httpDate =
+                new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long inTwoMinutes = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(2);
+
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "120"));
+        server.enqueue(new MockResponse().setResponseCode(503)
+                .setHeader("Retry-After", httpDate.format(new Date(inTwoMinutes))));
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "soon"));
+        server.enqueue(new MockResponse().setResponseCode(429)
+                .setHeader("Retry-After", "99999999999999999999"));
+        server.start();
+        try {
+            Uri uri = Uri.parse(server.url("/").toString());
+            assertThat(retryAfterMillis(uri)).isEqualTo(TimeUnit.MINUTES.toMillis(2));
+            assertThat(retryAfterMillis(uri)).isBetween(
+                    TimeUnit.MINUTES.toMillis(2) - 3000, TimeUnit.MINUTES.toMillis(2));
+            assertThat(retryAfterMillis(uri)).isEqualTo(-1);
+            assertThat(retryAfterMillis(uri)).isEqualTo(CircuitBreaker.MAX_RETRY_AFTER_MS);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testRateLimitedServerFailsFast() throws Exception {
+        FakeOktaServer server = new FakeOktaServer();
+        server.start();
+        try {
+            server.setRateLimit(1, 1, TimeUnit.MINUTES);
+            ConnectionBuilder builder =
+                    CircuitBreakerConnection.wrap(ConnectionBuilderForTest.INSTANCE);
+            Uri uri = Uri.parse(server.getUrl(Endpoint.DISCOVERY));
+
+            assertThat(builder.openConnection(uri).getResponseCode()).isEqualTo(200);
+            assertThat(builder.openConnection(uri).getResponseCode()).isEqualTo(429);
+
+            HttpURLConnection conn = builder.openConnection(uri);
+            try {
+                conn.getInputStream();
+                fail("Expected the request to fail fast");
+            } catch (CircuitOpenException ex) {
+                assertThat(ex.getHost()).isEqualTo(uri.getHost());
+                assertThat(ex.getRetryDelayMillis()).isGreaterThan(0);
+            }
+
+            assertThat(server.getRequestCount(Endpoint.DISCOVERY)).isEqualTo(2);
+            assertThat(CircuitBreaker.forHost(uri.getHost()).getState())
+                    .isEqualTo(CircuitBreaker.State.OPEN);
+            assertThat(mEvents).hasSize(1);
+            assertThat(mEvents.get(0)).startsWith("OPEN ");
+        } finally {
+            server.close();
+        }
+    }
+
+    private static long retryAfterMillis(Uri uri) throws Exception {
+        HttpURLConnection conn = ConnectionBuilderForTest.INSTANCE.openConnection(uri);
+        conn.getResponseCode();
+        return CircuitBreaker.retryAfterMillis(conn);
+    }
+
+    private static final class FixedRandom extends Random {
+        volatile double mValue;
+
+        @Override
+        public double nextDouble() {
+            return mValue;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowConnectivityManager;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConnectivityMonitorTest {
+
+    private Context mContext;
+    private ShadowConnectivityManager mConnectivityManager;
+    private NetworkInfo mNetwork;
+    private ConnectivityMonitor mMonitor;
+    private AtomicInteger mRuns;
+    private Runnable mWork;
+    private AtomicInteger mExecuted;
+    private Executor mExecutor;
+
+    @Before
+    public void setUp() {
+        InstanceRegistry.clear();
+        mContext = RuntimeEnvironment.application;
+        shadowOf(RuntimeEnvironment.application)
+                .grantPermissions(Manifest.permission.ACCESS_NETWORK_STATE);
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mConnectivityManager = shadowOf(connectivityManager);
+        mNetwork = connectivityManager.getActiveNetworkInfo();
+        mMonitor = new ConnectivityMonitor(mContext);
+        mRuns = new AtomicInteger();
+        mWork = new Runnable() {
+            @Override
+            public void run() {
+                mRuns.incrementAndGet();
+            }
+        };
+        mExecuted = new AtomicInteger();
+        mExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mExecuted.incrementAndGet();
+                command.run();
+            }
+        };
+    }
+
+    @Test
+    public void testRunsRightAwayWhenConnected() {
+        assertThat(mMonitor.isConnected()).isTrue();
+
+        mMonitor.runWhenConnected(mWork, mExecutor);
+
+        assertThat(mRuns.get()).isEqualTo(1);
+        assertThat(mMonitor.getPendingCount()).isZero();
+        assertThat(mExecuted.get()).isZero();
+    }
+
+    @Test
+    public void testWaitsForConnection() {
+        mConnectivityManager.setActiveNetworkInfo(null);
+        assertThat(mMonitor.isConnected()).isFalse();
+
+        mMonitor.runWhenConnected(mWork, mExecutor);
+        mMonitor.runWhenConnected(mWork, mExecutor);
+        assertThat(mRuns.get()).isZero();
+        assertThat(mMonitor.getPendingCount()).isEqualTo(2);
+
+        mConnectivityManager.setActiveNetworkInfo(mNetwork);
+        broadcastConnectivityChange();
+
+        assertThat(mRuns.get()).isEqualTo(2);
+        assertThat(mMonitor.getPendingCount()).isZero();
+        // waiting work is resumed on the executor, not on the receiver's main thread
+        assertThat(mExecuted.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testKeepsWaitingWhileOffline() {
+        mConnectivityManager.setActiveNetworkInfo(null);
+        mMonitor.runWhenConnected(mWork, mExecutor);
+
+        broadcastConnectivityChange();
+
+        assertThat(mRuns.get()).isZero();
+        assertThat(mMonitor.getPendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testWorkRunsOnce() {
+        mConnectivityManager.setActiveNetworkInfo(null);
+        mMonitor.runWhenConnected(mWork, mExecutor);
+        mConnectivityManager.setActiveNetworkInfo(mNetwork);
+
+        broadcastConnectivityChange();
+        broadcastConnectivityChange();
+
+        assertThat(mRuns.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testConnectedWithoutNetworkStatePermission() {
+        shadowOf(RuntimeEnvironment.application)
+                .denyPermissions(Manifest.permission.ACCESS_NETWORK_STATE);
+        mConnectivityManager.setActiveNetworkInfo(null);
+
+        ConnectivityMonitor monitor = new ConnectivityMonitor(mContext);
+        monitor.runWhenConnected(mWork, mExecutor);
+
+        assertThat(monitor.isConnected()).isTrue();
+        assertThat(mRuns.get()).isEqualTo(1);
+    }
+
+    private void broadcastConnectivityChange() {
+        mContext.sendBroadcast(new Intent(ConnectivityManager.CONNECTIVITY_ACTION));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+}
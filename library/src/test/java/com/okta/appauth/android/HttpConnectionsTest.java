@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+
+import com.okta.ConnectionBuilderForTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.HttpURLConnection;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class HttpConnectionsTest {
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void testReleaseKeepsConnectionForNextRequest() throws Exception {
+        mServer.enqueue(new MockResponse()
+                .setResponseCode(302)
+                .addHeader("Location", "com.test.app:/callback?code=code&state=state")
+                .setBody("Redirecting"));
+        mServer.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        HttpURLConnection first = ConnectionBuilderForTest.INSTANCE
+                .openConnection(Uri.parse(mServer.url("/authorize").toString()));
+        assertThat(first.getResponseCode()).isEqualTo(302);
+        HttpConnections.release(first);
+
+        HttpURLConnection second = ConnectionBuilderForTest.INSTANCE
+                .openConnection(Uri.parse(mServer.url("/token").toString()));
+        assertThat(second.getResponseCode()).isEqualTo(200);
+        HttpConnections.release(second);
+
+        assertThat(mServer.takeRequest().getSequenceNumber()).isEqualTo(0);
+        assertThat(mServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReleaseDrainsErrorStream() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":\"bad\"}"));
+        mServer.enqueue(new MockResponse().setResponseCode(200));
+
+        HttpURLConnection first = ConnectionBuilderForTest.INSTANCE
+                .openConnection(Uri.parse(mServer.url("/authorize").toString()));
+        assertThat(first.getResponseCode()).isEqualTo(400);
+        HttpConnections.release(first);
+
+        HttpURLConnection second = ConnectionBuilderForTest.INSTANCE
+                .openConnection(Uri.parse(mServer.url("/token").toString()));
+        assertThat(second.getResponseCode()).isEqualTo(200);
+        HttpConnections.release(second);
+
+        mServer.takeRequest();
+        assertThat(mServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPrewarmLeavesPooledConnection() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(200));
+        mServer.enqueue(new MockResponse().setResponseCode(200));
+
+        HttpConnections.prewarm(ConnectionBuilderForTest.INSTANCE,
+                Uri.parse(mServer.url("/.well-known/openid-configuration").toString()));
+
+        HttpURLConnection conn = ConnectionBuilderForTest.INSTANCE
+                .openConnection(Uri.parse(mServer.url("/authorize").toString()));
+        assertThat(conn.getResponseCode()).isEqualTo(200);
+        HttpConnections.release(conn);
+
+        assertThat(mServer.takeRequest().getMethod()).isEqualTo("HEAD");
+        assertThat(mServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReleaseAcceptsNull() {
+        HttpConnections.release(null);
+    }
+}
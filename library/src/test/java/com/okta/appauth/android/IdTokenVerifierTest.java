@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Base64;
+
+import com.okta.ConnectionBuilderForTest;
+
+import net.openid.appauth.connectivity.DefaultConnectionBuilder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Date;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class IdTokenVerifierTest {
+
+    private static final int ENCODING_FLAGS = Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP;
+
+    private MockWebServer mServer;
+    private Uri mJwksUri;
+    private KeyPair mKeyPair;
+    private IdTokenVerifier mVerifier;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+        mJwksUri = Uri.parse(mServer.url("/oauth2/v1/keys").toString());
+        mKeyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        mVerifier = new IdTokenVerifier(new JwksKeyCache());
+        SharedAuthorizationService.setConnectionBuilder(ConnectionBuilderForTest.INSTANCE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        SharedAuthorizationService.setConnectionBuilder(DefaultConnectionBuilder.INSTANCE);
+        mServer.shutdown();
+    }
+
+    @Test
+    public void testValidTokenIsAcceptedAndKeysAreCached() throws Exception {
+        mServer.enqueue(jwksResponse("key1", mKeyPair).addHeader("Cache-Control", "max-age=60"));
+
+        assertThat(mVerifier.verify(createIdToken("key1", mKeyPair), mJwksUri)).isTrue();
+        assertThat(mVerifier.verify(createIdToken("key1", mKeyPair), mJwksUri)).isTrue();
+
+        assertThat(mServer.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testTokenSignedWithOtherKeyIsRejected() throws Exception {
+        mServer.enqueue(jwksResponse("key1", mKeyPair));
+        KeyPair otherKeyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+
+        assertThat(mVerifier.verify(createIdToken("key1", otherKeyPair), mJwksUri)).isFalse();
+    }
+
+    @Test
+    public void testUnsignedTokenIsRejected() throws Exception {
+        String unsigned = Jwts.builder()
+                .setHeaderParam("kid", "key1")
+                .setSubject("subject")
+                .compact();
+
+        assertThat(mVerifier.verify(unsigned, mJwksUri)).isFalse();
+        assertThat(mServer.getRequestCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testUnknownKeyIdRefetchesOnce() throws Exception {
+        KeyPair rotatedKeyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        mServer.enqueue(jwksResponse("key1", mKeyPair));
+        mServer.enqueue(jwksResponse("key2", rotatedKeyPair));
+
+        assertThat(mVerifier.verify(createIdToken("key1", mKeyPair), mJwksUri)).isTrue();
+        SystemClock.sleep(JwksKeyCache.MIN_REFETCH_INTERVAL_MS);
+        assertThat(mVerifier.verify(createIdToken("key2", rotatedKeyPair), mJwksUri)).isTrue();
+        assertThat(mVerifier.verify(createIdToken("key3", rotatedKeyPair), mJwksUri)).isFalse();
+
+        assertThat(mServer.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testMaxAgeFromHeaders() throws Exception {
+        mServer.enqueue(new MockResponse().addHeader("Cache-Control", "public, max-age=120"));
+        mServer.enqueue(new MockResponse().addHeader("Cache-Control", "no-store"));
+        mServer.enqueue(new MockResponse());
+
+        assertThat(JwksKeyCache.maxAgeMillis(open())).isEqualTo(120000L);
+        assertThat(JwksKeyCache.maxAgeMillis(open())).isEqualTo(0L);
+        assertThat(JwksKeyCache.maxAgeMillis(open()))
+                .isEqualTo(JwksKeyCache.DEFAULT_MAX_AGE_MS);
+    }
+
+    private HttpURLConnection open() throws Exception {
+        HttpURLConnection conn = ConnectionBuilderForTest.INSTANCE.openConnection(mJwksUri);
+        conn.getResponseCode();
+        return conn;
+    }
+
+    private static String createIdToken(String keyId, KeyPair keyPair) {
+        return Jwts.builder()
+                .setHeaderParam("kid", keyId)
+                .setSubject("subject")
+                .setExpiration(new Date(System.currentTimeMillis() + 60000))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+
+    private static MockResponse jwksResponse(String keyId, KeyPair keyPair) throws Exception {
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        JSONObject key = new JSONObject()
+                .put("kty", "RSA")
+                .put("alg", "RS256")
+                .put("use", "sig")
+                .put("kid", keyId)
+                .put("n", encode(publicKey.getModulus()))
+                .put("e", encode(publicKey.getPublicExponent()));
+        return new MockResponse()
+                .setResponseCode(200)
+                .setBody(new JSONObject().put("keys", new JSONArray().put(key)).toString());
+    }
+
+    private static String encode(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.encodeToString(bytes, ENCODING_FLAGS);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.okta.TestUtils;
+
+import net.openid.appauth.AuthState;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class InstanceRegistryTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        InstanceRegistry.clear();
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void testFactoryIsCalledOnce() {
+        final AtomicInteger created = new AtomicInteger();
+        InstanceRegistry.Factory<Object> factory = new InstanceRegistry.Factory<Object>() {
+            @NonNull
+            @Override
+            public Object create() {
+                created.incrementAndGet();
+                return new Object();
+            }
+        };
+
+        Object first = InstanceRegistry.getOrCreate(Object.class, factory);
+        Object second = InstanceRegistry.getOrCreate(Object.class, factory);
+
+        assertThat(second).isSameAs(first);
+        assertThat(created.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInstancesSurviveGarbageCollection() {
+        int oktaAppAuth = System.identityHashCode(OktaAppAuth.getInstance(mContext));
+        int stateManager = System.identityHashCode(AuthStateManager.getInstance(mContext));
+
+        System.gc();
+
+        assertThat(System.identityHashCode(OktaAppAuth.getInstance(mContext)))
+                .isEqualTo(oktaAppAuth);
+        assertThat(System.identityHashCode(AuthStateManager.getInstance(mContext)))
+                .isEqualTo(stateManager);
+    }
+
+    @Test
+    public void testOktaAppAuthSharesRegisteredManagers() {
+        OktaAppAuth oktaAppAuth = OktaAppAuth.getInstance(mContext);
+
+        assertThat(oktaAppAuth.mAuthStateManager)
+                .isSameAs(AuthStateManager.getInstance(mContext));
+        assertThat(oktaAppAuth.mConfiguration)
+                .isSameAs(OAuthClientConfiguration.getInstance(mContext));
+    }
+
+    @Test
+    public void testAccountsArePartitioned() {
+        OktaAppAuth work = OktaAppAuth.getInstance(mContext, "work", R.raw.okta_app_auth_config);
+        OktaAppAuth home = OktaAppAuth.getInstance(mContext, "home", R.raw.okta_app_auth_config);
+
+        assertThat(OktaAppAuth.getInstance(mContext, "work", R.raw.okta_app_auth_config))
+                .isSameAs(work);
+        assertThat(work.mAuthStateManager).isSameAs(AuthStateManager.getInstance(mContext, "work"))
+                .isNotSameAs(home.mAuthStateManager)
+                .isNotSameAs(AuthStateManager.getInstance(mContext));
+        assertThat(work.mConfiguration).isNotSameAs(home.mConfiguration);
+
+        work.mAuthStateManager.replace(new AuthState(TestUtils.getTestServiceConfig()));
+        home.mAuthStateManager.invalidate();
+        AuthStateManager.getInstance(mContext).invalidate();
+
+        assertThat(home.mAuthStateManager.getCurrent().getAuthorizationServiceConfiguration())
+                .isNull();
+        assertThat(AuthStateManager.getInstance(mContext).getCurrent()
+                .getAuthorizationServiceConfiguration()).isNull();
+    }
+
+    @Test
+    public void testAccountIdsMustBeSafeFileNames() {
+        assertThat(InstanceRegistry.checkAccountId("work_2-eu")).isEqualTo("work_2-eu");
+        for (String accountId : new String[] {"", "a/b", "a.b", "../x", "a b"}) {
+            try {
+                OktaAppAuth.getInstance(mContext, accountId, R.raw.okta_app_auth_config);
+                fail("Account id should be rejected: " + accountId);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+}
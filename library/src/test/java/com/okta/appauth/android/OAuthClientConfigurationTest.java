@@ -52,11 +52,13 @@ public class OAuthClientConfigurationTest {
         // Add resolve info for redirect URI since robolectric can't read it
         addResolveInfoForRedirectUri();
 
+        InstanceRegistry.clear();
         sut = new OAuthClientConfiguration(
                 mContext,
                 mPrefs,
                 ConfigurationStreams.getExampleConfiguration()
         );
+        InstanceRegistry.register(OAuthClientConfiguration.class, null, sut);
     }
 
     private void addResolveInfoForRedirectUri() {
@@ -101,6 +103,19 @@ public class OAuthClientConfigurationTest {
         assertThat(sut.hasConfigurationChanged()).isFalse();
     }
 
+    @Test
+    public void testConfigurationChangeSeesOtherInstanceAccepting() {
+        sut.acceptConfiguration();
+        assertThat(sut.hasConfigurationChanged()).isFalse();
+
+        new OAuthClientConfiguration(
+                mContext,
+                mPrefs,
+                ConfigurationStreams.getOtherConfiguration()
+        ).acceptConfiguration();
+        assertThat(sut.hasConfigurationChanged()).isTrue();
+    }
+
     @Test
     public void testConfigurationHashesJSONString() throws InvalidJsonDocumentException {
         sut = new OAuthClientConfiguration(
@@ -0,0 +1,693 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+
+import com.okta.ConnectionBuilderForTest;
+import com.okta.ReflectionUtils;
+import com.okta.appauth.android.OktaEventListener.Stage;
+import com.okta.testing.FakeOktaServer;
+import com.okta.testing.FakeOktaServer.Endpoint;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.AuthorizationRequest;
+import net.openid.appauth.AuthorizationResponse;
+import net.openid.appauth.AuthorizationService;
+import net.openid.appauth.AuthorizationServiceConfiguration;
+import net.openid.appauth.AuthorizationServiceDiscovery;
+import net.openid.appauth.ClientAuthentication;
+import net.openid.appauth.GrantTypeValues;
+import net.openid.appauth.ResponseTypeValues;
+import net.openid.appauth.TokenRequest;
+import net.openid.appauth.TokenResponse;
+import net.openid.appauth.connectivity.DefaultConnectionBuilder;
+import okhttp3.FormBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs many threads through {@link OktaAppAuth} and a real {@link AuthStateManager} against a
+ * {@link FakeOktaServer}, which rotates refresh tokens like Okta does. Token requests go to the
+ * server through a stand-in for the {@link AuthorizationService}, which records every token
+ * response so that tokens read back from the state can be matched to the response they came in.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OktaAppAuthStressTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 40;
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final Uri REDIRECT_URI = Uri.parse("com.okta.test:/callback");
+    private static final int REFRESHES_BEFORE_CLEAR = 4;
+
+    @Rule
+    public final ResultReport mReport = new ResultReport();
+
+    private FakeOktaServer mServer;
+    private OkHttpClient mHttp;
+    private ExecutorService mExecutor;
+    private ExecutorService mNetwork;
+    private SharedPreferences mPrefs;
+    private AuthStateManager mStateManager;
+    private OktaAppAuth sut;
+
+    // access token -> {ID token, refresh token} of every token response
+    private final Map<String, String[]> mIssued = new ConcurrentHashMap<>();
+    private final Set<String> mUsedRefreshTokens =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger mRefreshRequests = new AtomicInteger();
+    private final AtomicInteger mDuplicateRefreshes = new AtomicInteger();
+    private final AtomicInteger mInvalidGrants = new AtomicInteger();
+    private final AtomicInteger mTornReads = new AtomicInteger();
+    private final Queue<String> mFailures = new ConcurrentLinkedQueue<>();
+    // counted down as refresh requests reach the server, when set
+    private volatile CountDownLatch mRefreshesSent;
+
+    @Before
+    public void setUp() throws Exception {
+        InstanceRegistry.clear();
+        mServer = new FakeOktaServer();
+        mServer.start();
+        mServer.setLatency(5, 20, TimeUnit.MILLISECONDS);
+        mHttp = new OkHttpClient.Builder().followRedirects(false).build();
+        mExecutor = Executors.newFixedThreadPool(THREADS);
+        mNetwork = Executors.newCachedThreadPool();
+
+        Context context = RuntimeEnvironment.application.getApplicationContext();
+        mPrefs = context.getSharedPreferences(AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+        mStateManager = new AuthStateManager(mPrefs, new ReentrantLock());
+        InstanceRegistry.register(AuthStateManager.class, null, mStateManager);
+
+        AuthorizationService authService = mock(AuthorizationService.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                final TokenRequest request = invocation.getArgument(0);
+                final AuthorizationService.TokenResponseCallback callback =
+                        invocation.getArgument(2);
+                mNetwork.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            callback.onTokenRequestCompleted(exchange(request), null);
+                        } catch (AuthorizationException ex) {
+                            callback.onTokenRequestCompleted(null, ex);
+                        }
+                    }
+                });
+                return null;
+            }
+        }).when(authService).performTokenRequest(
+                any(TokenRequest.class),
+                any(ClientAuthentication.class),
+                any(AuthorizationService.TokenResponseCallback.class));
+
+        sut = OktaAppAuth.getInstance(context);
+        sut.mAuthService.set(authService);
+        sut.mExecutor = mExecutor;
+        sut.mClientId.set(mServer.getClientId());
+        ReflectionUtils.refectSetValue(sut, "mAuthStateManager", mStateManager);
+        ReflectionUtils.refectSetValue(sut, "mConfiguration", mock(OAuthClientConfiguration.class));
+
+        login();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExecutor.shutdownNow();
+        mNetwork.shutdownNow();
+        mServer.close();
+        InstanceRegistry.clear();
+    }
+
+    @Test
+    public void testConcurrentRequestsShareTokenRefreshes() throws Exception {
+        // AppAuth refreshes tokens that expire within a minute, so every request needs one
+        mServer.setAccessTokenLifetime(30, TimeUnit.SECONDS);
+        mServer.setLatency(50, 100, TimeUnit.MILLISECONDS);
+        refresh();
+        int refreshes = mRefreshRequests.get();
+        long refreshEvents = refreshEventCount();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        callUserInfo();
+                    } catch (InterruptedException ex) {
+                        mFailures.add("interrupted");
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(mFailures).isEmpty();
+        assertThat(mDuplicateRefreshes.get()).isZero();
+        assertThat(mInvalidGrants.get()).isZero();
+        // requests that find a refresh in flight join it, but a request that read the expired
+        // state just before a refresh completed starts another one, so there may be a few
+        assertThat(mRefreshRequests.get() - refreshes).isBetween(1, THREADS - 1);
+        // the refreshes made for the requests are reported, each once
+        assertThat(refreshEventCount() - refreshEvents)
+                .isEqualTo(mRefreshRequests.get() - refreshes);
+        assertStoredStateIsCurrent();
+    }
+
+    @Test
+    public void testMixedOperationsKeepStateConsistent() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        final AtomicInteger operations = new AtomicInteger();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int op = 0; op < OPERATIONS_PER_THREAD; op++) {
+                            switch ((thread + op) % 4) {
+                                case 0:
+                                    refresh();
+                                    break;
+                                case 1:
+                                    checkTokens(sut.getTokens());
+                                    break;
+                                default:
+                                    callUserInfo();
+                                    break;
+                            }
+                            operations.incrementAndGet();
+                        }
+                    } catch (InterruptedException ex) {
+                        mFailures.add("interrupted");
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        assertThat(done.await(TIMEOUT_SECONDS * 2, TimeUnit.SECONDS)).isTrue();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        mReport.add("%d operations on %d threads in %d ms (%.1f ops/s), %d token requests",
+                operations.get(), THREADS, elapsedMs,
+                operations.get() * 1000.0 / Math.max(1, elapsedMs),
+                mServer.getRequestCount(Endpoint.TOKEN));
+
+        assertThat(mFailures).isEmpty();
+        assertThat(mTornReads.get()).isZero();
+        assertThat(mDuplicateRefreshes.get()).isZero();
+        assertThat(mInvalidGrants.get()).isZero();
+        assertStoredStateIsCurrent();
+
+        // no refresh was lost: the refresh token kept is the last one the server issued
+        mFailures.clear();
+        refresh();
+        assertThat(mFailures).isEmpty();
+    }
+
+    @Test
+    public void testScopedTokenMintsDoNotRaceRefreshes() throws Exception {
+        // tokens that expire within the cache margin are minted again on every call
+        mServer.setAccessTokenLifetime(30, TimeUnit.SECONDS);
+        final List<Set<String>> scopeSets = Arrays.<Set<String>>asList(
+                Collections.singleton("openid"),
+                Collections.singleton("profile"),
+                new HashSet<>(Arrays.asList("openid", "profile")));
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int op = 0; op < OPERATIONS_PER_THREAD / 4; op++) {
+                            if ((thread + op) % 2 == 0) {
+                                refresh();
+                            } else {
+                                getScopedToken(scopeSets.get((thread + op) % scopeSets.size()));
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                        mFailures.add("interrupted");
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+
+        assertThat(done.await(TIMEOUT_SECONDS * 2, TimeUnit.SECONDS)).isTrue();
+        assertThat(mFailures).isEmpty();
+        assertThat(mDuplicateRefreshes.get()).isZero();
+        assertThat(mInvalidGrants.get()).isZero();
+        assertStoredStateIsCurrent();
+
+        // the refresh token kept is the last one the server issued
+        refresh();
+        assertThat(mFailures).isEmpty();
+    }
+
+    @Test
+    public void testClearSessionIsNotUndoneByRefreshInFlight() throws Exception {
+        mServer.setLatency(20, 60, TimeUnit.MILLISECONDS);
+        mRefreshesSent = new CountDownLatch(REFRESHES_BEFORE_CLEAR);
+        final AtomicBoolean cleared = new AtomicBoolean();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CountDownLatch doneAfterClear = new CountDownLatch(THREADS);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        boolean countedAfterClear = false;
+                        for (int op = 0; !stop.get(); op++) {
+                            // an operation that starts after the clear sees its outcome
+                            boolean afterClear = cleared.get();
+                            if ((thread + op) % 2 == 0) {
+                                refresh();
+                            } else {
+                                checkTokens(sut.getTokens());
+                                try {
+                                    callUserInfo();
+                                } catch (IllegalStateException ex) {
+                                    // the session was cleared, there is nothing to refresh
+                                }
+                            }
+                            if (afterClear && !countedAfterClear) {
+                                countedAfterClear = true;
+                                doneAfterClear.countDown();
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                        mFailures.add("interrupted");
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        assertThat(mRefreshesSent.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        final CountDownLatch revoked = new CountDownLatch(1);
+        sut.revoke(new OktaAppAuth.OktaRevokeListener() {
+            @Override
+            public void onSuccess() {
+                revoked.countDown();
+            }
+
+            @Override
+            public void onError(AuthorizationException ex) {
+                mFailures.add("revoke: " + ex);
+                revoked.countDown();
+            }
+        });
+        assertThat(revoked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        sut.clearSession();
+        cleared.set(true);
+
+        // refreshes started before the session was cleared complete after it, while every
+        // thread goes on to run an operation against the cleared session
+        assertThat(doneAfterClear.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        stop.set(true);
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+        AuthState current = mStateManager.getCurrent();
+        assertThat(current.getRefreshToken()).isNull();
+        assertThat(current.getAccessToken()).isNull();
+        assertThat(current.getAuthorizationServiceConfiguration()).isNotNull();
+        assertThat(mTornReads.get()).isZero();
+        assertStoredStateIsCurrent();
+    }
+
+    @Test
+    public void testConcurrentUserInfoCallsShareOneRequest() throws Exception {
+        mServer.setLatency(200, 300, TimeUnit.MILLISECONDS);
+        final Queue<JSONObject> results = new ConcurrentLinkedQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        mFailures.add("interrupted");
+                        done.countDown();
+                        return;
+                    }
+                    sut.getUserInfo(new OktaAppAuth.OktaAuthActionCallback<JSONObject>() {
+                        @Override
+                        public void onSuccess(JSONObject response) {
+                            results.add(response);
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onTokenFailure(@NonNull AuthorizationException ex) {
+                            mFailures.add("userinfo token: " + ex.errorDescription);
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(int httpResponseCode, Exception ex) {
+                            mFailures.add("userinfo: " + httpResponseCode);
+                            done.countDown();
+                        }
+                    });
+                }
+            }).start();
+        }
+        start.countDown();
+
+        assertThat(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(mFailures).isEmpty();
+        assertThat(mServer.getRequestCount(Endpoint.USERINFO)).isEqualTo(1);
+        assertThat(results).hasSize(THREADS);
+        Set<JSONObject> distinct = Collections.newSetFromMap(
+                new IdentityHashMap<JSONObject, Boolean>());
+        for (JSONObject result : results) {
+            assertThat(result.getString("sub")).isEqualTo("stress");
+            distinct.add(result);
+        }
+        assertThat(distinct).hasSize(THREADS);
+
+        // a later call is not served from the finished request
+        callUserInfo();
+        assertThat(mServer.getRequestCount(Endpoint.USERINFO)).isEqualTo(2);
+    }
+
+    @Test
+    public void testConcurrentInitFetchesDiscoveryOnce() throws Exception {
+        mServer.setLatency(100, 150, TimeUnit.MILLISECONDS);
+        mStateManager.replace(new AuthState());
+        OAuthClientConfiguration configuration = mock(OAuthClientConfiguration.class);
+        when(configuration.getDiscoveryUri())
+                .thenReturn(Uri.parse(mServer.getUrl(Endpoint.DISCOVERY)));
+        when(configuration.getClientId()).thenReturn(mServer.getClientId());
+        when(configuration.getRedirectUri()).thenReturn(REDIRECT_URI);
+        ReflectionUtils.refectSetValue(sut, "mConfiguration", configuration);
+        SharedAuthorizationService.setConnectionBuilder(ConnectionBuilderForTest.INSTANCE);
+        try {
+            final AtomicInteger succeeded = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(THREADS);
+            Context context = RuntimeEnvironment.application.getApplicationContext();
+            for (int i = 0; i < THREADS; i++) {
+                sut.init(context, new OktaAppAuth.OktaAuthListener() {
+                    @Override
+                    public void onSuccess() {
+                        succeeded.incrementAndGet();
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onTokenFailure(@NonNull AuthorizationException ex) {
+                        mFailures.add("init: " + ex.errorDescription);
+                        done.countDown();
+                    }
+                });
+            }
+            // the discovery callback is posted to the main looper
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+            while (!done.await(1, TimeUnit.MILLISECONDS)) {
+                ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+                assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            }
+
+            assertThat(mFailures).isEmpty();
+            assertThat(succeeded.get()).isEqualTo(THREADS);
+            assertThat(mServer.getRequestCount(Endpoint.DISCOVERY)).isEqualTo(1);
+            assertThat(mStateManager.getCurrent().getAuthorizationServiceConfiguration())
+                    .isNotNull();
+        } finally {
+            SharedAuthorizationService.setConnectionBuilder(DefaultConnectionBuilder.INSTANCE);
+        }
+    }
+
+    private void login() throws Exception {
+        AuthorizationServiceConfiguration config = new AuthorizationServiceConfiguration(
+                new AuthorizationServiceDiscovery(
+                        new JSONObject(mServer.getDiscoveryDocument())));
+        AuthorizationRequest request = new AuthorizationRequest.Builder(
+                config, mServer.getClientId(), ResponseTypeValues.CODE, REDIRECT_URI)
+                .setScope("openid profile offline_access")
+                .build();
+        String authorizeUrl = request.toUri().buildUpon()
+                .appendQueryParameter("sessionToken", mServer.createSessionToken("stress"))
+                .build()
+                .toString();
+
+        Uri redirect;
+        try (Response response = mHttp.newCall(
+                new Request.Builder().url(authorizeUrl).build()).execute()) {
+            redirect = Uri.parse(response.header("Location"));
+        }
+        AuthorizationResponse authResponse = new AuthorizationResponse.Builder(request)
+                .setState(redirect.getQueryParameter("state"))
+                .setAuthorizationCode(redirect.getQueryParameter("code"))
+                .build();
+
+        AuthState state = new AuthState(config);
+        state.update(authResponse, null);
+        state.update(exchange(authResponse.createTokenExchangeRequest()), null);
+        mStateManager.replace(state);
+        assertThat(mStateManager.getCurrent().isAuthorized()).isTrue();
+    }
+
+    /*
+     * Sends a token request to the fake server, as AppAuth's AuthorizationService would.
+     */
+    private TokenResponse exchange(TokenRequest request) throws AuthorizationException {
+        if (GrantTypeValues.REFRESH_TOKEN.equals(request.grantType)) {
+            mRefreshRequests.incrementAndGet();
+            if (!mUsedRefreshTokens.add(request.refreshToken)) {
+                mDuplicateRefreshes.incrementAndGet();
+            }
+            CountDownLatch refreshesSent = mRefreshesSent;
+            if (refreshesSent != null) {
+                refreshesSent.countDown();
+            }
+        }
+
+        FormBody.Builder form = new FormBody.Builder()
+                .add("client_id", mServer.getClientId());
+        for (Map.Entry<String, String> param : request.getRequestParameters().entrySet()) {
+            form.add(param.getKey(), param.getValue());
+        }
+        Request httpRequest = new Request.Builder()
+                .url(request.configuration.tokenEndpoint.toString())
+                .post(form.build())
+                .build();
+
+        try (Response response = mHttp.newCall(httpRequest).execute()) {
+            String body = response.body().string();
+            if (response.isSuccessful()) {
+                TokenResponse tokenResponse = new TokenResponse.Builder(request)
+                        .fromResponseJsonString(body)
+                        .build();
+                mIssued.put(tokenResponse.accessToken,
+                        new String[] {tokenResponse.idToken, tokenResponse.refreshToken});
+                return tokenResponse;
+            }
+            JSONObject json = new JSONObject(body);
+            String error = json.getString("error");
+            if ("invalid_grant".equals(error)) {
+                mInvalidGrants.incrementAndGet();
+            }
+            throw AuthorizationException.fromOAuthTemplate(
+                    AuthorizationException.TokenRequestErrors.byString(error),
+                    error,
+                    json.optString("error_description", null),
+                    null);
+        } catch (IOException ex) {
+            throw AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.NETWORK_ERROR, ex);
+        } catch (JSONException ex) {
+            throw AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.JSON_DESERIALIZATION_ERROR, ex);
+        }
+    }
+
+    private void refresh() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        sut.refreshAccessToken(new OktaAppAuth.OktaAuthListener() {
+            @Override
+            public void onSuccess() {
+                latch.countDown();
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                mFailures.add("refresh: " + ex.errorDescription);
+                latch.countDown();
+            }
+        });
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            mFailures.add("refresh timed out");
+        }
+    }
+
+    private void getScopedToken(Set<String> scopes) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        sut.getAccessToken(scopes, new OktaAppAuth.OktaAuthActionCallback<String>() {
+            @Override
+            public void onSuccess(String accessToken) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                mFailures.add("scoped token: " + ex.errorDescription);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(int httpResponseCode, Exception ex) {
+                mFailures.add("scoped token: " + httpResponseCode);
+                latch.countDown();
+            }
+        });
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            mFailures.add("scoped token timed out");
+        }
+    }
+
+    private void callUserInfo() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        sut.performAuthorizedRequest(new OktaAppAuth.BearerAuthRequest() {
+            @NonNull
+            @Override
+            public HttpURLConnection createRequest() throws Exception {
+                URL url = new URL(mServer.getUrl(Endpoint.USERINFO));
+                return (HttpURLConnection) url.openConnection();
+            }
+
+            @Override
+            public void onSuccess(@NonNull InputStream response) {
+                try {
+                    response.close();
+                } catch (IOException ex) {
+                    // the status code was all that mattered
+                }
+                latch.countDown();
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                mFailures.add("userinfo token: " + ex.errorDescription);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(int httpResponseCode, Exception ex) {
+                mFailures.add("userinfo: " + httpResponseCode);
+                latch.countDown();
+            }
+        });
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            mFailures.add("userinfo timed out");
+        }
+    }
+
+    private static long refreshEventCount() {
+        return OktaAppAuth.getMetricsSnapshot().get(Stage.REFRESH).getCount();
+    }
+
+    /*
+     * The tokens of one read must all come from the same token response.
+     */
+    private void checkTokens(Tokens tokens) {
+        if (tokens.getAccessToken() == null) {
+            return;
+        }
+        String[] issued = mIssued.get(tokens.getAccessToken());
+        if (issued == null
+                || !issued[0].equals(tokens.getIdToken())
+                || !issued[1].equals(tokens.getRefreshToken())) {
+            mTornReads.incrementAndGet();
+        }
+    }
+
+    private void assertStoredStateIsCurrent() {
+        AuthState stored = new AuthStateManager(mPrefs, new ReentrantLock()).readState();
+        assertThat(stored.jsonSerializeString())
+                .isEqualTo(mStateManager.getCurrent().jsonSerializeString());
+    }
+}
@@ -1,8 +1,10 @@
 package com.okta.appauth.android;
 
+import android.app.Activity;
 import android.app.PendingIntent;
 import android.content.Context;
 
+import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.customtabs.CustomTabsIntent;
@@ -25,19 +27,29 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
 
 @RunWith(RobolectricTestRunner.class)
 public class OktaAppAuthTest {
@@ -58,6 +70,7 @@ public class OktaAppAuthTest {
 
     @Before
     public void setUp() throws Exception {
+        InstanceRegistry.clear();
         mContext = RuntimeEnvironment.application.getApplicationContext();
         MockitoAnnotations.initMocks(this);
         sut = OktaAppAuth.getInstance(RuntimeEnvironment.application.getApplicationContext());
@@ -65,6 +78,7 @@ public class OktaAppAuthTest {
         ReflectionUtils.refectSetValue(sut, "mAuthStateManager", mAuthStateManager);
         ReflectionUtils.refectSetValue(sut, "mConfiguration", mConfiguration);
         sut.mExecutor = TestUtils.buildSyncynchronesExecutorService();
+        sut.mPreparedRequests.evictAll();
         when(mAuthStateManager.getCurrent()).thenReturn(mAuthState);
     }
 
@@ -105,6 +119,21 @@ public class OktaAppAuthTest {
         assertThat(sut.mAuthService.get()).isNotSameAs(authorizationService);
     }
 
+    @Test
+    public void testAuthServiceIsSharedWithManagementActivity() {
+        sut.mAuthService.set(null);
+        AuthorizationService service = sut.createAuthorizationServiceIfNeeded();
+        AuthorizationService activityService = SharedAuthorizationService.acquire(mContext);
+        assertThat(activityService).isSameAs(service);
+
+        sut.dispose();
+        assertThat(sut.mAuthService.get()).isNull();
+        assertThat(SharedAuthorizationService.acquire(mContext)).isSameAs(activityService);
+
+        SharedAuthorizationService.release(activityService);
+        SharedAuthorizationService.release(activityService);
+    }
+
     @Test
     public void testRefreshWithoutTokenCallsListener() {
         FakeOktaAuthListener listener = new FakeOktaAuthListener();
@@ -258,6 +287,106 @@ public class OktaAppAuthTest {
                 .isEqualTo(payload.getState());
     }
 
+    @Test
+    public void testRepeatedLoginUsesPreparedRequest() {
+        PendingIntent success = mock(PendingIntent.class);
+        PendingIntent failure = mock(PendingIntent.class);
+        prepareLoginMocks();
+
+        AuthenticationPayload payload = new AuthenticationPayload.Builder()
+                .setLoginHint("loginHint")
+                .build();
+
+        sut.login(mContext, success, failure, payload);
+        OktaAppAuth.PreparedAuthRequest prepared = sut.mPreparedRequests.get(
+                new AuthenticationPayload.Builder().setLoginHint("loginHint").build());
+        assertThat(prepared).isNotNull();
+
+        sut.login(mContext, success, failure, payload);
+
+        ArgumentCaptor<AuthorizationRequest> argument = ArgumentCaptor
+                .forClass(AuthorizationRequest.class);
+        verify(mAuthService, times(2)).performAuthorizationRequest(
+                argument.capture(),
+                any(PendingIntent.class),
+                any(PendingIntent.class),
+                any(CustomTabsIntent.class));
+
+        AuthorizationRequest first = argument.getAllValues().get(0);
+        AuthorizationRequest second = argument.getAllValues().get(1);
+        assertThat(second).isSameAs(prepared.mRequest);
+        assertThat(second.codeVerifier).isNotEqualTo(first.codeVerifier);
+        assertThat(second.state).isNotEqualTo(first.state);
+        assertThat(sut.mPreparedRequests.get(payload)).isNotSameAs(prepared);
+    }
+
+    @Test
+    public void testClearSessionInvalidatesPreparedRequests() {
+        PendingIntent success = mock(PendingIntent.class);
+        PendingIntent failure = mock(PendingIntent.class);
+        prepareLoginMocks();
+        AuthenticationPayload payload = new AuthenticationPayload.Builder().build();
+
+        sut.login(mContext, success, failure, payload);
+        assertThat(sut.mPreparedRequests.size()).isEqualTo(1);
+
+        sut.clearSession();
+
+        assertThat(sut.mPreparedRequests.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testPayloadEquality() {
+        AuthenticationPayload payload = new AuthenticationPayload.Builder()
+                .addParameter("testName", "testValue")
+                .setState("testState")
+                .build();
+        AuthenticationPayload same = new AuthenticationPayload.Builder()
+                .setState("testState")
+                .addParameter("testName", "testValue")
+                .build();
+        AuthenticationPayload other = new AuthenticationPayload.Builder()
+                .addParameter("testName", "otherValue")
+                .setState("testState")
+                .build();
+
+        assertThat(payload).isEqualTo(same);
+        assertThat(payload.hashCode()).isEqualTo(same.hashCode());
+        assertThat(payload).isNotEqualTo(other);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testLoginHintChangesAreDebounced() {
+        prepareLoginMocks();
+        sut.mAuthRequest.set(
+                TestUtils.getMinimalAuthRequestBuilder(ResponseTypeValues.CODE).build());
+        OktaAppAuth.LoginHintChangeHandler handler = new OktaAppAuth.LoginHintChangeHandler(sut);
+
+        handler.onTextChanged("u", 0, 0, 1);
+        handler.onTextChanged("us", 1, 0, 1);
+        handler.onTextChanged("user", 2, 0, 2);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        assertThat(sut.mAuthRequest.get().loginHint).isEqualTo("user");
+        verify(mAuthService, times(1)).createCustomTabsIntentBuilder(any(Uri.class));
+
+        handler.onTextChanged("user ", 4, 0, 1);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        verify(mAuthService, times(1)).createCustomTabsIntentBuilder(any(Uri.class));
+    }
+
+    private void prepareLoginMocks() {
+        when(mAuthService.createCustomTabsIntentBuilder(any(Uri.class)))
+                .thenReturn(new CustomTabsIntent.Builder());
+        when(mAuthState.getAuthorizationServiceConfiguration())
+                .thenReturn(TestUtils.getTestServiceConfig());
+        when(mConfiguration.getRedirectUri()).thenReturn(TestUtils.TEST_APP_REDIRECT_URI);
+        when(mConfiguration.getScopes()).thenReturn(new HashSet<>(TestUtils.TEST_SCOPES_SUPPORTED));
+        sut.mClientId.set(TestUtils.TEST_CLIENT_ID);
+    }
+
     @Test
     public void testLoginIllegalStateExceptionConfigurationChanged(){
         PendingIntent success = mock(PendingIntent.class);
@@ -292,6 +421,45 @@ public class OktaAppAuthTest {
         fail("Expected exception not thrown");
     }
 
+    @Test
+    public void testVerifiedRefreshCallsListenerOnCallingThread() throws Exception {
+        when(mAuthState.getRefreshToken()).thenReturn("refreshTokenHere");
+        when(mAuthState.getClientAuthentication()).thenReturn(mClientAuthentication);
+        when(mAuthState.createTokenRefreshRequest()).thenReturn(mock(TokenRequest.class));
+        when(mAuthStateManager.isIdTokenVerificationEnabled()).thenReturn(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        sut.mExecutor = executor;
+        final AtomicReference<Thread> listenerThread = new AtomicReference<>();
+        sut.refreshAccessToken(new OktaAppAuth.OktaAuthListener() {
+            @Override
+            public void onSuccess() {
+                listenerThread.set(Thread.currentThread());
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                listenerThread.set(Thread.currentThread());
+            }
+        });
+        ArgumentCaptor<AuthorizationService.TokenResponseCallback> callback =
+                ArgumentCaptor.forClass(AuthorizationService.TokenResponseCallback.class);
+        verify(mAuthService).performTokenRequest(
+                any(TokenRequest.class), any(ClientAuthentication.class), callback.capture());
+
+        ShadowLooper.pauseMainLooper();
+        try {
+            callback.getValue().onTokenRequestCompleted(
+                    null, AuthorizationException.GeneralErrors.NETWORK_ERROR);
+            executor.shutdown();
+            assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(listenerThread.get()).isNull();
+        } finally {
+            ShadowLooper.unPauseMainLooper();
+        }
+
+        assertThat(listenerThread.get()).isSameAs(Thread.currentThread());
+    }
+
     @Test
     public void testRefreshCallsIntoAppAuth() throws ClientAuthentication.UnsupportedAuthenticationMethod {
         TokenRequest tokenRequest = mock(TokenRequest.class);
@@ -666,4 +834,210 @@ public class OktaAppAuthTest {
         }
         fail("Test should fail with exception");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testOfflineUserInfoIsServedFromStorage() throws Exception {
+        String idToken = TestUtils.getUnsignedIdToken();
+        String subject = TokenClaims.forToken(idToken).getSubject();
+        when(mAuthState.getIdToken()).thenReturn(idToken);
+        UserInfoCache.getInstance(mContext, null).write(
+                new JSONObject().put("sub", subject).put("name", "Jane").toString(), 1000L);
+        goOffline();
+        sut.setOfflineFirst(true);
+
+        final AtomicReference<JSONObject> userInfo = new AtomicReference<>();
+        final AtomicReference<Freshness> freshness = new AtomicReference<>();
+        sut.getUserInfo(new OktaAppAuth.OktaFreshnessCallback<JSONObject>() {
+            @Override
+            public void onFreshness(@NonNull Freshness result) {
+                freshness.set(result);
+            }
+
+            @Override
+            public void onSuccess(JSONObject response) {
+                userInfo.set(response);
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                fail("Stored user info should be served");
+            }
+
+            @Override
+            public void onFailure(int httpResponseCode, Exception ex) {
+                fail("Stored user info should be served");
+            }
+        });
+
+        assertThat(userInfo.get().getString("name")).isEqualTo("Jane");
+        assertThat(freshness.get().isFromCache()).isTrue();
+        assertThat(freshness.get().getFetchedAt()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void testOfflineUserInfoWaitsForConnectionWithoutStoredResponse() {
+        when(mAuthState.getIdToken()).thenReturn(TestUtils.getUnsignedIdToken());
+        goOffline();
+        sut.setOfflineFirst(true);
+
+        final AtomicBoolean called = new AtomicBoolean();
+        sut.getUserInfo(new OktaAppAuth.OktaAuthActionCallback<JSONObject>() {
+            @Override
+            public void onSuccess(JSONObject response) {
+                called.set(true);
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                called.set(true);
+            }
+
+            @Override
+            public void onFailure(int httpResponseCode, Exception ex) {
+                called.set(true);
+            }
+        });
+
+        assertThat(called.get()).isFalse();
+        assertThat(ConnectivityMonitor.getInstance(mContext).getPendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDisablingOfflineFirstClearsStoredUserInfo() {
+        String idToken = TestUtils.getUnsignedIdToken();
+        String subject = TokenClaims.forToken(idToken).getSubject();
+        UserInfoCache cache = UserInfoCache.getInstance(mContext, null);
+        cache.write("{\"sub\":\"" + subject + "\"}", 1000L);
+
+        sut.setOfflineFirst(false);
+
+        assertThat(cache.read(subject)).isNull();
+    }
+
+    @Test
+    public void testBackgroundReleasesAuthorizationService() {
+        Activity activity = mock(Activity.class);
+        ProcessLifecycleMonitor monitor = ProcessLifecycleMonitor.getInstance(mContext);
+        monitor.onActivityStarted(activity);
+
+        monitor.onActivityStopped(activity);
+
+        verify(mAuthService).dispose();
+        assertThat(sut.mAuthService.get()).isNull();
+    }
+
+    @Test
+    public void testForegroundRefreshesExpiredToken()
+            throws ClientAuthentication.UnsupportedAuthenticationMethod {
+        when(mAuthState.isAuthorized()).thenReturn(true);
+        when(mAuthState.getAuthorizationServiceConfiguration())
+                .thenReturn(TestUtils.getTestServiceConfig());
+        when(mConfiguration.hasConfigurationChanged()).thenReturn(false);
+        when(mAuthState.getRefreshToken()).thenReturn("refreshTokenHere");
+        when(mAuthState.getNeedsTokenRefresh()).thenReturn(true);
+        when(mAuthState.getClientAuthentication()).thenReturn(mClientAuthentication);
+        when(mAuthState.createTokenRefreshRequest()).thenReturn(mock(TokenRequest.class));
+        sut.setRefreshOnForeground(true);
+        Activity activity = mock(Activity.class);
+        ProcessLifecycleMonitor monitor = ProcessLifecycleMonitor.getInstance(mContext);
+        monitor.onActivityStarted(activity);
+        monitor.onActivityStopped(activity);
+        sut.mAuthService.set(mAuthService);
+
+        monitor.onActivityStarted(activity);
+
+        verify(mAuthService).performTokenRequest(
+                any(TokenRequest.class),
+                any(ClientAuthentication.class),
+                any(AuthorizationService.TokenResponseCallback.class));
+    }
+
+    @Test
+    public void testForegroundDoesNotRefreshByDefault() {
+        when(mAuthState.isAuthorized()).thenReturn(true);
+        when(mAuthState.getAuthorizationServiceConfiguration())
+                .thenReturn(TestUtils.getTestServiceConfig());
+        when(mConfiguration.hasConfigurationChanged()).thenReturn(false);
+        when(mAuthState.getRefreshToken()).thenReturn("refreshTokenHere");
+        when(mAuthState.getNeedsTokenRefresh()).thenReturn(true);
+        Activity activity = mock(Activity.class);
+        ProcessLifecycleMonitor monitor = ProcessLifecycleMonitor.getInstance(mContext);
+        monitor.onActivityStarted(activity);
+        monitor.onActivityStopped(activity);
+        sut.mAuthService.set(mAuthService);
+
+        monitor.onActivityStarted(activity);
+
+        verify(mAuthState, never()).createTokenRefreshRequest();
+    }
+
+    @Test
+    public void testScopedTokenIsMintedByOwnerProcess() throws Exception {
+        RemoteAuthStateManager remote = mock(RemoteAuthStateManager.class);
+        ReflectionUtils.refectSetValue(sut, "mAuthStateManager", remote);
+        when(remote.getCurrent()).thenReturn(mAuthState);
+        when(mAuthState.getRefreshToken()).thenReturn("refreshTokenHere");
+        when(mAuthState.getAuthorizationServiceConfiguration())
+                .thenReturn(TestUtils.getTestServiceConfig());
+        Set<String> scopes = new HashSet<>(Arrays.asList("openid", "orders:read"));
+
+        sut.getAccessToken(scopes, new OktaAppAuth.OktaAuthActionCallback<String>() {
+            @Override
+            public void onSuccess(String response) {
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+            }
+
+            @Override
+            public void onFailure(int httpResponseCode, Exception ex) {
+            }
+        });
+
+        verify(remote).requestScopedToken(eq(scopes), any(ScopedTokenCache.FetchCallback.class));
+        verify(mAuthService, never()).performTokenRequest(
+                any(TokenRequest.class),
+                any(ClientAuthentication.class),
+                any(AuthorizationService.TokenResponseCallback.class));
+    }
+
+    @Test
+    public void testLoginAfterBackgroundKeepsAuthRequest() {
+        PendingIntent success = mock(PendingIntent.class);
+        PendingIntent failure = mock(PendingIntent.class);
+        AuthorizationRequest request = TestUtils.getTestAuthRequest();
+        when(mAuthService.createCustomTabsIntentBuilder(any(Uri.class)))
+                .thenReturn(new CustomTabsIntent.Builder());
+        when(mAuthState.getAuthorizationServiceConfiguration())
+                .thenReturn(TestUtils.getTestServiceConfig());
+        sut.mAuthRequest.set(request);
+        Activity activity = mock(Activity.class);
+        ProcessLifecycleMonitor monitor = ProcessLifecycleMonitor.getInstance(mContext);
+        monitor.onActivityStarted(activity);
+        monitor.onActivityStopped(activity);
+
+        monitor.onActivityStarted(activity);
+
+        // the service acquired again on foreground only rebuilds the browser intent
+        assertThat(sut.mAuthRequest.get()).isSameAs(request);
+        assertThat(sut.mAuthIntent.get()).isNotNull();
+        SharedAuthorizationService.release(sut.mAuthService.getAndSet(mAuthService));
+
+        sut.login(mContext, success, failure);
+
+        verify(mAuthService, times(1)).performAuthorizationRequest(
+                eq(request),
+                any(PendingIntent.class),
+                any(PendingIntent.class),
+                any(CustomTabsIntent.class));
+    }
+
+    private void goOffline() {
+        shadowOf(RuntimeEnvironment.application)
+                .grantPermissions(android.Manifest.permission.ACCESS_NETWORK_STATE);
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        shadowOf(connectivityManager).setActiveNetworkInfo(null);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+
+import com.okta.ConnectionBuilderForTest;
+
+import net.openid.appauth.connectivity.DefaultConnectionBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class OktaConnectionBuilderTest {
+
+    private static final Uri TEST_URI = Uri.parse("http://test.openid.com/o/oauth/token");
+
+    @Test
+    public void testTimeoutsAreAppliedOnTopOfDelegate() throws Exception {
+        OktaConnectionBuilder builder = new OktaConnectionBuilder.Builder()
+                .setDelegate(ConnectionBuilderForTest.INSTANCE)
+                .setConnectTimeout(3, TimeUnit.SECONDS)
+                .setReadTimeout(500, TimeUnit.MILLISECONDS)
+                .build();
+
+        HttpURLConnection conn = builder.openConnection(TEST_URI);
+
+        assertThat(conn.getConnectTimeout()).isEqualTo(3000);
+        assertThat(conn.getReadTimeout()).isEqualTo(500);
+        assertThat(conn.getInstanceFollowRedirects()).isFalse();
+    }
+
+    @Test
+    public void testDelegateTimeoutsKeptWhenUnset() throws Exception {
+        OktaConnectionBuilder builder = new OktaConnectionBuilder.Builder()
+                .setDelegate(ConnectionBuilderForTest.INSTANCE)
+                .build();
+
+        HttpURLConnection expected = ConnectionBuilderForTest.INSTANCE.openConnection(TEST_URI);
+        HttpURLConnection conn = builder.openConnection(TEST_URI);
+
+        assertThat(conn.getConnectTimeout()).isEqualTo(expected.getConnectTimeout());
+        assertThat(conn.getReadTimeout()).isEqualTo(expected.getReadTimeout());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTimeoutIsRejected() {
+        new OktaConnectionBuilder.Builder().setConnectTimeout(-1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSharedServiceUsesConfiguredBuilder() {
+        OktaConnectionBuilder builder = new OktaConnectionBuilder.Builder().build();
+        SharedAuthorizationService.setConnectionBuilder(builder);
+        try {
+            assertThat(SharedAuthorizationService.getConnectionBuilder()).isSameAs(builder);
+        } finally {
+            SharedAuthorizationService.setConnectionBuilder(DefaultConnectionBuilder.INSTANCE);
+        }
+    }
+}
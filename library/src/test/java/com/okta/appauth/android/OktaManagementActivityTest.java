@@ -37,10 +37,12 @@ import org.robolectric.RuntimeEnvironment;
 
 import static android.content.Context.MODE_PRIVATE;
 
+import static com.okta.appauth.android.OktaManagementActivity.KEY_ACCOUNT_ID;
 import static com.okta.appauth.android.OktaManagementActivity.KEY_CANCEL_INTENT;
 import static com.okta.appauth.android.OktaManagementActivity.KEY_COMPLETE_INTENT;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
@@ -53,14 +55,16 @@ public class OktaManagementActivityTest {
 
     @Before
     public void setUp() throws Exception {
+        InstanceRegistry.clear();
         MockitoAnnotations.initMocks(this);
 
         Context context = RuntimeEnvironment.application.getApplicationContext();
-        new OAuthClientConfiguration(
+        OAuthClientConfiguration configuration = new OAuthClientConfiguration(
                 context,
                 context.getSharedPreferences(OAuthClientConfiguration.PREFS_NAME, MODE_PRIVATE),
-                ConfigurationStreams.getExampleConfiguration()
-        ).acceptConfiguration();
+                ConfigurationStreams.getExampleConfiguration());
+        configuration.acceptConfiguration();
+        InstanceRegistry.register(OAuthClientConfiguration.class, null, configuration);
     }
 
     @Test
@@ -115,11 +119,12 @@ public class OktaManagementActivityTest {
     public void testOnStartShouldSignOutIfConfigurationHasChanged() throws CanceledException, JSONException {
         // Create new configuration to change the hash
         Context context = RuntimeEnvironment.application.getApplicationContext();
-        new OAuthClientConfiguration(
-                context,
-                context.getSharedPreferences(OAuthClientConfiguration.PREFS_NAME, MODE_PRIVATE),
-                ConfigurationStreams.getOtherConfiguration()
-        );
+        InstanceRegistry.register(OAuthClientConfiguration.class, null,
+                new OAuthClientConfiguration(
+                        context,
+                        context.getSharedPreferences(
+                                OAuthClientConfiguration.PREFS_NAME, MODE_PRIVATE),
+                        ConfigurationStreams.getOtherConfiguration()));
 
         doNothing().when(mCancelIntent).send();
 
@@ -147,6 +152,34 @@ public class OktaManagementActivityTest {
         assertThat(activity.isFinishing()).isTrue();
     }
 
+    @Test
+    public void testOnStartUsesStateOfAccount() throws CanceledException, JSONException {
+        Context context = RuntimeEnvironment.application.getApplicationContext();
+        OAuthClientConfiguration configuration = new OAuthClientConfiguration(
+                context,
+                context.getSharedPreferences(
+                        InstanceRegistry.partitionName(OAuthClientConfiguration.PREFS_NAME, "work"),
+                        MODE_PRIVATE),
+                ConfigurationStreams.getExampleConfiguration());
+        configuration.acceptConfiguration();
+        InstanceRegistry.register(OAuthClientConfiguration.class, "work", configuration);
+        AuthStateManager.getInstance(context, "work").replace(mAuthState);
+        AuthStateManager.getInstance(context).replace(new AuthState());
+
+        when(mAuthState.isAuthorized()).thenReturn(true);
+        doNothing().when(mCompleteIntent).send();
+
+        Intent intent = createStartIntent();
+        intent.putExtra(KEY_ACCOUNT_ID, "work");
+        OktaManagementActivity activity = Robolectric.buildActivity(
+                OktaManagementActivity.class,
+                intent
+        ).create().start().get();
+
+        assertThat(activity.mAccountId).isEqualTo("work");
+        verify(mCompleteIntent).send();
+    }
+
     private Intent createStartIntent() throws JSONException {
         Intent tokenExchangeIntent = new Intent(
                 RuntimeEnvironment.application.getApplicationContext(),
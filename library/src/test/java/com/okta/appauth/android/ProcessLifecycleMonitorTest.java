@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.app.Activity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProcessLifecycleMonitorTest {
+
+    private ProcessLifecycleMonitor mMonitor;
+    private RecordingListener mListener;
+
+    @Before
+    public void setUp() {
+        InstanceRegistry.clear();
+        mMonitor = new ProcessLifecycleMonitor();
+        mListener = new RecordingListener();
+        mMonitor.addListener(mListener);
+    }
+
+    @Test
+    public void testBackgroundOnceLastActivityStops() {
+        Activity first = mock(Activity.class);
+        Activity second = mock(Activity.class);
+        mMonitor.onActivityStarted(first);
+        mMonitor.onActivityStarted(second);
+
+        mMonitor.onActivityStopped(first);
+        assertThat(mListener.mBackground).isZero();
+
+        mMonitor.onActivityStopped(second);
+        assertThat(mListener.mBackground).isEqualTo(1);
+        assertThat(mMonitor.isInBackground()).isTrue();
+    }
+
+    @Test
+    public void testForegroundOnlyAfterBackground() {
+        Activity activity = mock(Activity.class);
+        mMonitor.onActivityStarted(activity);
+        assertThat(mListener.mForeground).isZero();
+
+        mMonitor.onActivityStopped(activity);
+        mMonitor.onActivityStarted(activity);
+
+        assertThat(mListener.mForeground).isEqualTo(1);
+        assertThat(mMonitor.isInBackground()).isFalse();
+    }
+
+    @Test
+    public void testConfigurationChangeIsNotBackground() {
+        Activity rotated = mock(Activity.class);
+        when(rotated.isChangingConfigurations()).thenReturn(true);
+        mMonitor.onActivityStarted(rotated);
+
+        mMonitor.onActivityStopped(rotated);
+        mMonitor.onActivityStarted(mock(Activity.class));
+
+        assertThat(mListener.mBackground).isZero();
+        assertThat(mListener.mForeground).isZero();
+    }
+
+    @Test
+    public void testActivityStartedBeforeMonitorIsNotCounted() {
+        ActivityController<Activity> earlier = Robolectric.buildActivity(Activity.class);
+        earlier.setup();
+        ProcessLifecycleMonitor monitor =
+                ProcessLifecycleMonitor.getInstance(RuntimeEnvironment.application);
+        RecordingListener listener = new RecordingListener();
+        monitor.addListener(listener);
+        ActivityController<Activity> later = Robolectric.buildActivity(Activity.class);
+        later.setup();
+
+        earlier.pause().stop();
+        assertThat(listener.mBackground).isZero();
+
+        later.pause().stop();
+        assertThat(listener.mBackground).isEqualTo(1);
+    }
+
+    @Test
+    public void testObservesApplicationActivities() {
+        ProcessLifecycleMonitor monitor =
+                ProcessLifecycleMonitor.getInstance(RuntimeEnvironment.application);
+        RecordingListener listener = new RecordingListener();
+        monitor.addListener(listener);
+
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class);
+        controller.setup();
+        controller.pause().stop();
+        assertThat(listener.mBackground).isEqualTo(1);
+
+        controller.start();
+        assertThat(listener.mForeground).isEqualTo(1);
+    }
+
+    private static final class RecordingListener implements ProcessLifecycleMonitor.Listener {
+        int mForeground;
+        int mBackground;
+
+        @Override
+        public void onForeground() {
+            mForeground++;
+        }
+
+        @Override
+        public void onBackground() {
+            mBackground++;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects figures a test measures, such as throughput, and reports them with the test's result
+ * once it has passed, where they end up in the test report's standard output. Figures of a
+ * failed test are not reported, as they were not measured under the expected conditions.
+ */
+public class ResultReport extends TestWatcher {
+
+    private final List<String> mLines = new ArrayList<>();
+
+    /**
+     * Adds a line to the report of the running test.
+     *
+     * @param format The format of the line, see {@link String#format(String, Object...)}
+     * @param args   The arguments of the format
+     */
+    public void add(String format, Object... args) {
+        mLines.add(String.format(Locale.US, format, args));
+    }
+
+    @Override
+    protected void starting(Description description) {
+        mLines.clear();
+    }
+
+    @Override
+    protected void succeeded(Description description) {
+        for (String line : mLines) {
+            System.out.println(description.getMethodName() + ": " + line);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.okta.TestUtils;
+
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.GrantTypeValues;
+import net.openid.appauth.TokenRequest;
+import net.openid.appauth.TokenResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ScopedTokenCacheTest {
+
+    private static final Set<String> SCOPES = new HashSet<>(Arrays.asList("orders:read", "openid"));
+
+    private List<ScopedTokenCache.FetchCallback> mFetches;
+    private ScopedTokenCache mCache;
+
+    @Before
+    public void setUp() {
+        mFetches = new ArrayList<>();
+        mCache = new ScopedTokenCache(2, new ScopedTokenCache.TokenFetcher() {
+            @Override
+            public void fetch(
+                    @NonNull Set<String> scopes,
+                    @NonNull ScopedTokenCache.FetchCallback callback) {
+                mFetches.add(callback);
+            }
+        });
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneFetch() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        mCache.getAccessToken(SCOPES, first);
+        mCache.getAccessToken(new HashSet<>(Arrays.asList("openid", "orders:read")), second);
+        assertThat(mFetches).hasSize(1);
+
+        mFetches.get(0).onComplete(tokenResponse("scoped", TimeUnit.HOURS.toMillis(1)), null);
+
+        assertThat(first.mAccessToken).isEqualTo("scoped");
+        assertThat(second.mAccessToken).isEqualTo("scoped");
+    }
+
+    @Test
+    public void testValidTokenIsServedFromCache() {
+        mCache.getAccessToken(SCOPES, new RecordingCallback());
+        mFetches.get(0).onComplete(tokenResponse("scoped", TimeUnit.HOURS.toMillis(1)), null);
+
+        RecordingCallback callback = new RecordingCallback();
+        mCache.getAccessToken(SCOPES, callback);
+
+        assertThat(mFetches).hasSize(1);
+        assertThat(callback.mAccessToken).isEqualTo("scoped");
+    }
+
+    @Test
+    public void testTokenNearExpiryIsFetchedAgain() {
+        mCache.getAccessToken(SCOPES, new RecordingCallback());
+        mFetches.get(0).onComplete(
+                tokenResponse("scoped", ScopedTokenCache.EXPIRY_MARGIN_MS / 2), null);
+
+        mCache.getAccessToken(SCOPES, new RecordingCallback());
+
+        assertThat(mFetches).hasSize(2);
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        RecordingCallback callback = new RecordingCallback();
+        mCache.getAccessToken(SCOPES, callback);
+        mFetches.get(0).onComplete(null, AuthorizationException.TokenRequestErrors.INVALID_SCOPE);
+
+        mCache.getAccessToken(SCOPES, new RecordingCallback());
+
+        assertThat(callback.mError)
+                .isEqualTo(AuthorizationException.TokenRequestErrors.INVALID_SCOPE);
+        assertThat(mFetches).hasSize(2);
+    }
+
+    @Test
+    public void testTokensFetchedBeforeClearAreNotCached() {
+        RecordingCallback callback = new RecordingCallback();
+        mCache.getAccessToken(SCOPES, callback);
+        mCache.clear();
+        mFetches.get(0).onComplete(tokenResponse("scoped", TimeUnit.HOURS.toMillis(1)), null);
+
+        mCache.getAccessToken(SCOPES, new RecordingCallback());
+
+        assertThat(callback.mAccessToken).isEqualTo("scoped");
+        assertThat(mFetches).hasSize(2);
+    }
+
+    private static TokenResponse tokenResponse(String accessToken, long expiresInMillis) {
+        TokenRequest request = new TokenRequest.Builder(
+                TestUtils.getTestServiceConfig(), TestUtils.TEST_CLIENT_ID)
+                .setGrantType(GrantTypeValues.REFRESH_TOKEN)
+                .setRefreshToken("refresh")
+                .build();
+        return new TokenResponse.Builder(request)
+                .setTokenType(TokenResponse.TOKEN_TYPE_BEARER)
+                .setAccessToken(accessToken)
+                .setAccessTokenExpirationTime(System.currentTimeMillis() + expiresInMillis)
+                .build();
+    }
+
+    private static class RecordingCallback implements ScopedTokenCache.Callback {
+        String mAccessToken;
+        AuthorizationException mError;
+
+        @Override
+        public void onComplete(
+                @Nullable String accessToken,
+                @Nullable AuthorizationException ex) {
+            mAccessToken = accessToken;
+            mError = ex;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.net.Uri;
+
+import com.okta.ConnectionBuilderForTest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.KeyPair;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ServerClockTest {
+
+    private static final long SKEW_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final String ISSUER = "https://example.okta.com/oauth2/default";
+    private static final String HOST = "example.okta.com";
+
+    @After
+    public void tearDown() {
+        ServerClock.reset();
+        CircuitBreaker.reset();
+    }
+
+    @Test
+    public void testSmallOffsetsAreIgnored() {
+        ServerClock.addSample(HOST, ServerClock.MIN_SKEW_MS / 2);
+        assertThat(ServerClock.getOffsetMillis(HOST)).isEqualTo(0);
+    }
+
+    @Test
+    public void testOffsetFromDateHeader() throws Exception {
+        MockWebServer server = new MockWebServer();
+        SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+        server.enqueue(new MockResponse().setHeader(
+                "Date", httpDate.format(new Date(System.currentTimeMillis() + SKEW_MS))));
+        server.start();
+        String host = server.getHostName();
+        try {
+            HttpURLConnection conn = ConnectionBuilderForTest.INSTANCE
+                    .openConnection(Uri.parse(server.url("/").toString()));
+            conn.getResponseCode();
+            ServerClock.onResponse(conn);
+        } finally {
+            server.shutdown();
+        }
+
+        assertThat(ServerClock.getOffsetMillis(host)).isBetween(SKEW_MS - 2000, SKEW_MS + 1000);
+    }
+
+    @Test
+    public void testRefreshResponseWithoutIdTokenIsSampled() throws Exception {
+        MockWebServer server = new MockWebServer();
+        SimpleDateFormat httpDate =
+                new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long serverTime = System.currentTimeMillis() + SKEW_MS;
+        server.enqueue(new MockResponse()
+                .setHeader("Date", httpDate.format(new Date(serverTime)))
+                .setBody("{\"access_token\":\"token\",\"token_type\":\"Bearer\"}"));
+        server.start();
+        String host = server.getHostName();
+        try {
+            // sent the way AppAuth sends token requests, through the guarded ConnectionBuilder
+            HttpURLConnection conn = CircuitBreakerConnection
+                    .wrap(ConnectionBuilderForTest.INSTANCE)
+                    .openConnection(Uri.parse(server.url("/v1/token").toString()));
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            OutputStream out = conn.getOutputStream();
+            out.write("grant_type=refresh_token&refresh_token=rt".getBytes("UTF-8"));
+            out.close();
+            conn.getInputStream().close();
+        } finally {
+            server.shutdown();
+        }
+
+        assertThat(ServerClock.getOffsetMillis(host)).isBetween(SKEW_MS - 2000, SKEW_MS + 1000);
+    }
+
+    @Test
+    public void testAccessTokenExpiryUsesServerClock() {
+        // the device clock is ten minutes behind the server
+        ServerClock.addSample(HOST, SKEW_MS);
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        String accessToken = Jwts.builder()
+                .setIssuer(ISSUER)
+                .setExpiration(new Date(System.currentTimeMillis() + SKEW_MS / 2))
+                .signWith(keyPair.getPrivate())
+                .compact();
+
+        TokenClaims claims = new Tokens(null, accessToken, null).getAccessTokenClaims();
+
+        assertThat(claims.isExpired()).isTrue();
+    }
+
+    @Test
+    public void testSamplesAreSmoothed() {
+        ServerClock.addSample(HOST, SKEW_MS);
+        ServerClock.addSample(HOST, 0);
+        assertThat(ServerClock.getOffsetMillis(HOST)).isEqualTo(SKEW_MS - SKEW_MS / 4);
+    }
+
+    @Test
+    public void testIssuersHaveSeparateClocks() {
+        ServerClock.addSample(HOST, SKEW_MS);
+        ServerClock.addSample("other.okta.com", -SKEW_MS);
+
+        assertThat(ServerClock.getOffsetMillis(HOST)).isEqualTo(SKEW_MS);
+        assertThat(ServerClock.getOffsetMillis("OTHER.okta.com")).isEqualTo(-SKEW_MS);
+        assertThat(ServerClock.getOffsetMillis("unknown.okta.com")).isEqualTo(0);
+        assertThat(ServerClock.getOffsetMillis(null)).isEqualTo(0);
+    }
+
+    @Test
+    public void testIdTokenSampleGoesToItsIssuer() {
+        long issuedAt = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() + SKEW_MS);
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        String idToken = Jwts.builder()
+                .setIssuer(ISSUER)
+                .claim("iat", issuedAt)
+                .signWith(keyPair.getPrivate())
+                .compact();
+
+        ServerClock.onIdTokenIssued(idToken);
+
+        assertThat(ServerClock.getOffsetMillis(HOST)).isBetween(SKEW_MS - 2000, SKEW_MS + 1000);
+        assertThat(ServerClock.getOffsetMillis("other.okta.com")).isEqualTo(0);
+    }
+}
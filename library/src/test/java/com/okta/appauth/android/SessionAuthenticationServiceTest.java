@@ -45,6 +45,7 @@ public class SessionAuthenticationServiceTest {
 
     @Before
     public void setUp() throws Exception {
+        InstanceRegistry.clear();
         MockitoAnnotations.initMocks(this);
 
         mAuthStateManager = AuthStateManager.getInstance(RuntimeEnvironment.application);
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.okta.testing.FakeOktaServer;
+import com.okta.testing.FakeOktaServer.Endpoint;
+
+import net.openid.appauth.AuthState;
+import net.openid.appauth.AuthorizationException;
+import net.openid.appauth.AuthorizationRequest;
+import net.openid.appauth.AuthorizationResponse;
+import net.openid.appauth.ResponseTypeValues;
+import net.openid.appauth.TokenRequest;
+import net.openid.appauth.TokenResponse;
+import net.openid.appauth.connectivity.ConnectionBuilder;
+import net.openid.appauth.connectivity.DefaultConnectionBuilder;
+import okhttp3.FormBody;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * <p>
+ * Measures what an app pays at launch: {@link OAuthClientConfiguration},
+ * {@link AuthStateManager} and {@link OktaAppAuth} construction, then {@link OktaAppAuth#init}
+ * up to its listener. Each stage reports wall time and the bytes allocated on all threads,
+ * for a first launch, a launch with the discovery document cached in the stored state, and a
+ * launch with a logged in user. Discovery is served by a {@link FakeOktaServer}.
+ * </p>
+ * <p>
+ * Every launch starts with empty instance caches, as in a new process. The first launch of the
+ * first scenario also pays for class loading; the medians are of the launches after warm up.
+ * The benchmark is skipped unless requested:
+ * </p>
+ * <pre>
+ * ./gradlew :library:testDebugUnitTest -PstartupBenchmark --tests '*StartupBenchmarkTest'
+ * </pre>
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StartupBenchmarkTest {
+
+    private static final String PROPERTY = "okta.startupBenchmark";
+
+    private static final int WARMUP_LAUNCHES = 5;
+    private static final int MEASURED_LAUNCHES = 20;
+    private static final long INIT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final String REDIRECT_URI = "com.okta.appauth.android.test:/oauth2redirect";
+    // OAuthClientConfiguration only accepts https issuers; connections go to the fake server
+    private static final String CONFIGURATION = "{"
+            + "\"client_id\": \"" + FakeOktaServer.DEFAULT_CLIENT_ID + "\","
+            + "\"redirect_uri\": \"" + REDIRECT_URI + "\","
+            + "\"end_session_redirect_uri\": \"com.okta.appauth.android.test:/logout\","
+            + "\"scopes\": [\"openid\", \"profile\", \"offline_access\"],"
+            + "\"issuer_uri\": \"https://example.okta.com/oauth2/default\""
+            + "}";
+
+    private enum Scenario {
+        FIRST_LAUNCH,
+        CACHED_DISCOVERY,
+        LOGGED_IN
+    }
+
+    private enum Stage {
+        CONFIGURATION,
+        AUTH_STATE,
+        INSTANCE,
+        INIT
+    }
+
+    private FakeOktaServer mServer;
+    private Context mContext;
+    private SharedPreferences mStatePrefs;
+    private SharedPreferences mConfigPrefs;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue("Run with -PstartupBenchmark", Boolean.getBoolean(PROPERTY));
+
+        mServer = new FakeOktaServer();
+        mServer.start();
+        SharedAuthorizationService.setConnectionBuilder(new FakeServerConnectionBuilder());
+        // as in a release build
+        AuthLog.setLevel(Log.WARN);
+
+        mContext = RuntimeEnvironment.application.getApplicationContext();
+        mStatePrefs = mContext.getSharedPreferences(
+                AuthStateManager.PREFS_NAME, Context.MODE_PRIVATE);
+        mConfigPrefs = mContext.getSharedPreferences(
+                OAuthClientConfiguration.PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mServer == null) {
+            return;
+        }
+        SharedAuthorizationService.setConnectionBuilder(DefaultConnectionBuilder.INSTANCE);
+        AuthLog.reset();
+        InstanceRegistry.clear();
+        mServer.close();
+    }
+
+    @Test
+    public void testStartupCost() throws Exception {
+        StringBuilder report = new StringBuilder();
+        String cachedState = null;
+        String acceptedHash = null;
+        for (Scenario scenario : Scenario.values()) {
+            if (scenario == Scenario.CACHED_DISCOVERY) {
+                cachedState = mStatePrefs.getString(AuthStateManager.KEY_STATE, null);
+                acceptedHash = mConfigPrefs.getString(OAuthClientConfiguration.KEY_LAST_HASH, null);
+                assertThat(cachedState).isNotNull();
+            } else if (scenario == Scenario.LOGGED_IN) {
+                cachedState = logIn(AuthState.jsonDeserialize(cachedState)).jsonSerializeString();
+            }
+
+            Map<Stage, List<long[]>> samples = new EnumMap<>(Stage.class);
+            for (Stage stage : Stage.values()) {
+                samples.put(stage, new ArrayList<long[]>());
+            }
+            for (int i = 0; i < WARMUP_LAUNCHES + MEASURED_LAUNCHES; i++) {
+                restoreStorage(cachedState, acceptedHash);
+                Map<Stage, long[]> launch = launch();
+                for (Stage stage : Stage.values()) {
+                    samples.get(stage).add(launch.get(stage));
+                }
+            }
+            appendReport(report, scenario, samples);
+        }
+        System.out.println(report);
+    }
+
+    /*
+     * Runs the launch path once, in a fresh "process".
+     *
+     * @return per stage, the wall time in nanoseconds and the bytes allocated
+     */
+    private Map<Stage, long[]> launch() throws InterruptedException {
+        InstanceRegistry.clear();
+        Map<Stage, long[]> result = new EnumMap<>(Stage.class);
+
+        Measurement measurement = new Measurement();
+        // what OAuthClientConfiguration.getInstance does with the packaged configuration
+        InstanceRegistry.register(OAuthClientConfiguration.class, null,
+                new OAuthClientConfiguration(
+                        mContext,
+                        mConfigPrefs,
+                        new ByteArrayInputStream(
+                                CONFIGURATION.getBytes(Charset.forName("UTF-8")))));
+        result.put(Stage.CONFIGURATION, measurement.next());
+
+        AuthStateManager.getInstance(mContext).getCurrent();
+        result.put(Stage.AUTH_STATE, measurement.next());
+
+        OktaAppAuth oktaAppAuth = OktaAppAuth.getInstance(mContext);
+        result.put(Stage.INSTANCE, measurement.next());
+
+        final CountDownLatch initialized = new CountDownLatch(1);
+        final AtomicReference<AuthorizationException> error = new AtomicReference<>();
+        oktaAppAuth.init(mContext, new OktaAppAuth.OktaAuthListener() {
+            @Override
+            public void onSuccess() {
+                initialized.countDown();
+            }
+
+            @Override
+            public void onTokenFailure(@NonNull AuthorizationException ex) {
+                error.set(ex);
+                initialized.countDown();
+            }
+        });
+        // the discovery callback may be posted to the main looper
+        long deadline = System.currentTimeMillis() + INIT_TIMEOUT_MS;
+        while (!initialized.await(1, TimeUnit.MILLISECONDS)) {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+        }
+        result.put(Stage.INIT, measurement.next());
+        assertThat(error.get()).isNull();
+
+        oktaAppAuth.mExecutor.shutdown();
+        oktaAppAuth.dispose();
+        return result;
+    }
+
+    private void restoreStorage(String state, String acceptedHash) {
+        SharedPreferences.Editor stateEditor = mStatePrefs.edit().clear();
+        if (state != null) {
+            stateEditor.putString(AuthStateManager.KEY_STATE, state);
+        }
+        assertThat(stateEditor.commit()).isTrue();
+
+        SharedPreferences.Editor configEditor = mConfigPrefs.edit().clear();
+        if (acceptedHash != null) {
+            configEditor.putString(OAuthClientConfiguration.KEY_LAST_HASH, acceptedHash);
+        }
+        assertThat(configEditor.commit()).isTrue();
+    }
+
+    /*
+     * Logs in through the fake server's authorize and token endpoints, as the browser and
+     * OktaManagementActivity would.
+     */
+    private AuthState logIn(AuthState state) throws Exception {
+        AuthorizationRequest request = new AuthorizationRequest.Builder(
+                state.getAuthorizationServiceConfiguration(),
+                FakeOktaServer.DEFAULT_CLIENT_ID,
+                ResponseTypeValues.CODE,
+                Uri.parse(REDIRECT_URI))
+                .setScope("openid profile offline_access")
+                .build();
+        String authorizeUrl = request.toUri().buildUpon()
+                .appendQueryParameter("sessionToken", mServer.createSessionToken("startup"))
+                .build()
+                .toString();
+
+        OkHttpClient http = new OkHttpClient.Builder().followRedirects(false).build();
+        Uri redirect;
+        try (Response response = http.newCall(
+                new Request.Builder().url(authorizeUrl).build()).execute()) {
+            redirect = Uri.parse(response.header("Location"));
+        }
+        AuthorizationResponse authResponse = new AuthorizationResponse.Builder(request)
+                .setState(redirect.getQueryParameter("state"))
+                .setAuthorizationCode(redirect.getQueryParameter("code"))
+                .build();
+
+        TokenRequest tokenRequest = authResponse.createTokenExchangeRequest();
+        FormBody.Builder form = new FormBody.Builder()
+                .add("client_id", FakeOktaServer.DEFAULT_CLIENT_ID);
+        for (Map.Entry<String, String> param : tokenRequest.getRequestParameters().entrySet()) {
+            form.add(param.getKey(), param.getValue());
+        }
+        String body;
+        try (Response response = http.newCall(new Request.Builder()
+                .url(mServer.getUrl(Endpoint.TOKEN))
+                .post(form.build())
+                .build()).execute()) {
+            assertThat(response.isSuccessful()).isTrue();
+            body = response.body().string();
+        }
+
+        state.update(authResponse, null);
+        state.update(new TokenResponse.Builder(tokenRequest)
+                .fromResponseJsonString(body)
+                .build(), null);
+        assertThat(state.isAuthorized()).isTrue();
+        return state;
+    }
+
+    private static void appendReport(
+            StringBuilder report,
+            Scenario scenario,
+            Map<Stage, List<long[]>> samples) {
+        report.append(String.format(Locale.US, "%n%s (first launch, median of %d)%n",
+                scenario, MEASURED_LAUNCHES));
+        report.append(String.format(Locale.US, "  %-14s %10s %10s %12s %12s%n",
+                "stage", "first ms", "median ms", "first KB", "median KB"));
+        for (Stage stage : Stage.values()) {
+            List<long[]> stageSamples = samples.get(stage);
+            long[] first = stageSamples.get(0);
+            List<long[]> measured = stageSamples.subList(WARMUP_LAUNCHES, stageSamples.size());
+            report.append(String.format(Locale.US, "  %-14s %10.2f %10.2f %12.1f %12.1f%n",
+                    stage,
+                    first[0] / 1e6,
+                    median(measured, 0) / 1e6,
+                    first[1] / 1024.0,
+                    median(measured, 1) / 1024.0));
+        }
+    }
+
+    private static long median(List<long[]> samples, int index) {
+        long[] values = new long[samples.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = samples.get(i)[index];
+        }
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    /*
+     * Wall time and allocated bytes since the previous call. Allocations are summed over the
+     * live threads, so that the SDK's executor and AppAuth's background work are included.
+     */
+    private static final class Measurement {
+        private long mNanos = System.nanoTime();
+        private long mBytes = allocatedBytes();
+
+        long[] next() {
+            long nanos = System.nanoTime();
+            long bytes = allocatedBytes();
+            long[] sample = new long[] {nanos - mNanos, mBytes >= 0 ? bytes - mBytes : -1};
+            mNanos = nanos;
+            mBytes = bytes;
+            return sample;
+        }
+
+        private static long allocatedBytes() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            long total = 0;
+            for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                if (bytes > 0) {
+                    total += bytes;
+                }
+            }
+            return total;
+        }
+    }
+
+    /*
+     * Sends every request to the fake server over plain http, keeping the path.
+     */
+    private final class FakeServerConnectionBuilder implements ConnectionBuilder {
+        @NonNull
+        @Override
+        public HttpURLConnection openConnection(@NonNull Uri uri) throws IOException {
+            HttpUrl server = HttpUrl.get(mServer.getIssuer());
+            HttpUrl url = HttpUrl.get(uri.toString()).newBuilder()
+                    .scheme("http")
+                    .host(server.host())
+                    .port(server.port())
+                    .build();
+            return (HttpURLConnection) url.url().openConnection();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class TokensTest {
+
+    private static final long EXPIRATION_MS = 1545486421000L;
+
+    private static String createJwt(String subject) {
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        return Jwts.builder()
+                .setSubject(subject)
+                .setIssuer("https://example.okta.com")
+                .setExpiration(new Date(EXPIRATION_MS))
+                .claim("email", "user@example.com")
+                .claim("scp", Arrays.asList("openid", "profile"))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+
+    @Test
+    public void testIdTokenClaimsAreDecoded() {
+        Tokens tokens = new Tokens(createJwt("subject"), null, null);
+
+        TokenClaims claims = tokens.getIdTokenClaims();
+
+        assertThat(claims).isNotNull();
+        assertThat(claims.getSubject()).isEqualTo("subject");
+        assertThat(claims.getIssuer()).isEqualTo("https://example.okta.com");
+        assertThat(claims.getString("email")).isEqualTo("user@example.com");
+        assertThat(claims.getExpirationTime()).isEqualTo(EXPIRATION_MS);
+        assertThat((List<?>) claims.get("scp")).containsExactly("openid", "profile");
+    }
+
+    @Test
+    public void testClaimsAreSharedForSameToken() {
+        String idToken = createJwt("shared");
+
+        TokenClaims first = new Tokens(idToken, null, null).getIdTokenClaims();
+        TokenClaims second = new Tokens(idToken, null, null).getIdTokenClaims();
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void testOpaqueAccessTokenHasNoClaims() {
+        Tokens tokens = new Tokens(null, "opaque-access-token", "refresh");
+
+        assertThat(tokens.getAccessTokenClaims()).isNull();
+        assertThat(tokens.getIdTokenClaims()).isNull();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testClaimsCanNotBeModified() {
+        TokenClaims claims = new Tokens(createJwt("subject"), null, null).getIdTokenClaims();
+        claims.getClaims().put("sub", "other");
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.appauth.android;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class UserInfoCacheTest {
+
+    private static final String USER_INFO = "{\"sub\":\"00u1\",\"name\":\"Jane\"}";
+    private static final long FETCHED_AT = 1546300800000L;
+
+    private SharedPreferences mPrefs;
+    private UserInfoCache mCache;
+
+    @Before
+    public void setUp() {
+        InstanceRegistry.clear();
+        mPrefs = RuntimeEnvironment.application.getSharedPreferences(
+                UserInfoCache.PREFS_NAME, Context.MODE_PRIVATE);
+        mCache = new UserInfoCache(mPrefs);
+    }
+
+    @Test
+    public void testStoredResponseIsReturnedForSameSubject() {
+        mCache.write(USER_INFO, FETCHED_AT);
+
+        UserInfoCache.Entry entry = mCache.read("00u1");
+
+        assertThat(entry).isNotNull();
+        assertThat(entry.mJson).isEqualTo(USER_INFO);
+        assertThat(entry.mFreshness.getFetchedAt()).isEqualTo(FETCHED_AT);
+        assertThat(entry.mFreshness.isFromCache()).isTrue();
+        assertThat(entry.mFreshness.getAgeMillis()).isGreaterThan(0);
+    }
+
+    @Test
+    public void testStoredResponseIsNotReturnedForOtherSubject() {
+        mCache.write(USER_INFO, FETCHED_AT);
+
+        assertThat(mCache.read("00u2")).isNull();
+        assertThat(mCache.read(null)).isNull();
+    }
+
+    @Test
+    public void testClearRemovesResponse() {
+        mCache.write(USER_INFO, FETCHED_AT);
+
+        mCache.clear();
+
+        assertThat(mCache.read("00u1")).isNull();
+    }
+
+    @Test
+    public void testCorruptResponseIsDiscarded() {
+        mCache.write("{not json", FETCHED_AT);
+
+        assertThat(mCache.read("00u1")).isNull();
+        assertThat(mPrefs.getAll()).isEmpty();
+    }
+
+    @Test
+    public void testAccountsAreSeparate() {
+        UserInfoCache.getInstance(RuntimeEnvironment.application, null)
+                .write(USER_INFO, FETCHED_AT);
+
+        assertThat(UserInfoCache.getInstance(RuntimeEnvironment.application, "work")
+                .read("00u1")).isNull();
+        assertThat(UserInfoCache.getInstance(RuntimeEnvironment.application, null)
+                .read("00u1")).isNotNull();
+    }
+}
@@ -0,0 +1,620 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.testing;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.ByteString;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <p>
+ * A local stand-in for an Okta authorization server, built on {@link MockWebServer}. It serves
+ * the endpoints the SDK uses, under {@link #getIssuer()}:
+ * </p>
+ * <ul>
+ *     <li>the discovery document, at {@code /.well-known/openid-configuration}</li>
+ *     <li>{@code /v1/authorize}, which redirects with a code when given a session token from
+ *     {@link #createSessionToken(String)}</li>
+ *     <li>{@code /v1/token}, for authorization codes with PKCE and for refresh tokens, which are
+ *     rotated by default</li>
+ *     <li>{@code /v1/userinfo}, {@code /v1/revoke} and {@code /v1/keys}</li>
+ * </ul>
+ * <p>
+ * Latency, server errors and rate limiting can be injected, and changed while the server runs,
+ * to test how the SDK behaves under load and failure. Requests are served concurrently, one
+ * thread per connection. Only public clients are supported, matching the SDK.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class FakeOktaServer implements Closeable {
+
+    public static final String DEFAULT_CLIENT_ID = "0oafakeclient";
+
+    private static final String ISSUER_PATH = "/oauth2/default";
+    private static final String CODE_CHALLENGE_METHOD = "S256";
+    private static final long DEFAULT_ACCESS_TOKEN_LIFETIME_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The endpoints served, for {@link #getRequestCount(Endpoint)} and
+     * {@link #setErrorRate(Endpoint, double)}.
+     */
+    public enum Endpoint {
+        DISCOVERY("/.well-known/openid-configuration"),
+        AUTHORIZE("/v1/authorize"),
+        TOKEN("/v1/token"),
+        USERINFO("/v1/userinfo"),
+        REVOKE("/v1/revoke"),
+        KEYS("/v1/keys");
+
+        final String mPath;
+
+        Endpoint(String path) {
+            mPath = path;
+        }
+    }
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final FakeTokens mTokens = new FakeTokens();
+    private final String mClientId;
+    private final Random mRandom = new Random();
+
+    private final AtomicIntegerArray mRequestCounts =
+            new AtomicIntegerArray(Endpoint.values().length);
+    private final AtomicIntegerArray mInjectedErrorCounts =
+            new AtomicIntegerArray(Endpoint.values().length);
+    private final double[] mErrorRates = new double[Endpoint.values().length];
+
+    private volatile long mMinLatencyMs;
+    private volatile long mMaxLatencyMs;
+    private volatile long mClockSkewMs;
+    private volatile long mAccessTokenLifetimeMs = DEFAULT_ACCESS_TOKEN_LIFETIME_MS;
+    private volatile boolean mRotateRefreshTokens = true;
+
+    private final Object mRateLimitLock = new Object();
+    private int mRateLimit;
+    private long mRateLimitWindowMs;
+    private long mWindowStart;
+    private int mWindowCount;
+    private int mRateLimitedCount;
+
+    public FakeOktaServer() {
+        this(DEFAULT_CLIENT_ID);
+    }
+
+    public FakeOktaServer(String clientId) {
+        mClientId = clientId;
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return FakeOktaServer.this.dispatch(request);
+            }
+        });
+    }
+
+    /**
+     * Starts the server on a free local port.
+     *
+     * @throws IOException if the server could not be started
+     */
+    public void start() throws IOException {
+        mServer.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mServer.shutdown();
+    }
+
+    public String getClientId() {
+        return mClientId;
+    }
+
+    /**
+     * The issuer, to use as the {@code issuer_uri} of the SDK configuration.
+     */
+    public String getIssuer() {
+        return mServer.url(ISSUER_PATH).toString();
+    }
+
+    public String getUrl(Endpoint endpoint) {
+        return mServer.url(ISSUER_PATH + endpoint.mPath).toString();
+    }
+
+    /**
+     * The discovery document, as served by the server.
+     */
+    public String getDiscoveryDocument() {
+        return new Json()
+                .put("issuer", getIssuer())
+                .put("authorization_endpoint", getUrl(Endpoint.AUTHORIZE))
+                .put("token_endpoint", getUrl(Endpoint.TOKEN))
+                .put("userinfo_endpoint", getUrl(Endpoint.USERINFO))
+                .put("revocation_endpoint", getUrl(Endpoint.REVOKE))
+                .put("jwks_uri", getUrl(Endpoint.KEYS))
+                .put("end_session_endpoint", mServer.url(ISSUER_PATH + "/v1/logout").toString())
+                .put("response_types_supported", setOf("code"))
+                .put("subject_types_supported", setOf("public"))
+                .put("id_token_signing_alg_values_supported", setOf("RS256"))
+                .put("code_challenge_methods_supported", setOf(CODE_CHALLENGE_METHOD))
+                .put("grant_types_supported", setOf("authorization_code", "refresh_token"))
+                .put("scopes_supported",
+                        setOf("openid", "profile", "email", "offline_access"))
+                .put("token_endpoint_auth_methods_supported", setOf("none"))
+                .toString();
+    }
+
+    /**
+     * Creates a single use session token for the given user, as returned by Okta's
+     * authentication API, to pass to {@code OktaAppAuth.authenticate}.
+     */
+    public String createSessionToken(String subject) {
+        return mTokens.createSessionToken(subject);
+    }
+
+    /**
+     * Delays every response by a random time between the given bounds.
+     */
+    public void setLatency(long min, long max, TimeUnit unit) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid latency bounds");
+        }
+        mMinLatencyMs = unit.toMillis(min);
+        mMaxLatencyMs = unit.toMillis(max);
+    }
+
+    /**
+     * Fails the given fraction of requests to all endpoints with {@code 503 server_error}.
+     */
+    public void setErrorRate(double rate) {
+        for (Endpoint endpoint : Endpoint.values()) {
+            setErrorRate(endpoint, rate);
+        }
+    }
+
+    /**
+     * Fails the given fraction of requests to one endpoint with {@code 503 server_error}.
+     */
+    public void setErrorRate(Endpoint endpoint, double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("The error rate must be between 0 and 1");
+        }
+        synchronized (mErrorRates) {
+            mErrorRates[endpoint.ordinal()] = rate;
+        }
+    }
+
+    /**
+     * Answers requests beyond the given number per window with {@code 429 Too Many Requests},
+     * with Okta's {@code X-Rate-Limit-*} headers and a {@code Retry-After} header. Windows are
+     * fixed, starting with the first request after this call.
+     *
+     * @param maxRequests the requests allowed per window, or {@code 0} to disable the limit
+     */
+    public void setRateLimit(int maxRequests, long window, TimeUnit unit) {
+        synchronized (mRateLimitLock) {
+            mRateLimit = maxRequests;
+            mRateLimitWindowMs = unit.toMillis(window);
+            mWindowStart = 0;
+            mWindowCount = 0;
+        }
+    }
+
+    /**
+     * Offsets the server's clock, as seen in the {@code Date} header and the token timestamps.
+     */
+    public void setClockSkew(long skew, TimeUnit unit) {
+        mClockSkewMs = unit.toMillis(skew);
+    }
+
+    public void setAccessTokenLifetime(long lifetime, TimeUnit unit) {
+        mAccessTokenLifetimeMs = unit.toMillis(lifetime);
+    }
+
+    /**
+     * Whether a refresh token is replaced by a new one each time it is used. Enabled by
+     * default; a rotated token is rejected with {@code invalid_grant} if used again.
+     */
+    public void setRefreshTokenRotation(boolean rotate) {
+        mRotateRefreshTokens = rotate;
+    }
+
+    /**
+     * Makes all access tokens issued so far expired, so that the userinfo endpoint rejects
+     * them.
+     */
+    public void expireAccessTokens() {
+        mTokens.expireAccessTokens();
+    }
+
+    /**
+     * The number of requests received by an endpoint, including failed ones.
+     */
+    public int getRequestCount(Endpoint endpoint) {
+        return mRequestCounts.get(endpoint.ordinal());
+    }
+
+    /**
+     * The number of requests to an endpoint failed by {@link #setErrorRate(Endpoint, double)}.
+     */
+    public int getInjectedErrorCount(Endpoint endpoint) {
+        return mInjectedErrorCounts.get(endpoint.ordinal());
+    }
+
+    public int getRateLimitedCount() {
+        synchronized (mRateLimitLock) {
+            return mRateLimitedCount;
+        }
+    }
+
+    private MockResponse dispatch(RecordedRequest request) {
+        HttpUrl url = request.getRequestUrl();
+        Endpoint endpoint = null;
+        for (Endpoint candidate : Endpoint.values()) {
+            if (url.encodedPath().equals(ISSUER_PATH + candidate.mPath)) {
+                endpoint = candidate;
+                break;
+            }
+        }
+
+        delay();
+        if (endpoint == null) {
+            return withDate(new MockResponse().setResponseCode(404));
+        }
+        mRequestCounts.incrementAndGet(endpoint.ordinal());
+
+        MockResponse rateLimited = checkRateLimit();
+        if (rateLimited != null) {
+            return withDate(rateLimited);
+        }
+        if (shouldFail(endpoint)) {
+            mInjectedErrorCounts.incrementAndGet(endpoint.ordinal());
+            return withDate(error(503, "server_error", "Injected failure"));
+        }
+
+        Map<String, String> params = new HashMap<>();
+        for (String name : url.queryParameterNames()) {
+            params.put(name, url.queryParameter(name));
+        }
+        if ("POST".equals(request.getMethod())) {
+            params.putAll(parseForm(request.getBody().readUtf8()));
+        }
+
+        MockResponse response;
+        switch (endpoint) {
+            case DISCOVERY:
+                response = json(200, getDiscoveryDocument());
+                break;
+            case AUTHORIZE:
+                response = authorize(params);
+                break;
+            case TOKEN:
+                response = token(params);
+                break;
+            case USERINFO:
+                response = userInfo(request.getHeader("Authorization"));
+                break;
+            case REVOKE:
+                response = revoke(params);
+                break;
+            case KEYS:
+                response = json(200, mTokens.getKeySet())
+                        .setHeader("Cache-Control", "max-age=3600");
+                break;
+            default:
+                throw new AssertionError(endpoint);
+        }
+        return withDate(response);
+    }
+
+    private MockResponse authorize(Map<String, String> params) {
+        String redirectUri = params.get("redirect_uri");
+        if (!mClientId.equals(params.get("client_id")) || redirectUri == null) {
+            return new MockResponse().setResponseCode(400)
+                    .setBody("<html><body>Invalid client or redirect URI</body></html>");
+        }
+        String state = params.get("state");
+        if (!"code".equals(params.get("response_type"))
+                || !CODE_CHALLENGE_METHOD.equals(params.get("code_challenge_method"))
+                || params.get("code_challenge") == null) {
+            return redirect(redirectUri, "error", "invalid_request",
+                    "error_description", "PKCE with S256 is required", "state", state);
+        }
+
+        String subject = mTokens.redeemSessionToken(params.get("sessionToken"));
+        if (subject == null) {
+            // Okta would show its sign-in page; without a browser, fail like prompt=none
+            return redirect(redirectUri, "error", "login_required",
+                    "error_description", "The session token is invalid", "state", state);
+        }
+
+        FakeTokens.Grant grant = new FakeTokens.Grant(
+                subject,
+                mClientId,
+                redirectUri,
+                new LinkedHashSet<>(FakeTokens.scopeList(params.get("scope"))),
+                params.get("nonce"),
+                params.get("code_challenge"));
+        return redirect(redirectUri, "code", mTokens.createCode(grant), "state", state);
+    }
+
+    private MockResponse token(Map<String, String> params) {
+        if (!mClientId.equals(params.get("client_id"))) {
+            return error(401, "invalid_client", "Client authentication failed");
+        }
+        String grantType = params.get("grant_type");
+        if ("authorization_code".equals(grantType)) {
+            FakeTokens.Grant grant = mTokens.redeemCode(params.get("code"));
+            if (grant == null
+                    || !grant.mRedirectUri.equals(params.get("redirect_uri"))
+                    || !grant.mCodeChallenge.equals(challenge(params.get("code_verifier")))) {
+                return error(400, "invalid_grant", "The authorization code is invalid");
+            }
+            return tokens(grant, null);
+        } else if ("refresh_token".equals(grantType)) {
+            String refreshToken = params.get("refresh_token");
+            FakeTokens.Grant grant = mTokens.getRefreshGrant(refreshToken);
+            if (grant == null) {
+                return error(400, "invalid_grant", "The refresh token is invalid or expired");
+            }
+            FakeTokens.Grant scoped = grant;
+            if (params.get("scope") != null) {
+                Set<String> scopes =
+                        new LinkedHashSet<>(FakeTokens.scopeList(params.get("scope")));
+                if (!grant.mScopes.containsAll(scopes)) {
+                    return error(400, "invalid_scope",
+                            "The requested scopes exceed those of the refresh token");
+                }
+                scoped = grant.withScopes(scopes);
+            }
+            if (!mRotateRefreshTokens) {
+                return tokens(scoped, refreshToken);
+            }
+            if (!mTokens.consumeRefreshToken(refreshToken)) {
+                // lost a race with a concurrent request using the same token
+                return error(400, "invalid_grant", "The refresh token is invalid or expired");
+            }
+            // the rotated token keeps the scopes of the original grant
+            String rotated = mTokens.createRefreshToken(grant);
+            return tokens(scoped, rotated);
+        }
+        return error(400, "unsupported_grant_type", "Unsupported grant type");
+    }
+
+    private MockResponse tokens(FakeTokens.Grant grant, String refreshToken) {
+        long now = now();
+        long lifetime = mAccessTokenLifetimeMs;
+        Json json = new Json()
+                .put("token_type", "Bearer")
+                .put("expires_in", TimeUnit.MILLISECONDS.toSeconds(lifetime))
+                .put("access_token", mTokens.createAccessToken(getIssuer(), grant, now, lifetime))
+                .put("scope", join(grant.mScopes));
+        if (grant.mScopes.contains("openid")) {
+            json.put("id_token", mTokens.createIdToken(getIssuer(), grant, now, lifetime));
+        }
+        if (refreshToken == null && grant.mScopes.contains("offline_access")) {
+            refreshToken = mTokens.createRefreshToken(grant);
+        }
+        if (refreshToken != null) {
+            json.put("refresh_token", refreshToken);
+        }
+        return json(200, json.toString())
+                .setHeader("Cache-Control", "no-store")
+                .setHeader("Pragma", "no-cache");
+    }
+
+    private MockResponse userInfo(String authorization) {
+        String token = authorization != null && authorization.startsWith("Bearer ")
+                ? authorization.substring("Bearer ".length())
+                : null;
+        FakeTokens.AccessToken accessToken = mTokens.getAccessToken(token);
+        if (accessToken == null || accessToken.mExpiresAt <= now()) {
+            return new MockResponse().setResponseCode(401)
+                    .setHeader("WWW-Authenticate", "Bearer error=\"invalid_token\", "
+                            + "error_description=\"The access token is invalid\"");
+        }
+        String subject = accessToken.mGrant.mSubject;
+        return json(200, new Json()
+                .put("sub", subject)
+                .put("name", subject)
+                .put("preferred_username", subject)
+                .put("email", subject + "@example.com")
+                .put("email_verified", true)
+                .toString());
+    }
+
+    private MockResponse revoke(Map<String, String> params) {
+        if (!mClientId.equals(params.get("client_id"))) {
+            return error(401, "invalid_client", "Client authentication failed");
+        }
+        if (params.get("token") == null) {
+            return error(400, "invalid_request", "The token is required");
+        }
+        // as in RFC 7009, unknown tokens are not an error
+        mTokens.revoke(params.get("token"));
+        return new MockResponse().setResponseCode(200);
+    }
+
+    private MockResponse checkRateLimit() {
+        synchronized (mRateLimitLock) {
+            if (mRateLimit <= 0) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (mWindowStart == 0 || now - mWindowStart >= mRateLimitWindowMs) {
+                mWindowStart = now;
+                mWindowCount = 0;
+            }
+            mWindowCount++;
+            if (mWindowCount <= mRateLimit) {
+                return null;
+            }
+            mRateLimitedCount++;
+            long resetMs = mWindowStart + mRateLimitWindowMs;
+            long retryAfterSeconds = Math.max(1,
+                    TimeUnit.MILLISECONDS.toSeconds(resetMs - now + 999));
+            return error(429, "too_many_requests", "API call exceeded rate limit")
+                    .setHeader("X-Rate-Limit-Limit", mRateLimit)
+                    .setHeader("X-Rate-Limit-Remaining", 0)
+                    .setHeader("X-Rate-Limit-Reset",
+                            TimeUnit.MILLISECONDS.toSeconds(resetMs + mClockSkewMs))
+                    .setHeader("Retry-After", retryAfterSeconds);
+        }
+    }
+
+    private boolean shouldFail(Endpoint endpoint) {
+        double rate;
+        synchronized (mErrorRates) {
+            rate = mErrorRates[endpoint.ordinal()];
+        }
+        if (rate <= 0) {
+            return false;
+        }
+        synchronized (mRandom) {
+            return mRandom.nextDouble() < rate;
+        }
+    }
+
+    private void delay() {
+        long min = mMinLatencyMs;
+        long max = mMaxLatencyMs;
+        if (max <= 0) {
+            return;
+        }
+        long latency;
+        synchronized (mRandom) {
+            latency = min + (long) (mRandom.nextDouble() * (max - min));
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long now() {
+        return System.currentTimeMillis() + mClockSkewMs;
+    }
+
+    private MockResponse withDate(MockResponse response) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'",
+                Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return response.setHeader("Date", format.format(new Date(now())));
+    }
+
+    private static MockResponse json(int code, String body) {
+        return new MockResponse()
+                .setResponseCode(code)
+                .setHeader("Content-Type", "application/json")
+                .setBody(body);
+    }
+
+    private static MockResponse error(int code, String error, String description) {
+        return json(code, new Json()
+                .put("error", error)
+                .put("error_description", description)
+                .toString());
+    }
+
+    private static MockResponse redirect(String redirectUri, String... params) {
+        // redirect URIs usually have a custom scheme, so they are not an HttpUrl
+        StringBuilder location = new StringBuilder(redirectUri);
+        char separator = redirectUri.contains("?") ? '&' : '?';
+        for (int i = 0; i < params.length; i += 2) {
+            if (params[i + 1] != null) {
+                location.append(separator).append(params[i]).append('=')
+                        .append(encode(params[i + 1]));
+                separator = '&';
+            }
+        }
+        return new MockResponse().setResponseCode(302).setHeader("Location", location);
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static Map<String, String> parseForm(String body) {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            try {
+                if (separator < 0) {
+                    params.put(URLDecoder.decode(pair, "UTF-8"), "");
+                } else {
+                    params.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+                }
+            } catch (UnsupportedEncodingException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+        return params;
+    }
+
+    private static String challenge(String verifier) {
+        if (verifier == null) {
+            return null;
+        }
+        return FakeTokens.withoutPadding(ByteString.encodeUtf8(verifier).sha256().base64Url());
+    }
+
+    private static String join(Set<String> scopes) {
+        StringBuilder builder = new StringBuilder();
+        for (String scope : scopes) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(scope);
+        }
+        return builder.toString();
+    }
+
+    private static Set<String> setOf(String... values) {
+        Set<String> set = new LinkedHashSet<>();
+        for (String value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.testing;
+
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import okio.ByteString;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The grants and tokens issued by a {@link FakeOktaServer}. Access and ID tokens are RS256
+ * JWTs signed with a key generated per server, and published by its keys endpoint; codes,
+ * refresh tokens and session tokens are random strings.
+ */
+final class FakeTokens {
+
+    static final String KEY_ID = "fake-okta-key";
+    static final String ACCESS_TOKEN_AUDIENCE = "api://default";
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom mRandom = new SecureRandom();
+    private final KeyPair mKeyPair;
+
+    private final ConcurrentMap<String, String> mSessionTokens = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Grant> mCodes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Grant> mRefreshTokens = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AccessToken> mAccessTokens = new ConcurrentHashMap<>();
+
+    FakeTokens() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            mKeyPair = generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("RSA is not available", ex);
+        }
+    }
+
+    /**
+     * A user authenticated with the authorize endpoint, and the parameters of the request.
+     */
+    static final class Grant {
+        final String mSubject;
+        final String mClientId;
+        final String mRedirectUri;
+        final Set<String> mScopes;
+        final String mNonce;
+        final String mCodeChallenge;
+
+        Grant(String subject,
+              String clientId,
+              String redirectUri,
+              Set<String> scopes,
+              String nonce,
+              String codeChallenge) {
+            mSubject = subject;
+            mClientId = clientId;
+            mRedirectUri = redirectUri;
+            mScopes = scopes;
+            mNonce = nonce;
+            mCodeChallenge = codeChallenge;
+        }
+
+        Grant withScopes(Set<String> scopes) {
+            return new Grant(mSubject, mClientId, mRedirectUri, scopes, mNonce, mCodeChallenge);
+        }
+    }
+
+    static final class AccessToken {
+        final Grant mGrant;
+        final long mExpiresAt;
+
+        AccessToken(Grant grant, long expiresAt) {
+            mGrant = grant;
+            mExpiresAt = expiresAt;
+        }
+    }
+
+    String createSessionToken(String subject) {
+        String token = randomToken();
+        mSessionTokens.put(token, subject);
+        return token;
+    }
+
+    /**
+     * Redeems a session token; like Okta's, they can be used once.
+     *
+     * @return the subject the token was created for, or {@code null} if it is not valid
+     */
+    String redeemSessionToken(String token) {
+        return token != null ? mSessionTokens.remove(token) : null;
+    }
+
+    String createCode(Grant grant) {
+        String code = randomToken();
+        mCodes.put(code, grant);
+        return code;
+    }
+
+    Grant redeemCode(String code) {
+        return code != null ? mCodes.remove(code) : null;
+    }
+
+    String createRefreshToken(Grant grant) {
+        String token = randomToken();
+        mRefreshTokens.put(token, grant);
+        return token;
+    }
+
+    Grant getRefreshGrant(String token) {
+        return token != null ? mRefreshTokens.get(token) : null;
+    }
+
+    /**
+     * Invalidates a refresh token when it is rotated.
+     *
+     * @return {@code true} if this call invalidated it; {@code false} if it was already used
+     */
+    boolean consumeRefreshToken(String token) {
+        return mRefreshTokens.remove(token) != null;
+    }
+
+    AccessToken getAccessToken(String token) {
+        return token != null ? mAccessTokens.get(token) : null;
+    }
+
+    void revoke(String token) {
+        mRefreshTokens.remove(token);
+        mAccessTokens.remove(token);
+    }
+
+    void expireAccessTokens() {
+        for (String token : mAccessTokens.keySet()) {
+            AccessToken accessToken = mAccessTokens.get(token);
+            if (accessToken != null) {
+                mAccessTokens.replace(token, accessToken, new AccessToken(accessToken.mGrant, 0));
+            }
+        }
+    }
+
+    String createAccessToken(String issuer, Grant grant, long issuedAt, long lifetimeMs) {
+        long expiresAt = issuedAt + lifetimeMs;
+        String token = signed(issuer, grant.mSubject, issuedAt, expiresAt)
+                .setAudience(ACCESS_TOKEN_AUDIENCE)
+                .claim("ver", 1)
+                .claim("cid", grant.mClientId)
+                .claim("scp", new ArrayList<>(grant.mScopes))
+                .compact();
+        mAccessTokens.put(token, new AccessToken(grant, expiresAt));
+        return token;
+    }
+
+    String createIdToken(String issuer, Grant grant, long issuedAt, long lifetimeMs) {
+        JwtBuilder builder = signed(issuer, grant.mSubject, issuedAt, issuedAt + lifetimeMs)
+                .setAudience(grant.mClientId)
+                .claim("ver", 1)
+                .claim("amr", Arrays.asList("pwd"))
+                .claim("auth_time", issuedAt / 1000)
+                .claim("preferred_username", grant.mSubject);
+        if (grant.mNonce != null) {
+            builder.claim("nonce", grant.mNonce);
+        }
+        return builder.compact();
+    }
+
+    String getKeySet() {
+        RSAPublicKey key = (RSAPublicKey) mKeyPair.getPublic();
+        String jwk = new Json()
+                .put("kty", "RSA")
+                .put("alg", "RS256")
+                .put("kid", KEY_ID)
+                .put("use", "sig")
+                .put("e", base64Url(key.getPublicExponent()))
+                .put("n", base64Url(key.getModulus()))
+                .toString();
+        return new Json().putRaw("keys", "[" + jwk + "]").toString();
+    }
+
+    private JwtBuilder signed(String issuer, String subject, long issuedAt, long expiresAt) {
+        return Jwts.builder()
+                .setHeaderParam("kid", KEY_ID)
+                .setId(UUID.randomUUID().toString())
+                .setIssuer(issuer)
+                .setSubject(subject)
+                .setIssuedAt(new Date(issuedAt))
+                .setExpiration(new Date(expiresAt))
+                .signWith(mKeyPair.getPrivate(), SignatureAlgorithm.RS256);
+    }
+
+    private String randomToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        mRandom.nextBytes(bytes);
+        return withoutPadding(ByteString.of(bytes).base64Url());
+    }
+
+    static String withoutPadding(String base64) {
+        int end = base64.length();
+        while (end > 0 && base64.charAt(end - 1) == '=') {
+            end--;
+        }
+        return base64.substring(0, end);
+    }
+
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        // the sign byte of a positive value is not part of the JWK encoding
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return withoutPadding(ByteString.of(bytes).base64Url());
+    }
+
+    static List<String> scopeList(String scope) {
+        List<String> scopes = new ArrayList<>();
+        if (scope != null) {
+            for (String value : scope.split(" ")) {
+                if (!value.isEmpty()) {
+                    scopes.add(value);
+                }
+            }
+        }
+        return scopes;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.testing;
+
+import java.util.Collection;
+
+/**
+ * Writes the small JSON documents returned by {@link FakeOktaServer}. It doesn't use
+ * {@code org.json}, which is provided by the Android runtime under Robolectric and would clash
+ * with a JVM copy.
+ */
+final class Json {
+
+    private final StringBuilder mBuilder = new StringBuilder("{");
+
+    Json put(String name, String value) {
+        return name(name).string(value);
+    }
+
+    Json put(String name, long value) {
+        name(name).mBuilder.append(value);
+        return this;
+    }
+
+    Json put(String name, boolean value) {
+        name(name).mBuilder.append(value);
+        return this;
+    }
+
+    Json put(String name, Collection<String> values) {
+        name(name).mBuilder.append('[');
+        boolean first = true;
+        for (String value : values) {
+            if (!first) {
+                mBuilder.append(',');
+            }
+            string(value);
+            first = false;
+        }
+        mBuilder.append(']');
+        return this;
+    }
+
+    /**
+     * Adds a value that is already JSON, such as a nested object written by another
+     * {@code Json}.
+     */
+    Json putRaw(String name, String json) {
+        name(name).mBuilder.append(json);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return mBuilder.toString() + '}';
+    }
+
+    private Json name(String name) {
+        if (mBuilder.length() > 1) {
+            mBuilder.append(',');
+        }
+        string(name).mBuilder.append(':');
+        return this;
+    }
+
+    private Json string(String value) {
+        mBuilder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    mBuilder.append("\\\"");
+                    break;
+                case '\\':
+                    mBuilder.append("\\\\");
+                    break;
+                case '\n':
+                    mBuilder.append("\\n");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        mBuilder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        mBuilder.append(c);
+                    }
+            }
+        }
+        mBuilder.append('"');
+        return this;
+    }
+}
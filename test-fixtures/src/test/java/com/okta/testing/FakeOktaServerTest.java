@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.testing;
+
+import okhttp3.FormBody;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class FakeOktaServerTest {
+
+    private static final String REDIRECT_URI = "com.okta.example:/callback";
+    private static final String CODE_VERIFIER = "0123456789_0123456789_0123456789_0123456789";
+
+    private FakeOktaServer mServer;
+    private OkHttpClient mClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new FakeOktaServer();
+        mServer.start();
+        mClient = new OkHttpClient.Builder().followRedirects(false).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+    }
+
+    @Test
+    public void testDiscoveryPointsAtServer() throws IOException {
+        String body = get(mServer.getUrl(FakeOktaServer.Endpoint.DISCOVERY), null).body().string();
+
+        assertEquals(mServer.getIssuer(), field(body, "issuer"));
+        assertEquals(mServer.getUrl(FakeOktaServer.Endpoint.TOKEN), field(body, "token_endpoint"));
+    }
+
+    @Test
+    public void testSessionTokenFlowAndRefreshRotation() throws IOException {
+        String code = authorize(mServer.createSessionToken("user"));
+        String tokens = post(FakeOktaServer.Endpoint.TOKEN, new FormBody.Builder()
+                .add("grant_type", "authorization_code")
+                .add("client_id", mServer.getClientId())
+                .add("redirect_uri", REDIRECT_URI)
+                .add("code", code)
+                .add("code_verifier", CODE_VERIFIER)
+                .build()).body().string();
+        String accessToken = field(tokens, "access_token");
+        String refreshToken = field(tokens, "refresh_token");
+        assertNotNull(field(tokens, "id_token"));
+
+        Response userInfo = get(mServer.getUrl(FakeOktaServer.Endpoint.USERINFO), accessToken);
+        assertEquals(200, userInfo.code());
+        assertEquals("user", field(userInfo.body().string(), "sub"));
+
+        String refreshed = refresh(refreshToken).body().string();
+        assertNotEquals(refreshToken, field(refreshed, "refresh_token"));
+        assertEquals(400, refresh(refreshToken).code());
+    }
+
+    @Test
+    public void testSessionTokenIsSingleUse() throws IOException {
+        String sessionToken = mServer.createSessionToken("user");
+        authorize(sessionToken);
+
+        Response response = get(authorizeUrl(sessionToken), null);
+
+        assertTrue(response.header("Location").contains("error=login_required"));
+    }
+
+    @Test
+    public void testRateLimit() throws IOException {
+        mServer.setRateLimit(1, 1, TimeUnit.MINUTES);
+
+        assertEquals(200, get(mServer.getUrl(FakeOktaServer.Endpoint.KEYS), null).code());
+        Response limited = get(mServer.getUrl(FakeOktaServer.Endpoint.KEYS), null);
+
+        assertEquals(429, limited.code());
+        assertNotNull(limited.header("Retry-After"));
+        assertEquals("0", limited.header("X-Rate-Limit-Remaining"));
+        assertEquals(1, mServer.getRateLimitedCount());
+    }
+
+    @Test
+    public void testInjectedErrors() throws IOException {
+        mServer.setErrorRate(FakeOktaServer.Endpoint.KEYS, 1);
+
+        assertEquals(503, get(mServer.getUrl(FakeOktaServer.Endpoint.KEYS), null).code());
+        assertEquals(200, get(mServer.getUrl(FakeOktaServer.Endpoint.DISCOVERY), null).code());
+        assertEquals(1, mServer.getInjectedErrorCount(FakeOktaServer.Endpoint.KEYS));
+        assertEquals(1, mServer.getRequestCount(FakeOktaServer.Endpoint.KEYS));
+    }
+
+    private String authorize(String sessionToken) throws IOException {
+        Response response = get(authorizeUrl(sessionToken), null);
+        assertEquals(302, response.code());
+        String location = response.header("Location");
+        assertTrue(location, location.startsWith(REDIRECT_URI + "?"));
+        assertTrue(location, location.contains("state=abc"));
+        Matcher matcher = Pattern.compile("code=([^&]+)").matcher(location);
+        assertTrue(location, matcher.find());
+        return matcher.group(1);
+    }
+
+    private String authorizeUrl(String sessionToken) {
+        String challenge = ByteString.encodeUtf8(CODE_VERIFIER).sha256().base64Url()
+                .replace("=", "");
+        return HttpUrl.parse(mServer.getUrl(FakeOktaServer.Endpoint.AUTHORIZE)).newBuilder()
+                .addQueryParameter("client_id", mServer.getClientId())
+                .addQueryParameter("redirect_uri", REDIRECT_URI)
+                .addQueryParameter("response_type", "code")
+                .addQueryParameter("scope", "openid profile offline_access")
+                .addQueryParameter("state", "abc")
+                .addQueryParameter("nonce", "n0nce")
+                .addQueryParameter("code_challenge", challenge)
+                .addQueryParameter("code_challenge_method", "S256")
+                .addQueryParameter("sessionToken", sessionToken)
+                .build()
+                .toString();
+    }
+
+    private Response refresh(String refreshToken) throws IOException {
+        return post(FakeOktaServer.Endpoint.TOKEN, new FormBody.Builder()
+                .add("grant_type", "refresh_token")
+                .add("client_id", mServer.getClientId())
+                .add("refresh_token", refreshToken)
+                .build());
+    }
+
+    private Response get(String url, String accessToken) throws IOException {
+        Request.Builder request = new Request.Builder().url(url);
+        if (accessToken != null) {
+            request.header("Authorization", "Bearer " + accessToken);
+        }
+        return mClient.newCall(request.build()).execute();
+    }
+
+    private Response post(FakeOktaServer.Endpoint endpoint, FormBody body) throws IOException {
+        return mClient.newCall(new Request.Builder()
+                .url(mServer.getUrl(endpoint))
+                .post(body)
+                .build()).execute();
+    }
+
+    private static String field(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\":\"([^\"]*)\"").matcher(json);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}